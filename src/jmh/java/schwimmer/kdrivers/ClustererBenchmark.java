@@ -0,0 +1,73 @@
+package schwimmer.kdrivers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * {@link NearestDeliveryClusterer}, {@link KMeansDeliveryClusterer} (one start) and
+ * {@link PartitionedDeliveryClusterer} (k-means cells) on seeded synthetic delivery days. Driver capacity is
+ * raised where the fleet is too small for the deliveries, so every size combination is feasible.
+ */
+@State(Scope.Benchmark)
+public class ClustererBenchmark {
+
+    private static final long SEED = 42;
+    /** Headroom over the average load, so rebalancing has somewhere to move deliveries. */
+    private static final double CAPACITY_HEADROOM = 1.25;
+
+    @Param({"1000", "10000", "100000"})
+    public int deliveries;
+
+    @Param({"10", "100", "1000"})
+    public int drivers;
+
+    @Param({"UNIFORM", "CLUSTERED_CITY", "HEAVY_OVERRIDE"})
+    public SyntheticDeliveries.Distribution distribution;
+
+    private SyntheticDeliveries day;
+    private NearestDeliveryClusterer nearest;
+    private KMeansDeliveryClusterer kMeans;
+    private PartitionedDeliveryClusterer partitioned;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        day = new SyntheticDeliveries(SEED, deliveries, drivers, distribution);
+        // Nearest also counts each driver's home against their capacity
+        int capacity = (int) Math.ceil(CAPACITY_HEADROOM * (deliveries + drivers) / drivers);
+        nearest = new NearestDeliveryClusterer(Math.max(15, capacity));
+        kMeans = new KMeansDeliveryClusterer(Math.max(12, capacity), 1, null, null);
+        partitioned = new PartitionedDeliveryClusterer(Math.max(12, capacity));
+    }
+
+    /** Empty drivers for each call, created outside the measured time. */
+    @State(Scope.Thread)
+    public static class Fleet {
+        List<Driver> drivers;
+
+        @Setup(Level.Invocation)
+        public void setUp(ClustererBenchmark benchmark) {
+            drivers = benchmark.day.drivers();
+        }
+    }
+
+    @Benchmark
+    public List<Driver> nearest(Fleet fleet) {
+        return nearest.clusterAndAssign(day.deliveries(), fleet.drivers);
+    }
+
+    @Benchmark
+    public List<Driver> kMeans(Fleet fleet) {
+        return kMeans.clusterAndAssign(day.deliveries(), fleet.drivers);
+    }
+
+    @Benchmark
+    public List<Driver> partitioned(Fleet fleet) {
+        return partitioned.clusterAndAssign(day.deliveries(), fleet.drivers);
+    }
+}
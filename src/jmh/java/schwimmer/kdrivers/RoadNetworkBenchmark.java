@@ -0,0 +1,125 @@
+package schwimmer.kdrivers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link RoadNetwork} preprocessing and queries, on synthetic city grids or, with {@code -p network=<file.osm>},
+ * on a .osm extract. Queries are made the way the clusterers make them: one location against one target, and
+ * against {@value DriverDistances#CANDIDATES} targets at once.
+ */
+@State(Scope.Benchmark)
+public class RoadNetworkBenchmark {
+
+    private static final long SEED = 42;
+    private static final int POINTS = 1000;
+    /** Targets are drawn from the first points only, so their search spaces stay cached as they do in a run. */
+    private static final int TARGET_POINTS = 100;
+
+    /** {@code grid<n>} for a grid of n by n streets, or the path of a .osm extract. */
+    @Param({"grid100", "grid200"})
+    public String network;
+
+    private OsmRoadReader.Graph graph;
+    private RoadNetwork roads;
+    private double[] lats;
+    private double[] lons;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        graph = network.endsWith(".osm") ? OsmRoadReader.read(Path.of(network))
+                : grid(Integer.parseInt(network.substring("grid".length())));
+        roads = new RoadNetwork(graph);
+        // Random locations inside the network's bounding box
+        double minLat = Arrays.stream(graph.latitudes()).min().orElse(0);
+        double maxLat = Arrays.stream(graph.latitudes()).max().orElse(0);
+        double minLon = Arrays.stream(graph.longitudes()).min().orElse(0);
+        double maxLon = Arrays.stream(graph.longitudes()).max().orElse(0);
+        Random random = new Random(SEED);
+        lats = new double[POINTS];
+        lons = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            lats[i] = minLat + random.nextDouble() * (maxLat - minLat);
+            lons[i] = minLon + random.nextDouble() * (maxLon - minLon);
+        }
+    }
+
+    /** Which query comes next, per thread. */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public RoadNetwork preprocess() {
+        return new RoadNetwork(graph);
+    }
+
+    @Benchmark
+    public double[] oneToOne(Cursor cursor) {
+        return query(cursor, 1);
+    }
+
+    @Benchmark
+    public double[] oneToCandidates(Cursor cursor) {
+        return query(cursor, DriverDistances.CANDIDATES);
+    }
+
+    private double[] query(Cursor cursor, int targets) {
+        int q = cursor.next++;
+        double[] toLat = new double[targets];
+        double[] toLon = new double[targets];
+        for (int t = 0; t < targets; t++) {
+            int target = Math.floorMod(q * 7 + t * 13, TARGET_POINTS);
+            toLat[t] = lats[target];
+            toLon[t] = lons[target];
+        }
+        int from = Math.floorMod(q, POINTS);
+        return roads.costs(lats[from], lons[from], toLat, toLon);
+    }
+
+    /** Square grid of two-way residential streets about 100 m apart, with every fifth street a faster avenue. */
+    static OsmRoadReader.Graph grid(int side) {
+        double step = 0.0009;
+        double[] lat = new double[side * side];
+        double[] lon = new double[side * side];
+        List<int[]> edges = new ArrayList<>();
+        List<Double> seconds = new ArrayList<>();
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int v = r * side + c;
+                lat[v] = 40.7 + r * step;
+                lon[v] = -74.0 + c * step;
+                if (c > 0) {
+                    double speed = r % 5 == 0 ? 50 : 25;
+                    addBoth(edges, seconds, v - 1, v, 100 / (speed / 3.6));
+                }
+                if (r > 0) {
+                    double speed = c % 5 == 0 ? 50 : 25;
+                    addBoth(edges, seconds, v - side, v, 100 / (speed / 3.6));
+                }
+            }
+        }
+        return new OsmRoadReader.Graph(lat, lon, edges.stream().mapToInt(e -> e[0]).toArray(),
+                edges.stream().mapToInt(e -> e[1]).toArray(),
+                seconds.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    private static void addBoth(List<int[]> edges, List<Double> seconds, int a, int b, double time) {
+        edges.add(new int[] {a, b});
+        seconds.add(time);
+        edges.add(new int[] {b, a});
+        seconds.add(time);
+    }
+}
@@ -0,0 +1,62 @@
+package schwimmer.kdrivers;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Canonicalizes addresses so that trivially different spellings of the same address compare equal:
+ * case, punctuation and whitespace are dropped and common street-type, directional and unit words
+ * are reduced to their standard (USPS) abbreviation, e.g. "123 Main Street, Apt. 4" and
+ * "123 MAIN ST APT 4" both become "123 main st apt 4".
+ */
+final class AddressNormalizer {
+
+    private static final Map<String, String> ABBREVIATIONS = Map.ofEntries(
+            Map.entry("street", "st"),
+            Map.entry("avenue", "ave"),
+            Map.entry("av", "ave"),
+            Map.entry("road", "rd"),
+            Map.entry("drive", "dr"),
+            Map.entry("lane", "ln"),
+            Map.entry("boulevard", "blvd"),
+            Map.entry("court", "ct"),
+            Map.entry("place", "pl"),
+            Map.entry("terrace", "ter"),
+            Map.entry("parkway", "pkwy"),
+            Map.entry("highway", "hwy"),
+            Map.entry("circle", "cir"),
+            Map.entry("square", "sq"),
+            Map.entry("north", "n"),
+            Map.entry("south", "s"),
+            Map.entry("east", "e"),
+            Map.entry("west", "w"),
+            Map.entry("northeast", "ne"),
+            Map.entry("northwest", "nw"),
+            Map.entry("southeast", "se"),
+            Map.entry("southwest", "sw"),
+            Map.entry("apartment", "apt"),
+            Map.entry("suite", "ste"),
+            Map.entry("floor", "fl")
+    );
+
+    private AddressNormalizer() {
+    }
+
+    /**
+     * Normalize an address for comparison. Not intended for display or for sending to a geocoder.
+     */
+    static String normalize(String address) {
+        String cleaned = address.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+        if (cleaned.isEmpty()) {
+            return cleaned;
+        }
+        StringBuilder sb = new StringBuilder(cleaned.length());
+        for (String token : cleaned.split(" ")) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(ABBREVIATIONS.getOrDefault(token, token));
+        }
+        return sb.toString();
+    }
+}
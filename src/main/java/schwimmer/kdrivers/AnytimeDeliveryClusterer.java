@@ -0,0 +1,205 @@
+package schwimmer.kdrivers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Clusters within a hard deadline, for dispatch cutoffs where a slightly worse assignment now beats a better
+ * one later.
+ * <p>
+ * A feasible assignment is built first, without iterating: every delivery goes to its nearest driver (or its
+ * {@code assign_to} driver), then over-capacity drivers hand their farthest deliveries to the nearest driver
+ * with room. Background threads, one per core, then run k-means starts (seeds 42, 43, ... as in
+ * {@link KMeansDeliveryClusterer}) and each finished start replaces the incumbent if it has a lower
+ * {@link KMeansDeliveryClusterer#objective}. The best assignment so far is returned when the deadline
+ * expires, or earlier once {@value #STALE_STARTS} starts in a row have not improved on it; starts still
+ * running then are interrupted and discarded.
+ * <p>
+ * The deadline bounds the search, not the setup: the first feasible assignment (and the nearest-driver
+ * index it is built from) is always computed, however short the deadline, so a call can overrun it by that
+ * much. It is linear in deliveries apart from the travel costs when a {@link DistanceModel} is given.
+ */
+public class AnytimeDeliveryClusterer implements DeliveryClusterer {
+
+    /** Consecutive starts without improvement after which the search stops before the deadline. */
+    private static final int STALE_STARTS = 16;
+    private static final long FIRST_SEED = 42;
+
+    /**
+     * The search so far, reported once for the first assignment and once per finished k-means start.
+     *
+     * @param elapsed    time since clustering began
+     * @param objective  objective of the best assignment so far
+     * @param iterations k-means starts finished
+     * @param improved   whether this report's assignment became the best
+     */
+    public record Progress(Duration elapsed, double objective, int iterations, boolean improved) {}
+
+    private final int maxDeliveriesPerDriver;
+    private final Duration deadline;
+    private final DistanceModel distanceModel;
+    private final Consumer<Progress> progress;
+
+    public AnytimeDeliveryClusterer(Duration deadline) {
+        this(KMeansDeliveryClusterer.DEFAULT_MAX_DELIVERIES, deadline, null, progress -> {});
+    }
+
+    /**
+     * @param deadline      time from the call until the best assignment so far is returned, or until the first
+     *                      feasible assignment if that takes longer
+     * @param distanceModel travel costs for matching deliveries to drivers, or null for straight-line distance
+     * @param progress      called with each report, in order, from the searching threads; it should be quick
+     */
+    public AnytimeDeliveryClusterer(int maxDeliveriesPerDriver, Duration deadline, DistanceModel distanceModel,
+                                    Consumer<Progress> progress) {
+        if (maxDeliveriesPerDriver < 1) {
+            throw new IllegalArgumentException("maxDeliveriesPerDriver must be at least 1: " + maxDeliveriesPerDriver);
+        }
+        this.maxDeliveriesPerDriver = maxDeliveriesPerDriver;
+        this.deadline = deadline;
+        this.distanceModel = distanceModel;
+        this.progress = progress;
+    }
+
+    @Override
+    public List<Driver> clusterAndAssign(List<Delivery> deliveries, List<Driver> drivers) {
+        long start = System.nanoTime();
+        long end = start + deadline.toNanos();
+        if (drivers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (deliveries.size() > drivers.size() * maxDeliveriesPerDriver) {
+            throw new IllegalArgumentException(
+                    "Deliveries (" + deliveries.size() + ") exceeds capacity: " + drivers.size()
+                            + " drivers * " + maxDeliveriesPerDriver + " max = "
+                            + (drivers.size() * maxDeliveriesPerDriver));
+        }
+
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+        DriverDistances distances = new DriverDistances(kernel, new DriverIndex(kernel), distanceModel);
+        Search search = new Search(kernel, start);
+        search.offer(greedy(kernel, distances, deliveries, drivers), false);
+        if (deliveries.isEmpty()) {
+            return search.result().assignTo(deliveries, drivers);
+        }
+
+        KMeansDeliveryClusterer kMeans = new KMeansDeliveryClusterer(maxDeliveriesPerDriver, 1, null, distanceModel);
+        AtomicLong nextSeed = new AtomicLong(FIRST_SEED);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "anytime-start");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int t = 0; t < threads; t++) {
+                pool.execute(() -> {
+                    while (!Thread.currentThread().isInterrupted() && !search.done()) {
+                        Clusters candidate = kMeans.cluster(kernel, distances, deliveries, drivers,
+                                nextSeed.getAndIncrement());
+                        if (!Thread.currentThread().isInterrupted()) {
+                            search.offer(candidate, true);
+                        }
+                    }
+                });
+            }
+            search.await(end);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while clustering", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return search.result().assignTo(deliveries, drivers);
+    }
+
+    /** Nearest driver for each delivery, pinned ones to their driver, then redistributed to fit capacity. */
+    private Clusters greedy(CoordinateKernel kernel, DriverDistances distances, List<Delivery> deliveries,
+                            List<Driver> drivers) {
+        Map<String, Integer> driverByName = new HashMap<>();
+        for (int i = 0; i < drivers.size(); i++) {
+            driverByName.putIfAbsent(drivers.get(i).getName().trim().toLowerCase(), i);
+        }
+        Clusters clusters = new Clusters(drivers.size());
+        for (int d = 0; d < deliveries.size(); d++) {
+            String name = deliveries.get(d).assignToDriverName();
+            int driver = name == null || name.isBlank() ? -1 : driverByName.getOrDefault(name.trim().toLowerCase(), -1);
+            if (driver < 0) {
+                driver = distances.best(d, i -> 1);
+            }
+            if (driver >= 0) {
+                clusters.add(driver, d);
+            }
+        }
+        new ClusterRebalancer(maxDeliveriesPerDriver, 0, d -> {
+            String name = deliveries.get(d).assignToDriverName();
+            return name == null || name.isBlank();
+        }).rebalance(clusters, distances);
+        return clusters;
+    }
+
+    /** The incumbent assignment, shared between the searching threads and the caller. */
+    private final class Search {
+
+        private final CoordinateKernel kernel;
+        private final long start;
+        private Clusters best;
+        private double bestObjective = Double.POSITIVE_INFINITY;
+        private int iterations;
+        private int stale;
+        private boolean finished;
+
+        Search(CoordinateKernel kernel, long start) {
+            this.kernel = kernel;
+            this.start = start;
+        }
+
+        void offer(Clusters candidate, boolean fromStart) {
+            double objective = KMeansDeliveryClusterer.objective(candidate, kernel);
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                boolean improved = objective < bestObjective;
+                if (improved) {
+                    best = candidate;
+                    bestObjective = objective;
+                }
+                if (fromStart) {
+                    iterations++;
+                    stale = improved ? 0 : stale + 1;
+                }
+                // Reported under the lock, so reports arrive in order and all before the result is returned
+                progress.accept(new Progress(Duration.ofNanos(System.nanoTime() - start), bestObjective, iterations,
+                        improved));
+                if (stale >= STALE_STARTS) {
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized boolean done() {
+            return finished || stale >= STALE_STARTS;
+        }
+
+        /** Wait until the deadline, or until the search has stopped improving. */
+        synchronized void await(long end) throws InterruptedException {
+            long remaining;
+            while (stale < STALE_STARTS && (remaining = end - System.nanoTime()) > 0) {
+                wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            }
+            finished = true;
+        }
+
+        synchronized Clusters result() {
+            return best;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package schwimmer.kdrivers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Moves deliveries out of over-capacity clusters into clusters with room, shared by the clusterers.
+ * <p>
+ * Donors are drained in driver order, farthest movable delivery first (earlier list position on ties),
+ * each going to the driver with room that minimizes {@code distance * (1 + balanceWeight * clusterSize)}.
+ * A recipient never goes over capacity, so a drained donor is never revisited and the result is the
+ * same as repeatedly moving one delivery and rescanning from the first driver, without the rescans:
+ * each donor's candidates sit in a max-heap built once, and recipients are found through
+ * {@link DriverDistances}, so "distance" is whatever the clusterer measures with.
+ */
+final class ClusterRebalancer {
+
+    private final int maxPerCluster;
+    private final double balanceWeight;
+    private final IntPredicate movable;
+
+    /**
+     * @param maxPerCluster capacity of each cluster
+     * @param balanceWeight how strongly recipients with fewer deliveries are preferred; 0 for plain nearest
+     * @param movable       which deliveries (by index) may leave their cluster
+     */
+    ClusterRebalancer(int maxPerCluster, double balanceWeight, IntPredicate movable) {
+        this.maxPerCluster = maxPerCluster;
+        this.balanceWeight = balanceWeight;
+        this.movable = movable;
+    }
+
+    /**
+     * Rebalance {@code clusters} in place; cluster i belongs to driver i of the kernel. Clusters of drivers
+     * without coordinates are neither donors nor recipients. Clusters may stay over capacity if they have
+     * nothing movable or no other cluster has room.
+     */
+    void rebalance(Clusters clusters, DriverDistances distances) {
+        CoordinateKernel kernel = distances.kernel();
+        for (int donorIdx = 0; donorIdx < clusters.count(); donorIdx++) {
+            int donorSize = clusters.size(donorIdx);
+            if (!kernel.hasDriver(donorIdx) || donorSize <= maxPerCluster) {
+                continue;
+            }
+
+            List<Candidate> candidates = new ArrayList<>();
+            for (int j = 0; j < donorSize; j++) {
+                int d = clusters.get(donorIdx, j);
+                if (movable.test(d)) {
+                    candidates.add(new Candidate(j, distances.deliveryToDriver(d, donorIdx)));
+                }
+            }
+            PriorityQueue<Candidate> farthestFirst = new PriorityQueue<>(candidates);
+
+            int donor = donorIdx;
+            boolean[] moved = new boolean[donorSize];
+            int excess = donorSize - maxPerCluster;
+            boolean roomLeft = true;
+            while (excess > 0 && !farthestFirst.isEmpty()) {
+                Candidate candidate = farthestFirst.poll();
+                int delivery = clusters.get(donorIdx, candidate.position());
+                int recipientIdx = distances.best(delivery, i -> {
+                    int size = clusters.size(i);
+                    return i == donor || size >= maxPerCluster
+                            ? Double.POSITIVE_INFINITY : 1 + balanceWeight * size;
+                });
+                if (recipientIdx < 0) {
+                    roomLeft = false;
+                    break;
+                }
+                clusters.add(recipientIdx, delivery);
+                moved[candidate.position()] = true;
+                excess--;
+            }
+
+            clusters.removeAll(donorIdx, moved);
+            if (!roomLeft) {
+                // Every other cluster is full, so no later donor can move anything either
+                return;
+            }
+        }
+    }
+
+    /** A movable delivery by its position in the donor cluster; orders farthest first, then by position. */
+    private record Candidate(int position, double distance) implements Comparable<Candidate> {
+        @Override
+        public int compareTo(Candidate other) {
+            int byDistance = Double.compare(other.distance, distance);
+            return byDistance != 0 ? byDistance : Integer.compare(position, other.position);
+        }
+    }
+}
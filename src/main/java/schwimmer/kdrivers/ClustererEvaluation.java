@@ -0,0 +1,228 @@
+package schwimmer.kdrivers;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Runs every {@link DeliveryClusterer} on a set of delivery days and compares speed and quality, so the
+ * right engine for a dataset size can be chosen from data rather than from the route sheets.
+ * <p>
+ * Per run it records wall time, approximate peak heap (the sum of the heap pools' peaks above the level
+ * after a GC, which overstates a little when pools peak at different times) and, in straight-line km:
+ * total and longest delivery-to-home distance, the widest and mean cluster diameter, load imbalance (the
+ * largest load over the mean) and how many unpinned deliveries were not given to their nearest driver.
+ */
+final class ClustererEvaluation {
+
+    private static final String[] COLUMNS = {"dataset", "clusterer", "deliveries", "drivers", "wall_ms",
+            "peak_heap_bytes", "total_km", "max_km", "max_diameter_km", "mean_diameter_km", "load_imbalance",
+            "displaced", "error"};
+    /** Headroom over the average load for datasets too large for the clusterers' default capacity. */
+    private static final double CAPACITY_HEADROOM = 1.25;
+    private static final int MULTI_STARTS = 8;
+    private static final Duration MULTI_START_BUDGET = Duration.ofMinutes(1);
+    private static final Duration IMPROVE_BUDGET = Duration.ofSeconds(10);
+    private static final Duration ANYTIME_DEADLINE = Duration.ofSeconds(2);
+
+    /** A delivery day; drivers are created fresh for each run, since clustering assigns into them. */
+    record Dataset(String name, List<Delivery> deliveries, Supplier<List<Driver>> drivers) {}
+
+    /** One clusterer's run on one dataset; metrics are NaN when it failed. */
+    record Result(String dataset, String clusterer, int deliveries, int drivers, long wallMillis, long peakHeapBytes,
+                  double totalKm, double maxKm, double maxDiameterKm, double meanDiameterKm, double loadImbalance,
+                  int displaced, String error) {}
+
+    /** Every clusterer, by name, with enough capacity for the dataset. */
+    static Map<String, DeliveryClusterer> clusterers(int deliveries, int drivers) {
+        int capacity = (int) Math.ceil(CAPACITY_HEADROOM * (deliveries + drivers) / Math.max(1, drivers));
+        Map<String, DeliveryClusterer> clusterers = new LinkedHashMap<>();
+        clusterers.put("nearest", new NearestDeliveryClusterer(Math.max(15, capacity)));
+        clusterers.put("k-means", new KMeansDeliveryClusterer(Math.max(12, capacity), 1, null, null));
+        clusterers.put("k-means x" + MULTI_STARTS,
+                new KMeansDeliveryClusterer(Math.max(12, capacity), MULTI_STARTS, MULTI_START_BUDGET, null));
+        clusterers.put("k-means+local", new ImprovingDeliveryClusterer(
+                new KMeansDeliveryClusterer(Math.max(12, capacity), 1, null, null), Math.max(12, capacity),
+                IMPROVE_BUDGET));
+        clusterers.put("anytime " + ANYTIME_DEADLINE.toSeconds() + "s", new AnytimeDeliveryClusterer(
+                Math.max(12, capacity), ANYTIME_DEADLINE, null, progress -> {}));
+        clusterers.put("min-cost-flow", new MinCostFlowDeliveryClusterer(Math.max(15, capacity)));
+        clusterers.put("partitioned", new PartitionedDeliveryClusterer(Math.max(12, capacity)));
+        return clusterers;
+    }
+
+    static List<Result> evaluate(List<Dataset> datasets) {
+        List<Result> results = new ArrayList<>();
+        for (Dataset dataset : datasets) {
+            int driverCount = dataset.drivers().get().size();
+            for (Map.Entry<String, DeliveryClusterer> entry
+                    : clusterers(dataset.deliveries().size(), driverCount).entrySet()) {
+                System.out.println("Evaluating " + entry.getKey() + " on " + dataset.name());
+                results.add(evaluate(dataset, entry.getKey(), entry.getValue()));
+            }
+        }
+        return results;
+    }
+
+    static Result evaluate(Dataset dataset, String name, DeliveryClusterer clusterer) {
+        List<Delivery> deliveries = dataset.deliveries();
+        List<Driver> drivers = dataset.drivers().get();
+        List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        System.gc();
+        long baseline = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            baseline += pool.getUsage().getUsed();
+            pool.resetPeakUsage();
+        }
+
+        long start = System.nanoTime();
+        List<Driver> assigned;
+        try {
+            assigned = clusterer.clusterAndAssign(deliveries, drivers);
+        } catch (RuntimeException e) {
+            return new Result(dataset.name(), name, deliveries.size(), drivers.size(),
+                    (System.nanoTime() - start) / 1_000_000, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN,
+                    Double.NaN, 0, String.valueOf(e.getMessage()));
+        }
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return measure(dataset.name(), name, deliveries, assigned, wallMillis, Math.max(0, peak - baseline));
+    }
+
+    /** Quality metrics of an assignment; drivers without a home location are left out of the distances. */
+    static Result measure(String dataset, String clusterer, List<Delivery> deliveries, List<Driver> drivers,
+                          long wallMillis, long peakHeapBytes) {
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+        DriverIndex index = new DriverIndex(kernel);
+        Map<Delivery, Integer> deliveryIndex = new IdentityHashMap<>();
+        for (int d = 0; d < deliveries.size(); d++) {
+            deliveryIndex.put(deliveries.get(d), d);
+        }
+
+        double total = 0;
+        double max = 0;
+        double maxDiameter = 0;
+        double diameterSum = 0;
+        int nonEmpty = 0;
+        int maxLoad = 0;
+        int assignedCount = 0;
+        int displaced = 0;
+        for (int i = 0; i < drivers.size(); i++) {
+            List<Delivery> stops = drivers.get(i).getAssignedDeliveries();
+            maxLoad = Math.max(maxLoad, stops.size());
+            assignedCount += stops.size();
+            double[] xs = new double[stops.size()];
+            double[] ys = new double[stops.size()];
+            for (int s = 0; s < stops.size(); s++) {
+                int d = deliveryIndex.get(stops.get(s));
+                xs[s] = kernel.deliveryX(d);
+                ys[s] = kernel.deliveryY(d);
+                if (kernel.hasDriver(i)) {
+                    double km = kernel.deliveryToDriver(d, i);
+                    total += km;
+                    max = Math.max(max, km);
+                }
+                String pinned = stops.get(s).assignToDriverName();
+                if ((pinned == null || pinned.isBlank()) && index.nearest(xs[s], ys[s]) != i) {
+                    displaced++;
+                }
+            }
+            if (!stops.isEmpty()) {
+                double diameter = diameter(xs, ys);
+                maxDiameter = Math.max(maxDiameter, diameter);
+                diameterSum += diameter;
+                nonEmpty++;
+            }
+        }
+        double meanLoad = drivers.isEmpty() ? 0 : (double) assignedCount / drivers.size();
+        return new Result(dataset, clusterer, deliveries.size(), drivers.size(), wallMillis, peakHeapBytes, total,
+                max, maxDiameter, nonEmpty == 0 ? 0 : diameterSum / nonEmpty,
+                meanLoad == 0 ? 1 : maxLoad / meanLoad, displaced, "");
+    }
+
+    /** Largest distance between two of the points: the widest pair of their convex hull's vertices. */
+    static double diameter(double[] xs, double[] ys) {
+        int n = xs.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> xs[a] != xs[b] ? Double.compare(xs[a], xs[b]) : Double.compare(ys[a], ys[b]));
+        // Andrew's monotone chain
+        int[] hull = new int[2 * n];
+        int size = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int floor = size;
+            for (int k = 0; k < n; k++) {
+                int p = order[pass == 0 ? k : n - 1 - k];
+                while (size >= floor + 2 && cross(xs, ys, hull[size - 2], hull[size - 1], p) <= 0) {
+                    size--;
+                }
+                hull[size++] = p;
+            }
+            size--;
+        }
+        size = Math.max(size, 1);
+        double best = 0;
+        for (int a = 0; a < size; a++) {
+            for (int b = a + 1; b < size; b++) {
+                best = Math.max(best, CoordinateKernel.distance(xs[hull[a]], ys[hull[a]], xs[hull[b]], ys[hull[b]]));
+            }
+        }
+        return best;
+    }
+
+    private static double cross(double[] xs, double[] ys, int o, int a, int b) {
+        return (xs[a] - xs[o]) * (ys[b] - ys[o]) - (ys[a] - ys[o]) * (xs[b] - xs[o]);
+    }
+
+    /** Print the results as an aligned table. */
+    static void printTable(List<Result> results) {
+        String format = "%-24s %-14s %10s %7s %9s %8s %11s %8s %9s %9s %9s %9s%n";
+        System.out.printf(format, "dataset", "clusterer", "deliveries", "drivers", "wall ms", "heap MB",
+                "total km", "max km", "max diam", "mean diam", "imbalance", "displaced");
+        for (Result r : results) {
+            if (!r.error().isEmpty()) {
+                System.out.printf("%-24s %-14s %10d %7d   failed: %s%n", r.dataset(), r.clusterer(), r.deliveries(),
+                        r.drivers(), r.error());
+                continue;
+            }
+            System.out.printf(format, r.dataset(), r.clusterer(), r.deliveries(), r.drivers(), r.wallMillis(),
+                    String.format("%.1f", r.peakHeapBytes() / 1048576.0), String.format("%.1f", r.totalKm()),
+                    String.format("%.2f", r.maxKm()), String.format("%.2f", r.maxDiameterKm()),
+                    String.format("%.2f", r.meanDiameterKm()), String.format("%.2f", r.loadImbalance()),
+                    r.displaced());
+        }
+    }
+
+    static void writeCsv(List<Result> results, Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(COLUMNS).build())) {
+            for (Result r : results) {
+                printer.printRecord(r.dataset(), r.clusterer(), r.deliveries(), r.drivers(), r.wallMillis(),
+                        r.peakHeapBytes(), r.totalKm(), r.maxKm(),
+                        r.maxDiameterKm(), r.meanDiameterKm(), r.loadImbalance(), r.displaced(), r.error());
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package schwimmer.kdrivers;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The deliveries in each driver's cluster, as delivery indices in the order they were added. Lets the
+ * clusterers look distances up by index in a {@link CoordinateKernel} instead of going through
+ * {@link Delivery} objects.
+ */
+final class Clusters {
+
+    private final int[][] members;
+    private final int[] sizes;
+
+    Clusters(int clusterCount) {
+        members = new int[clusterCount][];
+        Arrays.fill(members, new int[0]);
+        sizes = new int[clusterCount];
+    }
+
+    int count() {
+        return members.length;
+    }
+
+    int size(int cluster) {
+        return sizes[cluster];
+    }
+
+    int get(int cluster, int position) {
+        return members[cluster][position];
+    }
+
+    void add(int cluster, int delivery) {
+        if (sizes[cluster] == members[cluster].length) {
+            members[cluster] = Arrays.copyOf(members[cluster], Math.max(4, sizes[cluster] * 2));
+        }
+        members[cluster][sizes[cluster]++] = delivery;
+    }
+
+    /** Remove the delivery at a position, keeping the others in order. */
+    void remove(int cluster, int position) {
+        System.arraycopy(members[cluster], position + 1, members[cluster], position, sizes[cluster] - position - 1);
+        sizes[cluster]--;
+    }
+
+    /** Remove the deliveries at every position flagged in {@code removed}, keeping the others in order. */
+    void removeAll(int cluster, boolean[] removed) {
+        int kept = 0;
+        for (int i = 0; i < sizes[cluster]; i++) {
+            if (!removed[i]) {
+                members[cluster][kept++] = members[cluster][i];
+            }
+        }
+        sizes[cluster] = kept;
+    }
+
+    /** Add each cluster's deliveries to its driver, in order. */
+    List<Driver> assignTo(List<Delivery> deliveries, List<Driver> drivers) {
+        for (int i = 0; i < members.length; i++) {
+            for (int j = 0; j < sizes[i]; j++) {
+                drivers.get(i).addDelivery(deliveries.get(members[i][j]));
+            }
+        }
+        return drivers;
+    }
+}
@@ -0,0 +1,611 @@
+package schwimmer.kdrivers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contraction hierarchy over a directed graph with non-negative edge weights, for fast exact shortest-path
+ * distances.
+ * <p>
+ * Preprocessing contracts nodes one at a time, least important first (by edge difference, already contracted
+ * neighbours and level, with lazy updates), adding a shortcut u-x through each contracted node v unless a
+ * witness search, bounded in settled nodes and hops, finds a path from u to x avoiding v that is no longer.
+ * A query then only walks upward in the order: a forward search from the source over edges to higher-ranked
+ * nodes, a backward search from the target likewise, and the distance is the best sum over nodes both
+ * searches reached. Both searches stall on demand: a node reached more cheaply from above than by the search
+ * itself is not expanded.
+ * Only distances are kept, not the paths behind shortcuts.
+ * <p>
+ * Queries are thread-safe. Backward search spaces are cached per target node, since the clusterers query
+ * the same driver homes over and over.
+ */
+final class ContractionHierarchy {
+
+    /** Nodes a witness search may settle before giving up and adding the shortcut anyway. */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    /** Edges on a witness path beyond which the search gives up likewise. */
+    private static final int WITNESS_HOP_LIMIT = 8;
+    /** Smaller limits for the witness searches that only estimate a node's priority. */
+    private static final int ESTIMATE_SETTLE_LIMIT = 50;
+    private static final int ESTIMATE_HOP_LIMIT = 3;
+
+    private final int nodeCount;
+    private final int[] upFirst;
+    private final int[] upTo;
+    private final double[] upWeight;
+    private final int[] downFirst;
+    private final int[] downFrom;
+    private final double[] downWeight;
+    private final int shortcuts;
+    private final Map<Integer, SearchSpace> backwardSpaces = new ConcurrentHashMap<>();
+    private final ThreadLocal<Scratch> scratch;
+
+    ContractionHierarchy(int nodeCount, int[] from, int[] to, double[] weight) {
+        this.nodeCount = nodeCount;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(nodeCount));
+        Graph graph = new Graph(nodeCount, from.length);
+        for (int e = 0; e < from.length; e++) {
+            if (weight[e] < 0 || Double.isNaN(weight[e])) {
+                throw new IllegalArgumentException("Edge weights must be non-negative: " + weight[e]);
+            }
+            if (from[e] != to[e]) {
+                graph.improve(from[e], to[e], weight[e]);
+            }
+        }
+        int originalEdges = graph.edgeCount;
+
+        contract(graph);
+        shortcuts = graph.edgeCount - originalEdges;
+
+        // Contraction leaves each node's lists holding exactly its edges to higher-ranked nodes: out[u] its
+        // upward edges, in[x] the downward edges into x
+        upFirst = new int[nodeCount + 1];
+        downFirst = new int[nodeCount + 1];
+        for (int v = 0; v < nodeCount; v++) {
+            upFirst[v + 1] = upFirst[v] + graph.out[v].size;
+            downFirst[v + 1] = downFirst[v] + graph.in[v].size;
+        }
+        upTo = new int[upFirst[nodeCount]];
+        upWeight = new double[upTo.length];
+        downFrom = new int[downFirst[nodeCount]];
+        downWeight = new double[downFrom.length];
+        for (int v = 0; v < nodeCount; v++) {
+            for (int i = 0; i < graph.out[v].size; i++) {
+                int e = graph.out[v].ids[i];
+                upTo[upFirst[v] + i] = graph.edgeTo[e];
+                upWeight[upFirst[v] + i] = graph.edgeWeight[e];
+            }
+            for (int i = 0; i < graph.in[v].size; i++) {
+                int e = graph.in[v].ids[i];
+                downFrom[downFirst[v] + i] = graph.edgeFrom[e];
+                downWeight[downFirst[v] + i] = graph.edgeWeight[e];
+            }
+        }
+    }
+
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    /** Number of shortcut edges preprocessing added. */
+    int shortcutCount() {
+        return shortcuts;
+    }
+
+    /** Approximate size of the query structures in bytes, excluding the search space cache. */
+    long bytes() {
+        return 4L * (upFirst.length + upTo.length + downFirst.length + downFrom.length)
+                + 8L * (upWeight.length + downWeight.length);
+    }
+
+    /** Shortest distance from source to target, infinite if there is no path. */
+    double distance(int source, int target) {
+        return distances(source, new int[] {target})[0];
+    }
+
+    /** Shortest distances from one source to each target, infinite where there is no path. */
+    double[] distances(int source, int[] targets) {
+        Scratch s = scratch.get();
+        s.search(source, upFirst, upTo, upWeight, downFirst, downFrom, downWeight);
+        double[] result = new double[targets.length];
+        for (int t = 0; t < targets.length; t++) {
+            SearchSpace space = backwardSpaces.computeIfAbsent(targets[t], this::backwardSpace);
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < space.nodes.length; i++) {
+                double d = s.dist[space.nodes[i]] + space.dist[i];
+                if (d < best) {
+                    best = d;
+                }
+            }
+            result[t] = best;
+        }
+        s.reset();
+        return result;
+    }
+
+    private SearchSpace backwardSpace(int target) {
+        Scratch s = new Scratch(nodeCount);
+        s.search(target, downFirst, downFrom, downWeight, upFirst, upTo, upWeight);
+        int[] nodes = Arrays.copyOf(s.settled, s.settledCount);
+        double[] dist = new double[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            dist[i] = s.dist[nodes[i]];
+        }
+        return new SearchSpace(nodes, dist);
+    }
+
+    /**
+     * Contract every node, least important first. Contracting a node only counts the deletion and raises the
+     * level of each neighbour, and nudges its queued priority up by one; a node's full priority is recomputed
+     * when it reaches the top of the queue, and it goes back in if it is no longer the cheapest.
+     */
+    private void contract(Graph graph) {
+        int[] deletedNeighbours = new int[nodeCount];
+        int[] level = new int[nodeCount];
+        int[] priority = new int[nodeCount];
+        Witness witness = new Witness(nodeCount);
+        List<Shortcut> found = new ArrayList<>();
+        Heap queue = new Heap();
+        for (int v = 0; v < nodeCount; v++) {
+            priority[v] = priority(v, graph, deletedNeighbours, level, witness, found);
+            queue.push(priority[v], v);
+        }
+        while (queue.size > 0) {
+            double key = queue.peekKey();
+            int v = queue.pop();
+            if (graph.contracted[v] || key != priority[v]) {
+                continue;
+            }
+            int updated = priority(v, graph, deletedNeighbours, level, witness, found);
+            if (queue.size > 0 && updated > queue.peekKey()) {
+                priority[v] = updated;
+                queue.push(updated, v);
+                continue;
+            }
+            found.clear();
+            shortcuts(v, graph, witness, WITNESS_SETTLE_LIMIT, WITNESS_HOP_LIMIT, Integer.MAX_VALUE, found);
+            for (Shortcut shortcut : found) {
+                graph.improve(shortcut.from(), shortcut.to(), shortcut.weight());
+            }
+            graph.contracted[v] = true;
+            // priority() compacted v's lists, so they now hold exactly its edges to higher-ranked nodes
+            for (EdgeList list : new EdgeList[] {graph.out[v], graph.in[v]}) {
+                for (int i = 0; i < list.size; i++) {
+                    int u = graph.other(list.ids[i], v);
+                    deletedNeighbours[u]++;
+                    level[u] = Math.max(level[u], level[v] + 1);
+                    queue.push(++priority[u], u);
+                }
+            }
+        }
+    }
+
+    /**
+     * Four times the edge difference of contracting v now, plus twice its deleted neighbours, plus its level;
+     * the latter two spread contraction evenly over the graph, which keeps query search spaces small.
+     * Compacts v's lists first.
+     */
+    private int priority(int v, Graph graph, int[] deletedNeighbours, int[] level, Witness witness,
+                         List<Shortcut> found) {
+        graph.compact(v);
+        int degree = graph.out[v].size + graph.in[v].size;
+        found.clear();
+        shortcuts(v, graph, witness, ESTIMATE_SETTLE_LIMIT, ESTIMATE_HOP_LIMIT, degree + 1, found);
+        return 4 * (found.size() - degree) + 2 * deletedNeighbours[v] + level[v];
+    }
+
+    /**
+     * Add to {@code result} the shortcuts needed to contract v, whose lists must be compact; stops early
+     * once more than {@code limit} are found (enough to rank a node that is clearly expensive).
+     */
+    private void shortcuts(int v, Graph graph, Witness witness, int settleLimit, int hopLimit, int limit,
+                           List<Shortcut> result) {
+        EdgeList in = graph.in[v];
+        EdgeList out = graph.out[v];
+        for (int i = 0; i < in.size; i++) {
+            int u = graph.edgeFrom[in.ids[i]];
+            double w1 = graph.edgeWeight[in.ids[i]];
+            double maxVia = -1;
+            int targets = 0;
+            witness.nextRound();
+            for (int j = 0; j < out.size; j++) {
+                int x = graph.edgeTo[out.ids[j]];
+                if (x != u) {
+                    maxVia = Math.max(maxVia, w1 + graph.edgeWeight[out.ids[j]]);
+                    witness.target[x] = witness.round;
+                    targets++;
+                }
+            }
+            if (targets == 0) {
+                continue;
+            }
+            witness.search(u, v, maxVia, targets, settleLimit, hopLimit, graph);
+            for (int j = 0; j < out.size; j++) {
+                int x = graph.edgeTo[out.ids[j]];
+                if (x == u) {
+                    continue;
+                }
+                double via = w1 + graph.edgeWeight[out.ids[j]];
+                if (witness.dist[x] > via) {
+                    result.add(new Shortcut(u, x, via));
+                    if (result.size() > limit) {
+                        witness.reset();
+                        return;
+                    }
+                }
+            }
+            witness.reset();
+        }
+    }
+
+    private record Shortcut(int from, int to, double weight) {}
+
+    private record SearchSpace(int[] nodes, double[] dist) {}
+
+    /**
+     * The graph during preprocessing. Edges are numbered, and a node's lists hold edge ids, so an edge's
+     * weight lives in one place for both its ends and is found by its end points through a hash index.
+     * Edges to contracted nodes are dropped from a node's lists lazily, by {@link #compact}.
+     */
+    private static final class Graph {
+        final EdgeList[] out;
+        final EdgeList[] in;
+        final boolean[] contracted;
+        int[] edgeFrom;
+        int[] edgeTo;
+        double[] edgeWeight;
+        int edgeCount;
+        private final EdgeIndex index;
+
+        Graph(int nodeCount, int expectedEdges) {
+            out = new EdgeList[nodeCount];
+            in = new EdgeList[nodeCount];
+            for (int v = 0; v < nodeCount; v++) {
+                out[v] = new EdgeList();
+                in[v] = new EdgeList();
+            }
+            contracted = new boolean[nodeCount];
+            int capacity = Math.max(16, expectedEdges);
+            edgeFrom = new int[capacity];
+            edgeTo = new int[capacity];
+            edgeWeight = new double[capacity];
+            index = new EdgeIndex(capacity);
+        }
+
+        /** Add the edge, or lower the weight of the existing one between the same nodes. */
+        void improve(int from, int to, double weight) {
+            int e = index.get(from, to);
+            if (e >= 0) {
+                if (weight < edgeWeight[e]) {
+                    edgeWeight[e] = weight;
+                }
+                return;
+            }
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+                edgeWeight = Arrays.copyOf(edgeWeight, edgeCount * 2);
+            }
+            e = edgeCount++;
+            edgeFrom[e] = from;
+            edgeTo[e] = to;
+            edgeWeight[e] = weight;
+            index.put(from, to, e);
+            out[from].add(e);
+            in[to].add(e);
+        }
+
+        int other(int edge, int node) {
+            return edgeFrom[edge] == node ? edgeTo[edge] : edgeFrom[edge];
+        }
+
+        /** Drop v's edges to and from contracted nodes. */
+        void compact(int v) {
+            EdgeList list = out[v];
+            int kept = 0;
+            for (int i = 0; i < list.size; i++) {
+                if (!contracted[edgeTo[list.ids[i]]]) {
+                    list.ids[kept++] = list.ids[i];
+                }
+            }
+            list.size = kept;
+            list = in[v];
+            kept = 0;
+            for (int i = 0; i < list.size; i++) {
+                if (!contracted[edgeFrom[list.ids[i]]]) {
+                    list.ids[kept++] = list.ids[i];
+                }
+            }
+            list.size = kept;
+        }
+    }
+
+    /** Growable list of one node's edge ids. */
+    private static final class EdgeList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /** Open-addressing hash map from an edge's (from, to) to its id; edges are never removed. */
+    private static final class EdgeIndex {
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        EdgeIndex(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected) * 2 - 1) * 2;
+            keys = new long[capacity];
+            Arrays.fill(keys, -1);
+            values = new int[capacity];
+        }
+
+        int get(int from, int to) {
+            long key = key(from, to);
+            for (int i = slot(key, keys.length); keys[i] != -1; i = (i + 1) & (keys.length - 1)) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(int from, int to, int value) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            insert(key(from, to), value);
+            size++;
+        }
+
+        private void insert(long key, int value) {
+            int i = slot(key, keys.length);
+            while (keys[i] != -1) {
+                i = (i + 1) & (keys.length - 1);
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            Arrays.fill(keys, -1);
+            values = new int[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static long key(int from, int to) {
+            return ((long) from << 32) | to;
+        }
+
+        private static int slot(long key, int capacity) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Dijkstra over the remaining graph during preprocessing, skipping the node being contracted, bounded by
+     * distance, by the nodes it settles and by the edges on a path; it stops once every target is settled.
+     */
+    private static final class Witness {
+        final double[] dist;
+        final int[] hops;
+        /** Nodes marked with the current {@link #round} are the targets of the search. */
+        final int[] target;
+        int round;
+        final int[] touched;
+        int touchedCount;
+        final Heap heap = new Heap();
+
+        Witness(int n) {
+            dist = new double[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            hops = new int[n];
+            target = new int[n];
+            touched = new int[n];
+        }
+
+        void search(int source, int skip, double maxDistance, int targets, int settleLimit, int hopLimit,
+                    Graph graph) {
+            visit(source, 0, 0);
+            heap.push(0, source);
+            int settled = 0;
+            while (heap.size > 0 && settled < settleLimit) {
+                double d = heap.peekKey();
+                int u = heap.pop();
+                if (d > dist[u]) {
+                    continue;
+                }
+                if (d > maxDistance) {
+                    break;
+                }
+                settled++;
+                if (target[u] == round && --targets == 0) {
+                    break;
+                }
+                if (hops[u] >= hopLimit) {
+                    continue;
+                }
+                EdgeList out = graph.out[u];
+                for (int i = 0; i < out.size; i++) {
+                    int e = out.ids[i];
+                    int x = graph.edgeTo[e];
+                    if (x == skip || graph.contracted[x]) {
+                        continue;
+                    }
+                    double nd = d + graph.edgeWeight[e];
+                    if (nd < dist[x]) {
+                        visit(x, nd, hops[u] + 1);
+                        heap.push(nd, x);
+                    }
+                }
+            }
+            heap.clear();
+        }
+
+        /** Start marking a new search's targets. */
+        void nextRound() {
+            if (++round == 0) {
+                Arrays.fill(target, 0);
+                round = 1;
+            }
+        }
+
+        private void visit(int node, double d, int h) {
+            if (dist[node] == Double.POSITIVE_INFINITY) {
+                touched[touchedCount++] = node;
+            }
+            dist[node] = d;
+            hops[node] = h;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = Double.POSITIVE_INFINITY;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    /** Per-thread Dijkstra state for queries over one of the upward graphs. */
+    private static final class Scratch {
+        final double[] dist;
+        final int[] touched;
+        int touchedCount;
+        /** Nodes the last search expanded, i.e. reached and not stalled. */
+        final int[] settled;
+        int settledCount;
+        final Heap heap = new Heap();
+
+        Scratch(int n) {
+            dist = new double[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            touched = new int[n];
+            settled = new int[n];
+        }
+
+        /**
+         * Complete search from source over (first, adjacent, weight); every reached node keeps its distance
+         * until {@link #reset}. A node is stalled rather than expanded when one of its edges to a higher node
+         * in the opposite direction (stallFirst, stallAdjacent, stallWeight) proves its distance is not
+         * shortest; the best meeting node of a query is never stalled.
+         */
+        void search(int source, int[] first, int[] adjacent, double[] weight,
+                    int[] stallFirst, int[] stallAdjacent, double[] stallWeight) {
+            dist[source] = 0;
+            touched[touchedCount++] = source;
+            heap.push(0, source);
+            while (heap.size > 0) {
+                double d = heap.peekKey();
+                int u = heap.pop();
+                if (d > dist[u] || stalled(u, d, stallFirst, stallAdjacent, stallWeight)) {
+                    continue;
+                }
+                settled[settledCount++] = u;
+                for (int e = first[u]; e < first[u + 1]; e++) {
+                    int x = adjacent[e];
+                    double nd = d + weight[e];
+                    if (nd < dist[x]) {
+                        if (dist[x] == Double.POSITIVE_INFINITY) {
+                            touched[touchedCount++] = x;
+                        }
+                        dist[x] = nd;
+                        heap.push(nd, x);
+                    }
+                }
+            }
+        }
+
+        private boolean stalled(int u, double d, int[] first, int[] adjacent, double[] weight) {
+            for (int e = first[u]; e < first[u + 1]; e++) {
+                if (dist[adjacent[e]] + weight[e] < d) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = Double.POSITIVE_INFINITY;
+            }
+            touchedCount = 0;
+            settledCount = 0;
+        }
+    }
+
+    /** Binary min-heap of (key, node) pairs with lazy deletion. */
+    private static final class Heap {
+        double[] keys = new double[16];
+        int[] nodes = new int[16];
+        int size;
+
+        void push(double key, int node) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            double key = keys[--size];
+            int node = nodes[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (key <= keys[child]) {
+                    break;
+                }
+                keys[i] = keys[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+            return top;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
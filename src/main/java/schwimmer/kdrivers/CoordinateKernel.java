@@ -0,0 +1,126 @@
+package schwimmer.kdrivers;
+
+import java.util.List;
+
+/**
+ * Delivery and driver home locations projected once into a local plane, in kilometres, for the clusterers'
+ * distance calculations. Uses an equirectangular projection centred on the mean location, which keeps
+ * east-west and north-south distances on the same scale (raw degrees of longitude are about 25% short at
+ * New York's latitude) and is accurate to well under 1% across a metro area.
+ * <p>
+ * Coordinates live in flat arrays indexed like the delivery and driver lists the kernel was built from;
+ * drivers without coordinates are NaN. Lookups and distances allocate nothing.
+ */
+final class CoordinateKernel {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final double originLat;
+    private final double originLon;
+    private final double kmPerDegreeLat;
+    private final double kmPerDegreeLon;
+    private final double[] deliveryX;
+    private final double[] deliveryY;
+    private final double[] driverX;
+    private final double[] driverY;
+
+    CoordinateKernel(List<Delivery> deliveries, List<Driver> drivers) {
+        double latSum = 0;
+        double lonSum = 0;
+        int count = 0;
+        for (Delivery d : deliveries) {
+            latSum += d.latitude();
+            lonSum += d.longitude();
+            count++;
+        }
+        for (Driver driver : drivers) {
+            if (driver.hasCoordinates()) {
+                latSum += driver.getLatitude();
+                lonSum += driver.getLongitude();
+                count++;
+            }
+        }
+        originLat = count == 0 ? 0 : latSum / count;
+        originLon = count == 0 ? 0 : lonSum / count;
+        kmPerDegreeLat = Math.toRadians(EARTH_RADIUS_KM);
+        kmPerDegreeLon = kmPerDegreeLat * Math.cos(Math.toRadians(originLat));
+
+        deliveryX = new double[deliveries.size()];
+        deliveryY = new double[deliveries.size()];
+        for (int i = 0; i < deliveries.size(); i++) {
+            Delivery d = deliveries.get(i);
+            deliveryX[i] = projectX(d.longitude());
+            deliveryY[i] = projectY(d.latitude());
+        }
+        driverX = new double[drivers.size()];
+        driverY = new double[drivers.size()];
+        for (int i = 0; i < drivers.size(); i++) {
+            Driver driver = drivers.get(i);
+            driverX[i] = driver.hasCoordinates() ? projectX(driver.getLongitude()) : Double.NaN;
+            driverY[i] = driver.hasCoordinates() ? projectY(driver.getLatitude()) : Double.NaN;
+        }
+    }
+
+    int deliveryCount() {
+        return deliveryX.length;
+    }
+
+    int driverCount() {
+        return driverX.length;
+    }
+
+    double deliveryX(int delivery) {
+        return deliveryX[delivery];
+    }
+
+    double deliveryY(int delivery) {
+        return deliveryY[delivery];
+    }
+
+    double driverX(int driver) {
+        return driverX[driver];
+    }
+
+    double driverY(int driver) {
+        return driverY[driver];
+    }
+
+    /** Whether the driver has a home location. */
+    boolean hasDriver(int driver) {
+        return !Double.isNaN(driverX[driver]);
+    }
+
+    /** Kilometres from a delivery to a driver's home. */
+    double deliveryToDriver(int delivery, int driver) {
+        return distance(deliveryX[delivery], deliveryY[delivery], driverX[driver], driverY[driver]);
+    }
+
+    /** Kilometres from a driver's home to a point in the plane. */
+    double driverToPoint(int driver, double x, double y) {
+        return distance(x, y, driverX[driver], driverY[driver]);
+    }
+
+    double projectX(double longitude) {
+        return (longitude - originLon) * kmPerDegreeLon;
+    }
+
+    double projectY(double latitude) {
+        return (latitude - originLat) * kmPerDegreeLat;
+    }
+
+    /** Inverse of {@link #projectX}. */
+    double longitude(double x) {
+        return originLon + x / kmPerDegreeLon;
+    }
+
+    /** Inverse of {@link #projectY}. */
+    double latitude(double y) {
+        return originLat + y / kmPerDegreeLat;
+    }
+
+    static double distance(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -24,6 +24,11 @@ class CsvLoader {
         boolean isDriver() {
             return driverColumn != null && driverColumn.trim().toLowerCase().contains(DRIVER_MARKER);
         }
+
+        /** Address sent to the geocoder: lookup_address when present, otherwise address. */
+        String geocodeAddress() {
+            return lookupAddress != null && !lookupAddress.isBlank() ? lookupAddress : address;
+        }
     }
 
     record LoadResult(List<CsvRow> drivers, List<CsvRow> deliveries) {}
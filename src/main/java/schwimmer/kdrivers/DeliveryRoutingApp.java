@@ -3,10 +3,16 @@ package schwimmer.kdrivers;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -16,14 +22,85 @@ import java.util.zip.ZipOutputStream;
 class DeliveryRoutingApp {
 
     private static final Path OUTPUT_DIR = Path.of("routes");
+    /** Assignment saved by {@link #warm} for a later run with {@code --use-warm}. */
+    private static final Path WARM_ASSIGNMENT = Path.of(".map-tile-cache", "warm-assignment.txt");
+    /** Time each driver's route may spend being improved. */
+    private static final Duration ROUTE_BUDGET = Duration.ofMillis(200);
 
-    void run(Path csvPath, boolean includeMap) throws InterruptedException {
+    private final GeocodingEngine geocoder;
+    private final DeliveryClusterer clusterer;
+
+    DeliveryRoutingApp(GeocodingEngine geocoder) {
+        this(geocoder, new KMeansDeliveryClusterer());
+    }
+
+    DeliveryRoutingApp(GeocodingEngine geocoder, DeliveryClusterer clusterer) {
+        this.geocoder = geocoder;
+        this.clusterer = clusterer;
+    }
+
+    /**
+     * @param useWarm use the assignment a previous {@link #warm} saved for these deliveries and drivers, if
+     *                any, instead of clustering; the saved assignment is deleted once used
+     */
+    void run(Path csvPath, boolean includeMap, boolean useWarm) {
         CsvLoader.LoadResult loadResult = loadCsv(csvPath);
         GeocodedData geocoded = geocodeAll(loadResult);
-        List<Driver> assignedDrivers = clusterAndAssign(geocoded.deliveries(), geocoded.drivers());
+        Optional<List<Driver>> warmed = useWarm ? loadWarmAssignment(geocoded) : Optional.empty();
+        List<Driver> assignedDrivers = warmed.orElseGet(
+                () -> clusterAndAssign(geocoded.deliveries(), geocoded.drivers()));
         verifyAllDeliveriesAssigned(geocoded.deliveries(), assignedDrivers);
+        new RouteSequencer(ROUTE_BUDGET).sequence(assignedDrivers);
         printResults(assignedDrivers);
         generateOutput(assignedDrivers, geocoded.unresolvedAddresses(), includeMap);
+        if (warmed.isPresent()) {
+            deleteWarmAssignment();
+        }
+    }
+
+    /**
+     * Fill the geocode and map tile caches for a CSV without generating any output, so that a later
+     * {@link #run} is fully cache-hot. Deliveries are assigned to learn which map tiles each driver's route
+     * sheet will need, and the assignment is saved for a run with {@code useWarm}, since clustering again
+     * may not give the same result. Can be interrupted and rerun; cached work is not repeated.
+     *
+     * @param useWarm prefetch for the assignment an earlier warm saved, if any, rather than clustering again
+     */
+    void warm(Path csvPath, boolean useWarm) throws InterruptedException {
+        CsvLoader.LoadResult loadResult = loadCsv(csvPath);
+        GeocodedData geocoded = geocodeAll(loadResult);
+        System.out.println("Geocoded " + (geocoded.drivers().size() + geocoded.deliveries().size())
+                + " rows, " + geocoded.unresolvedAddresses().size() + " unresolved");
+        Optional<List<Driver>> warmed = useWarm ? loadWarmAssignment(geocoded) : Optional.empty();
+        List<Driver> assignedDrivers = warmed.orElseGet(
+                () -> clusterAndAssign(geocoded.deliveries(), geocoded.drivers()));
+        if (warmed.isEmpty()) {
+            try {
+                WarmAssignment.save(WARM_ASSIGNMENT, geocoded.deliveries(), assignedDrivers);
+                System.out.println("Saved the assignment to " + WARM_ASSIGNMENT
+                        + "; run with --use-warm to use it instead of clustering again");
+            } catch (IOException e) {
+                System.err.println("Could not save the assignment: " + e.getMessage());
+            }
+        }
+        new MapImageGenerator().prefetchTiles(assignedDrivers);
+    }
+
+    /** Load and geocode a CSV as a dataset for {@link ClustererEvaluation}; unresolved rows are left out. */
+    ClustererEvaluation.Dataset dataset(Path csvPath) {
+        GeocodedData geocoded = geocodeAll(loadCsv(csvPath));
+        List<Driver> drivers = geocoded.drivers();
+        return new ClustererEvaluation.Dataset(csvPath.getFileName().toString(), geocoded.deliveries(), () -> {
+            List<Driver> copies = new ArrayList<>();
+            for (Driver driver : drivers) {
+                Driver copy = new Driver(driver.getId(), driver.getName(), driver.getAddress());
+                if (driver.hasCoordinates()) {
+                    copy.setCoordinates(driver.getLatitude(), driver.getLongitude());
+                }
+                copies.add(copy);
+            }
+            return copies;
+        });
     }
 
     private CsvLoader.LoadResult loadCsv(Path csvPath) {
@@ -40,68 +117,110 @@ class DeliveryRoutingApp {
         }
     }
 
-    private GeocodedData geocodeAll(CsvLoader.LoadResult loadResult) throws InterruptedException {
-        Geocoder geocoder = new Geocoder();
+    private GeocodedData geocodeAll(CsvLoader.LoadResult loadResult) {
+        List<CsvLoader.CsvRow> rows = new ArrayList<>(loadResult.drivers());
+        rows.addAll(loadResult.deliveries());
+
+        // Geocode each distinct address once (keyed by its normalized form) and share the result
+        Map<String, String> addressesByKey = new LinkedHashMap<>();
+        int lookups = 0;
+        for (CsvLoader.CsvRow row : rows) {
+            String geocodeAddress = row.geocodeAddress();
+            if (!geocodeAddress.isBlank()) {
+                lookups++;
+                addressesByKey.putIfAbsent(AddressNormalizer.normalize(geocodeAddress), geocodeAddress);
+            }
+        }
+        System.out.println("Geocoding " + lookups + " addresses (" + addressesByKey.size() + " distinct, "
+                + (lookups - addressesByKey.size()) + " lookups saved)");
+
+        Map<String, CompletableFuture<Geocoder.GeocodeResult>> byAddress =
+                geocoder.geocodeAll(addressesByKey.values());
+        Map<String, CompletableFuture<Geocoder.GeocodeResult>> results = new HashMap<>();
+        addressesByKey.forEach((key, address) -> results.put(key, byAddress.get(address)));
+
         List<String> unresolvedAddresses = new ArrayList<>();
-        List<Driver> drivers = geocodeDrivers(loadResult, geocoder, unresolvedAddresses);
-        List<Delivery> deliveries = geocodeDeliveries(loadResult, geocoder, unresolvedAddresses);
+        List<Driver> drivers = geocodeDrivers(loadResult, results, unresolvedAddresses);
+        List<Delivery> deliveries = geocodeDeliveries(loadResult, results, unresolvedAddresses);
         return new GeocodedData(drivers, deliveries, unresolvedAddresses);
     }
 
-    private List<Driver> geocodeDrivers(CsvLoader.LoadResult loadResult, Geocoder geocoder,
-                                        List<String> unresolvedAddresses) throws InterruptedException {
+    private List<Driver> geocodeDrivers(CsvLoader.LoadResult loadResult,
+                                        Map<String, CompletableFuture<Geocoder.GeocodeResult>> results,
+                                        List<String> unresolvedAddresses) {
         List<Driver> drivers = new ArrayList<>();
         for (int i = 0; i < loadResult.drivers().size(); i++) {
             CsvLoader.CsvRow row = loadResult.drivers().get(i);
             Driver driver = new Driver("DRV" + (i + 1), row.name(), row.address());
-            String geocodeAddress = (row.lookupAddress() != null && !row.lookupAddress().isBlank())
-                    ? row.lookupAddress() : row.address();
+            String geocodeAddress = row.geocodeAddress();
             if (!geocodeAddress.isBlank()) {
-                var result = geocoder.geocode(geocodeAddress);
+                var result = results.get(AddressNormalizer.normalize(geocodeAddress)).join();
                 if (result.coordinates().isEmpty()) {
-                    unresolvedAddresses.add(row.name() + " | " + row.address() + " (driver)");
+                    unresolvedAddresses.add(row.name() + " | " + row.address() + " (driver"
+                            + (result.failed() ? ", lookup failed" : "") + ")");
                 } else {
                     result.coordinates().ifPresent(coords ->
                             driver.setCoordinates(coords.latitude(), coords.longitude()));
                 }
-                if (!result.fromCache()) {
-                    Thread.sleep(1100);
-                }
             }
             drivers.add(driver);
         }
         return drivers;
     }
 
-    private List<Delivery> geocodeDeliveries(CsvLoader.LoadResult loadResult, Geocoder geocoder,
-                                            List<String> unresolvedAddresses) throws InterruptedException {
+    private List<Delivery> geocodeDeliveries(CsvLoader.LoadResult loadResult,
+                                            Map<String, CompletableFuture<Geocoder.GeocodeResult>> results,
+                                            List<String> unresolvedAddresses) {
         List<Delivery> deliveries = new ArrayList<>();
         for (int i = 0; i < loadResult.deliveries().size(); i++) {
             CsvLoader.CsvRow row = loadResult.deliveries().get(i);
-            String geocodeAddress = (row.lookupAddress() != null && !row.lookupAddress().isBlank())
-                    ? row.lookupAddress() : row.address();
+            String geocodeAddress = row.geocodeAddress();
             if (geocodeAddress.isBlank()) {
                 continue;
             }
             int index = i + 1;
-            var result = geocoder.geocode(geocodeAddress);
+            var result = results.get(AddressNormalizer.normalize(geocodeAddress)).join();
             if (result.coordinates().isEmpty()) {
-                unresolvedAddresses.add(row.name() + " | " + row.address() + " (delivery)");
+                unresolvedAddresses.add(row.name() + " | " + row.address() + " (delivery"
+                        + (result.failed() ? ", lookup failed" : "") + ")");
             } else {
                 result.coordinates().ifPresent(coords ->
                         deliveries.add(new Delivery("D" + index, coords.latitude(), coords.longitude(),
                                 row.address(), row.name(), row.apt(),
                                 row.assignTo() != null && !row.assignTo().isBlank() ? row.assignTo() : null)));
             }
-            if (!result.fromCache()) {
-                Thread.sleep(1100);
-            }
         }
         return deliveries;
     }
 
+    /** The assignment a previous {@link #warm} saved for these deliveries and drivers, if any. */
+    private Optional<List<Driver>> loadWarmAssignment(GeocodedData geocoded) {
+        try {
+            Optional<List<Driver>> warmed =
+                    WarmAssignment.load(WARM_ASSIGNMENT, geocoded.deliveries(), geocoded.drivers());
+            if (warmed.isPresent()) {
+                System.out.println("Using the assignment saved by warm in " + WARM_ASSIGNMENT
+                        + " instead of clustering");
+            } else {
+                System.out.println("No assignment saved by warm for these deliveries and drivers; clustering");
+            }
+            return warmed;
+        } catch (IOException e) {
+            System.err.println("Could not read the saved assignment, clustering again: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void deleteWarmAssignment() {
+        try {
+            Files.deleteIfExists(WARM_ASSIGNMENT);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + WARM_ASSIGNMENT + ": " + e.getMessage());
+        }
+    }
+
     private List<Driver> clusterAndAssign(List<Delivery> deliveries, List<Driver> drivers) {
-        return new KMeansDeliveryClusterer().clusterAndAssign(deliveries, drivers);
+        return clusterer.clusterAndAssign(deliveries, drivers);
     }
 
     private void verifyAllDeliveriesAssigned(List<Delivery> deliveries, List<Driver> assignedDrivers) {
@@ -167,6 +286,10 @@ class DeliveryRoutingApp {
             pdfGenerator.generatePdf(driver, pdfPath);
             System.out.println("Generated: " + pdfPath.toAbsolutePath());
         }
+        if (includeMap) {
+            TileCache tiles = MapImageGenerator.tileCache();
+            System.out.println("Map tiles in memory: " + tiles.hits() + " hits, " + tiles.misses() + " misses");
+        }
     }
 
     private void generateSummary(List<Driver> assignedDrivers) throws IOException {
@@ -0,0 +1,23 @@
+package schwimmer.kdrivers;
+
+/**
+ * Travel cost between locations, for clusterers that should judge "near" by something other than straight
+ * lines (e.g. {@link RoadNetwork}). Costs are in the model's own unit and only compared with each other.
+ */
+public interface DistanceModel {
+
+    /**
+     * Cost from one location to each target location; infinite where a target cannot be reached.
+     */
+    double[] costs(double fromLatitude, double fromLongitude, double[] toLatitudes, double[] toLongitudes);
+
+    /** Costs from every source to every target, as {@code result[source][target]}. */
+    default double[][] matrix(double[] fromLatitudes, double[] fromLongitudes,
+                              double[] toLatitudes, double[] toLongitudes) {
+        double[][] result = new double[fromLatitudes.length][];
+        for (int s = 0; s < result.length; s++) {
+            result[s] = costs(fromLatitudes[s], fromLongitudes[s], toLatitudes, toLongitudes);
+        }
+        return result;
+    }
+}
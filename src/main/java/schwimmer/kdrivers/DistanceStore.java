@@ -0,0 +1,474 @@
+package schwimmer.kdrivers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Persistent cache of travel costs between pairs of locations, in a single memory-mapped file, so addresses
+ * that recur from run to run do not pay for the same road-network queries again. Locations are keyed by
+ * their coordinates quantized to 1e-5 degrees (about 1 m); costs are stored as floats.
+ * <p>
+ * File layout: a 64-byte header (magic, version, model fingerprint, slot count, entry count, run counter,
+ * entry limit, write sequence) followed by an open-addressing hash table of 24-byte slots
+ * {@code [long fromKey][long toKey][float cost][int lastRun]}, probed linearly. Each open starts a new run;
+ * when the table reaches its entry limit, entries are evicted least recently used run first. Costs only
+ * mean something for the model that produced them, so a store opened with a different model fingerprint
+ * writes a fresh file and renames it over the old one; a mapped file is never truncated.
+ * <p>
+ * Writes hold an exclusive OS file lock and re-check the header under it, so several JVMs on one host can
+ * use the same file. Reads take no lock: writers make the sequence odd while they change the table, and a
+ * reader that sees it change retries, falling back to a shared lock. Reads only note which pairs they used;
+ * the next write marks them with the current run. Instances are thread-safe. Within a JVM use {@link #open},
+ * which shares one instance per file.
+ */
+class DistanceStore implements Closeable {
+
+    private static final int MAGIC = 0x4B444453; // "KDDS"
+    /** Written over the magic of a file that has been replaced, so processes still holding it reopen. */
+    private static final int SUPERSEDED = 0x4B445853; // "KDXS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int MODEL_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final int RUN_OFFSET = 24;
+    private static final int MAX_ENTRIES_OFFSET = 28;
+    private static final int SEQUENCE_OFFSET = 32;
+    private static final int SLOT_SIZE = 24;
+    private static final int MAX_SLOTS = 1 << 26;
+    private static final int OPTIMISTIC_READS = 8;
+    private static final int USED_BATCH = 4096;
+    private static final double QUANTUM = 1e5;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final Map<Path, DistanceStore> OPEN_STORES = new HashMap<>();
+
+    private final Path file;
+    private final long model;
+    private final int slots;
+    private final int maxEntries;
+    /** Pairs read in this run whose lastRun is older, to be marked by the next write. */
+    private final Set<Pair> used = ConcurrentHashMap.newKeySet();
+    /** Null once closed, or once the file belongs to another model. */
+    private volatile Mapping mapping;
+    private int references = 1; // guarded by OPEN_STORES
+
+    private record Mapping(FileChannel channel, MappedByteBuffer buffer, int slots, int maxEntries, int run) {
+    }
+
+    private record Pair(long from, long to) {
+    }
+
+    /**
+     * @param maxEntries pairs kept before the least recently used are evicted; an existing file for the same
+     *                   model keeps the limit it was created with, so processes sharing it agree on its size
+     * @param model fingerprint of the distance model whose costs are stored
+     */
+    DistanceStore(Path file, int maxEntries, long model) throws IOException {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.file = file;
+        this.model = model;
+        // Keep the table at most 3/4 full so probe sequences stay short
+        this.slots = (int) Math.min(MAX_SLOTS, Long.highestOneBit(maxEntries * 4L / 3) << 1);
+        this.maxEntries = Math.min(maxEntries, slots / 4 * 3);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.mapping = openFile(true);
+    }
+
+    /**
+     * Open the store at the given file, creating it if needed. Returns the already open instance when the
+     * file is open elsewhere in this JVM; each call must be matched by a {@link #close}.
+     *
+     * @throws IOException if the file is already open in this JVM for another model
+     */
+    static DistanceStore open(Path file, int maxEntries, long model) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (OPEN_STORES) {
+            DistanceStore existing = OPEN_STORES.get(key);
+            if (existing != null) {
+                if (existing.model != model) {
+                    throw new IOException(file + " is already open for another distance model");
+                }
+                existing.references++;
+                return existing;
+            }
+            DistanceStore store = new DistanceStore(key, maxEntries, model);
+            OPEN_STORES.put(key, store);
+            return store;
+        }
+    }
+
+    /** Key for a location: latitude and longitude in 1e-5 degrees, packed into one long. */
+    static long key(double latitude, double longitude) {
+        long lat = Math.round(latitude * QUANTUM);
+        long lon = Math.round(longitude * QUANTUM);
+        return (lat << 32) | (lon & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Look up the costs from one location to several others. Found costs are written to {@code costs} and
+     * count as used in this run; missing ones are left untouched.
+     *
+     * @return for each target, whether its cost was found
+     */
+    boolean[] get(long from, long[] to, double[] costs) throws IOException {
+        Mapping current = mapping;
+        if (current == null) {
+            return new boolean[to.length];
+        }
+        float[] read = new float[to.length];
+        int[] lastRun = new int[to.length];
+        boolean[] found = null;
+        for (int attempt = 0; attempt < OPTIMISTIC_READS && found == null; attempt++) {
+            int sequence = (int) INT.getAcquire(current.buffer, SEQUENCE_OFFSET);
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (!isCurrent(current)) {
+                break;
+            }
+            lookUp(current, from, to, read, lastRun);
+            VarHandle.acquireFence();
+            if ((int) INT.getVolatile(current.buffer, SEQUENCE_OFFSET) == sequence) {
+                found = found(current, from, to, read, lastRun, costs);
+            }
+        }
+        if (found == null) {
+            found = withLock(true, locked -> {
+                lookUp(locked, from, to, read, lastRun);
+                return found(locked, from, to, read, lastRun, costs);
+            }, new boolean[to.length]);
+        }
+        if (used.size() >= USED_BATCH) {
+            withLock(false, this::markUsed, null);
+        }
+        return found;
+    }
+
+    /** Store the costs from one location to several others, replacing any previous ones. */
+    void put(long from, long[] to, double[] costs) throws IOException {
+        withLock(false, locked -> {
+            markUsed(locked);
+            ByteBuffer buffer = locked.buffer;
+            int sequence = beginWrite(buffer);
+            try {
+                for (int t = 0; t < to.length; t++) {
+                    if (buffer.getInt(SIZE_OFFSET) >= locked.maxEntries) {
+                        evict(locked, locked.maxEntries * 3 / 4);
+                    }
+                    int slot = find(locked, from, to[t]);
+                    int pos = position(slot);
+                    if (isEmpty(buffer, slot)) {
+                        buffer.putLong(pos, from);
+                        buffer.putLong(pos + 8, to[t]);
+                        buffer.putInt(SIZE_OFFSET, buffer.getInt(SIZE_OFFSET) + 1);
+                    }
+                    buffer.putFloat(pos + 16, (float) costs[t]);
+                    buffer.putInt(pos + 20, locked.run);
+                }
+            } finally {
+                INT.setRelease(buffer, SEQUENCE_OFFSET, sequence + 1);
+            }
+            return null;
+        }, null);
+    }
+
+    /** Number of stored pairs. */
+    int size() throws IOException {
+        return withLock(true, locked -> locked.buffer.getInt(SIZE_OFFSET), 0);
+    }
+
+    /** Release this reference; the last one marks the pairs used in this run and closes the file. */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN_STORES) {
+            if (--references > 0) {
+                return;
+            }
+            OPEN_STORES.remove(file.toAbsolutePath().normalize(), this);
+        }
+        synchronized (this) {
+            try {
+                withLock(false, this::markUsed, null);
+            } finally {
+                Mapping last = mapping;
+                mapping = null;
+                if (last != null) {
+                    last.channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Run an action under the file lock once the header is confirmed to still be this model's, reopening the
+     * file if it has been replaced.
+     *
+     * @return the action's result, or {@code unavailable} if the store is closed or lost to another model
+     */
+    private synchronized <T> T withLock(boolean shared, Function<Mapping, T> action, T unavailable)
+            throws IOException {
+        for (;;) {
+            Mapping current = mapping;
+            if (current == null) {
+                return unavailable;
+            }
+            try (FileLock lock = current.channel.lock(0, Long.MAX_VALUE, shared)) {
+                if (isCurrent(current)) {
+                    return action.apply(current);
+                }
+            }
+            reopen(current);
+        }
+    }
+
+    private void reopen(Mapping stale) throws IOException {
+        mapping = null;
+        used.clear();
+        stale.channel.close();
+        Mapping reopened = openFile(false);
+        if (reopened == null) {
+            System.err.println("Distance store " + file + " now belongs to another road network; no longer using it");
+        }
+        mapping = reopened;
+    }
+
+    /**
+     * Open and map the file for this model, starting a new run.
+     *
+     * @param replace whether to replace a file that belongs to another model; if not, return null for one
+     */
+    private Mapping openFile(boolean replace) throws IOException {
+        for (;;) {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            Mapping opened = null;
+            try (FileLock lock = channel.lock()) {
+                ByteBuffer header = header(channel);
+                if (header != null && header.getInt(0) == SUPERSEDED) {
+                    continue; // Replaced while we waited for the lock; open the new file
+                }
+                if (header != null && header.getLong(MODEL_OFFSET) == model) {
+                    opened = map(channel, header);
+                    return opened;
+                }
+                if (header != null && !replace) {
+                    return null;
+                }
+                // New file, another model or a format we don't understand: the store is only a cache, so start over
+                replaceFile(channel);
+            } finally {
+                if (opened == null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /** The header of a well-formed file of this format, superseded or not, or null. */
+    private static ByteBuffer header(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) == SUPERSEDED) {
+            return header;
+        }
+        int slots = header.getInt(SLOTS_OFFSET);
+        boolean valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                && Integer.bitCount(slots) == 1 && slots <= MAX_SLOTS
+                && channel.size() >= HEADER_SIZE + (long) slots * SLOT_SIZE;
+        return valid ? header : null;
+    }
+
+    private static Mapping map(FileChannel channel, ByteBuffer header) throws IOException {
+        int slots = header.getInt(SLOTS_OFFSET);
+        int maxEntries = Math.max(1, Math.min(header.getInt(MAX_ENTRIES_OFFSET), slots / 4 * 3));
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) slots * SLOT_SIZE);
+        int run = buffer.getInt(RUN_OFFSET) + 1;
+        buffer.putInt(RUN_OFFSET, run);
+        return new Mapping(channel, buffer, slots, maxEntries, run);
+    }
+
+    /**
+     * Write an empty table for this model to a temporary file, rename it over the store and mark the old
+     * file, whose lock the caller holds, as superseded. Other processes keep a valid mapping of the old file
+     * until they notice.
+     */
+    private void replaceFile(FileChannel old) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putLong(model).putInt(slots).putInt(0).putInt(0)
+                        .putInt(maxEntries).clear();
+                channel.write(header, 0);
+                channel.write(ByteBuffer.wrap(new byte[1]), HEADER_SIZE + (long) slots * SLOT_SIZE - 1);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        ByteBuffer superseded = ByteBuffer.allocate(HEADER_SIZE);
+        superseded.putInt(0, SUPERSEDED);
+        old.write(superseded, 0);
+    }
+
+    private boolean isCurrent(Mapping current) {
+        return current.buffer.getInt(0) == MAGIC && current.buffer.getLong(MODEL_OFFSET) == model;
+    }
+
+    /** Start changing the table: make the sequence odd so lock-free readers retry. */
+    private static int beginWrite(ByteBuffer buffer) {
+        int sequence = (int) INT.getVolatile(buffer, SEQUENCE_OFFSET);
+        // An odd sequence means a writer died mid-write; skip to the next odd value
+        sequence += (sequence & 1) == 0 ? 1 : 2;
+        INT.setVolatile(buffer, SEQUENCE_OFFSET, sequence);
+        VarHandle.fullFence();
+        return sequence;
+    }
+
+    /** Read each target's cost and lastRun (0 if absent) into the given arrays. */
+    private static void lookUp(Mapping current, long from, long[] to, float[] costs, int[] lastRun) {
+        ByteBuffer buffer = current.buffer;
+        for (int t = 0; t < to.length; t++) {
+            int slot = find(current, from, to[t]);
+            if (slot >= 0 && !isEmpty(buffer, slot)) {
+                int pos = position(slot);
+                costs[t] = buffer.getFloat(pos + 16);
+                lastRun[t] = buffer.getInt(pos + 20);
+            } else {
+                lastRun[t] = 0;
+            }
+        }
+    }
+
+    private boolean[] found(Mapping current, long from, long[] to, float[] read, int[] lastRun, double[] costs) {
+        boolean[] found = new boolean[to.length];
+        for (int t = 0; t < to.length; t++) {
+            if (lastRun[t] != 0) {
+                costs[t] = read[t];
+                found[t] = true;
+                if (lastRun[t] != current.run) {
+                    used.add(new Pair(from, to[t]));
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Mark the pairs read since the last write as used in this run. Changes no cost, so readers need not retry. */
+    private Void markUsed(Mapping current) {
+        for (Iterator<Pair> it = used.iterator(); it.hasNext(); ) {
+            Pair pair = it.next();
+            it.remove();
+            int slot = find(current, pair.from, pair.to);
+            if (slot >= 0 && !isEmpty(current.buffer, slot)) {
+                current.buffer.putInt(position(slot) + 20, current.run);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Slot holding the pair, or the empty slot where it would go. A lock-free reader racing a writer may see
+     * no empty slot at all; then this gives up with -1.
+     */
+    private static int find(Mapping current, long from, long to) {
+        ByteBuffer buffer = current.buffer;
+        int mask = current.slots - 1;
+        long h = (from * 0x9E3779B97F4A7C15L) ^ Long.rotateLeft(to * 0xC2B2AE3D27D4EB4FL, 31);
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        for (int probes = 0; probes < current.slots; probes++) {
+            if (isEmpty(buffer, slot)) {
+                return slot;
+            }
+            int pos = position(slot);
+            if (buffer.getLong(pos) == from && buffer.getLong(pos + 8) == to) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean isEmpty(ByteBuffer buffer, int slot) {
+        // Runs start at 1, so an unused slot is all zeros
+        return buffer.getInt(position(slot) + 20) == 0;
+    }
+
+    private static int position(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /** Keep the {@code keep} most recently used pairs and rebuild the table around them. */
+    private static void evict(Mapping current, int keep) {
+        ByteBuffer buffer = current.buffer;
+        int size = buffer.getInt(SIZE_OFFSET);
+        long[] from = new long[size];
+        long[] to = new long[size];
+        float[] cost = new float[size];
+        int[] lastRun = new int[size];
+        int n = 0;
+        for (int slot = 0; slot < current.slots && n < size; slot++) {
+            if (!isEmpty(buffer, slot)) {
+                int pos = position(slot);
+                from[n] = buffer.getLong(pos);
+                to[n] = buffer.getLong(pos + 8);
+                cost[n] = buffer.getFloat(pos + 16);
+                lastRun[n++] = buffer.getInt(pos + 20);
+            }
+        }
+        int[] runs = Arrays.copyOf(lastRun, n);
+        Arrays.sort(runs);
+        // Oldest run that survives; entries of that run beyond the quota go too, in table order
+        int cutoff = n > keep ? runs[n - keep] : Integer.MIN_VALUE;
+        int atCutoff = keep - (int) Arrays.stream(runs).filter(r -> r > cutoff).count();
+
+        for (int slot = 0; slot < current.slots; slot++) {
+            int pos = position(slot);
+            buffer.putLong(pos, 0);
+            buffer.putLong(pos + 8, 0);
+            buffer.putLong(pos + 16, 0);
+        }
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (lastRun[i] < cutoff || (lastRun[i] == cutoff && atCutoff-- <= 0)) {
+                continue;
+            }
+            int pos = position(find(current, from[i], to[i]));
+            buffer.putLong(pos, from[i]);
+            buffer.putLong(pos + 8, to[i]);
+            buffer.putFloat(pos + 16, cost[i]);
+            buffer.putInt(pos + 20, lastRun[i]);
+            kept++;
+        }
+        buffer.putInt(SIZE_OFFSET, kept);
+    }
+}
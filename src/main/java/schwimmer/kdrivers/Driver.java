@@ -63,6 +63,19 @@ public class Driver {
         assignedDeliveries.add(delivery);
     }
 
+    boolean removeDelivery(Delivery delivery) {
+        return assignedDeliveries.remove(delivery);
+    }
+
+    /** Replace the delivery order, e.g. with a sequenced route; must hold the same deliveries. */
+    void reorderDeliveries(List<Delivery> order) {
+        if (order.size() != assignedDeliveries.size() || !order.containsAll(assignedDeliveries)) {
+            throw new IllegalArgumentException("New order must contain exactly the assigned deliveries");
+        }
+        assignedDeliveries.clear();
+        assignedDeliveries.addAll(order);
+    }
+
     @Override
     public String toString() {
         return "Driver{id='" + id + "', name='" + name + "', deliveries=" + assignedDeliveries.size() + "}";
@@ -0,0 +1,125 @@
+package schwimmer.kdrivers;
+
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Delivery-to-driver distances as the clusterers see them: straight-line kilometres through the
+ * {@link CoordinateKernel} and {@link DriverIndex}, or travel costs from a {@link DistanceModel}.
+ * <p>
+ * With a model, each query compares the {@value #CANDIDATES} drivers nearest in a straight line by their
+ * travel cost, which keeps queries cheap on large fleets; a delivery's candidates and costs are computed
+ * once and reused. When none of them is eligible (e.g. all are full) or reachable, the query falls back to
+ * the straight-line answer. Safe to share between threads; concurrent first queries for a delivery at
+ * worst compute its candidates twice.
+ */
+final class DriverDistances {
+
+    /** Straight-line nearest drivers whose travel costs are compared. */
+    static final int CANDIDATES = 12;
+
+    private final CoordinateKernel kernel;
+    private final DriverIndex driverIndex;
+    private final DistanceModel model;
+    private final double[] driverLat;
+    private final double[] driverLon;
+    private final Ranked[] ranked;
+
+    DriverDistances(CoordinateKernel kernel, DriverIndex driverIndex) {
+        this(kernel, driverIndex, null);
+    }
+
+    /** @param model travel costs, or null for straight-line distances */
+    DriverDistances(CoordinateKernel kernel, DriverIndex driverIndex, DistanceModel model) {
+        this.kernel = kernel;
+        this.driverIndex = driverIndex;
+        this.model = model;
+        this.driverLat = new double[kernel.driverCount()];
+        this.driverLon = new double[kernel.driverCount()];
+        for (int i = 0; i < driverLat.length; i++) {
+            driverLat[i] = kernel.latitude(kernel.driverY(i));
+            driverLon[i] = kernel.longitude(kernel.driverX(i));
+        }
+        this.ranked = new Ranked[kernel.deliveryCount()];
+    }
+
+    CoordinateKernel kernel() {
+        return kernel;
+    }
+
+    /** Distance (or travel cost) from a delivery to a driver's home. */
+    double deliveryToDriver(int delivery, int driver) {
+        if (model == null) {
+            return kernel.deliveryToDriver(delivery, driver);
+        }
+        Ranked r = ranked(delivery);
+        for (int i = 0; i < r.ids.length; i++) {
+            if (r.ids[i] == driver) {
+                return r.costs[i];
+            }
+        }
+        return model.costs(kernel.latitude(kernel.deliveryY(delivery)), kernel.longitude(kernel.deliveryX(delivery)),
+                new double[] {driverLat[driver]}, new double[] {driverLon[driver]})[0];
+    }
+
+    /**
+     * Driver with the lowest {@code distance * factor(i)} for a delivery, or -1 if every factor is infinite.
+     * Factors must be at least 1; an infinite factor excludes the driver.
+     */
+    int best(int delivery, IntToDoubleFunction factor) {
+        double x = kernel.deliveryX(delivery);
+        double y = kernel.deliveryY(delivery);
+        if (model == null) {
+            return driverIndex.best(x, y, factor);
+        }
+        int best = best(ranked(delivery), factor);
+        return best >= 0 ? best : driverIndex.best(x, y, factor);
+    }
+
+    /** As {@link #best(int, IntToDoubleFunction)}, for a point in the kernel's plane such as a centroid. */
+    int bestForPoint(double x, double y, IntToDoubleFunction factor) {
+        if (model == null) {
+            return driverIndex.best(x, y, factor);
+        }
+        int best = best(rank(kernel.latitude(y), kernel.longitude(x), x, y), factor);
+        return best >= 0 ? best : driverIndex.best(x, y, factor);
+    }
+
+    private Ranked ranked(int delivery) {
+        Ranked r = ranked[delivery];
+        if (r == null) {
+            double x = kernel.deliveryX(delivery);
+            double y = kernel.deliveryY(delivery);
+            r = rank(kernel.latitude(y), kernel.longitude(x), x, y);
+            ranked[delivery] = r;
+        }
+        return r;
+    }
+
+    private Ranked rank(double latitude, double longitude, double x, double y) {
+        int[] ids = driverIndex.kNearest(x, y, CANDIDATES);
+        double[] lats = new double[ids.length];
+        double[] lons = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            lats[i] = driverLat[ids[i]];
+            lons[i] = driverLon[ids[i]];
+        }
+        return new Ranked(ids, model.costs(latitude, longitude, lats, lons));
+    }
+
+    private static int best(Ranked r, IntToDoubleFunction factor) {
+        int best = -1;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < r.ids.length; i++) {
+            int id = r.ids[i];
+            double score = r.costs[i] * factor.applyAsDouble(id);
+            if (score < bestScore || (score == bestScore && score < Double.POSITIVE_INFINITY && id < best)) {
+                best = id;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** A location's straight-line nearest drivers and the model's costs to them. */
+    private record Ranked(int[] ids, double[] costs) {}
+}
@@ -0,0 +1,268 @@
+package schwimmer.kdrivers;
+
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Static k-d tree over projected driver home locations for nearest-driver queries. Drivers are identified by
+ * their index in the {@link CoordinateKernel}; drivers without coordinates are left out.
+ * <p>
+ * Distances are computed exactly as {@link CoordinateKernel#distance} does, and ties go to the lowest
+ * driver index, so a query returns the same driver as a linear scan with a strict {@code <} comparison
+ * of the same score.
+ */
+final class DriverIndex {
+
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;
+
+    DriverIndex(CoordinateKernel kernel) {
+        this(driverCoordinates(kernel, true), driverCoordinates(kernel, false));
+    }
+
+    /**
+     * Index over arbitrary points (e.g. k-means centres), identified by their array index. Points with
+     * a NaN coordinate are left out.
+     */
+    DriverIndex(double[] x, double[] y) {
+        int count = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!Double.isNaN(x[i]) && !Double.isNaN(y[i])) {
+                count++;
+            }
+        }
+        xs = new double[count];
+        ys = new double[count];
+        ids = new int[count];
+        int n = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!Double.isNaN(x[i]) && !Double.isNaN(y[i])) {
+                xs[n] = x[i];
+                ys[n] = y[i];
+                ids[n] = i;
+                n++;
+            }
+        }
+        build(0, count, 0);
+    }
+
+    private static double[] driverCoordinates(CoordinateKernel kernel, boolean x) {
+        double[] coordinates = new double[kernel.driverCount()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = x ? kernel.driverX(i) : kernel.driverY(i);
+        }
+        return coordinates;
+    }
+
+    /** Number of indexed drivers. */
+    int size() {
+        return ids.length;
+    }
+
+    /** Index of the nearest driver, or -1 if no driver has coordinates. */
+    int nearest(double x, double y) {
+        return nearest(x, y, i -> true);
+    }
+
+    /**
+     * Index of the nearest driver accepted by {@code accept} (e.g. one with spare capacity), or -1 if none is.
+     * Rejected drivers are skipped but still searched past, so a selective predicate makes the query slower.
+     */
+    int nearest(double x, double y, IntPredicate accept) {
+        return best(x, y, i -> accept.test(i) ? 1 : Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Index of the driver with the lowest score {@code distance * factor(i)}, or -1 if every factor is infinite.
+     * Factors must be at least 1 (which lets whole subtrees be skipped by distance alone); an infinite
+     * factor excludes the driver.
+     */
+    int best(double x, double y, IntToDoubleFunction factor) {
+        Nearest best = new Nearest();
+        searchNearest(0, ids.length, 0, x, y, factor, best);
+        return best.id;
+    }
+
+    /**
+     * Indices of the {@code k} nearest drivers (fewer if fewer are indexed), nearest first.
+     */
+    int[] kNearest(double x, double y, int k) {
+        KNearest heap = new KNearest(Math.min(k, ids.length));
+        if (heap.capacity > 0) {
+            searchKNearest(0, ids.length, 0, x, y, heap);
+        }
+        return heap.sorted();
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth & 1);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /** Quickselect: put the k-th smallest coordinate on {@code axis} at k, smaller-or-equal ones before it. */
+    private void select(int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            double pivot = coordinate(axis, (lo + hi) >>> 1);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coordinate(axis, i) < pivot) {
+                    i++;
+                }
+                while (coordinate(axis, j) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void searchNearest(int lo, int hi, int depth, double x, double y,
+                               IntToDoubleFunction factor, Nearest best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int id = ids[mid];
+        double f = factor.applyAsDouble(id);
+        if (f != Double.POSITIVE_INFINITY) {
+            double score = CoordinateKernel.distance(x, y, xs[mid], ys[mid]) * f;
+            if (score < best.score || (score == best.score && id < best.id)) {
+                best.score = score;
+                best.id = id;
+            }
+        }
+        double diff = (depth & 1) == 0 ? x - xs[mid] : y - ys[mid];
+        boolean lowFirst = diff < 0;
+        searchNearest(lowFirst ? lo : mid + 1, lowFirst ? mid : hi, depth + 1, x, y, factor, best);
+        if (Math.abs(diff) <= best.score) {
+            searchNearest(lowFirst ? mid + 1 : lo, lowFirst ? hi : mid, depth + 1, x, y, factor, best);
+        }
+    }
+
+    private void searchKNearest(int lo, int hi, int depth, double x, double y, KNearest heap) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        heap.offer(CoordinateKernel.distance(x, y, xs[mid], ys[mid]), ids[mid]);
+        double diff = (depth & 1) == 0 ? x - xs[mid] : y - ys[mid];
+        boolean lowFirst = diff < 0;
+        searchKNearest(lowFirst ? lo : mid + 1, lowFirst ? mid : hi, depth + 1, x, y, heap);
+        if (Math.abs(diff) <= heap.bound()) {
+            searchKNearest(lowFirst ? mid + 1 : lo, lowFirst ? hi : mid, depth + 1, x, y, heap);
+        }
+    }
+
+    private double coordinate(int axis, int i) {
+        return axis == 0 ? xs[i] : ys[i];
+    }
+
+    private void swap(int i, int j) {
+        double t = xs[i];
+        xs[i] = xs[j];
+        xs[j] = t;
+        t = ys[i];
+        ys[i] = ys[j];
+        ys[j] = t;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    private static final class Nearest {
+        double score = Double.POSITIVE_INFINITY;
+        int id = -1;
+    }
+
+    /** Bounded max-heap on (distance, id) holding the best candidates seen so far. */
+    private static final class KNearest {
+        final int capacity;
+        final double[] dist;
+        final int[] id;
+        int size;
+
+        KNearest(int capacity) {
+            this.capacity = capacity;
+            this.dist = new double[capacity];
+            this.id = new int[capacity];
+        }
+
+        /** Distance a candidate must not exceed to still be kept. */
+        double bound() {
+            return size < capacity ? Double.POSITIVE_INFINITY : dist[0];
+        }
+
+        void offer(double d, int i) {
+            if (size < capacity) {
+                int k = size++;
+                while (k > 0) {
+                    int parent = (k - 1) >>> 1;
+                    if (!worse(d, i, dist[parent], id[parent])) {
+                        break;
+                    }
+                    dist[k] = dist[parent];
+                    id[k] = id[parent];
+                    k = parent;
+                }
+                dist[k] = d;
+                id[k] = i;
+            } else if (worse(dist[0], id[0], d, i)) {
+                siftDown(0, d, i);
+            }
+        }
+
+        private void siftDown(int k, double d, int i) {
+            while (true) {
+                int child = 2 * k + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && worse(dist[child + 1], id[child + 1], dist[child], id[child])) {
+                    child++;
+                }
+                if (!worse(dist[child], id[child], d, i)) {
+                    break;
+                }
+                dist[k] = dist[child];
+                id[k] = id[child];
+                k = child;
+            }
+            dist[k] = d;
+            id[k] = i;
+        }
+
+        int[] sorted() {
+            int[] result = new int[size];
+            for (int n = size - 1; n >= 0; n--) {
+                result[n] = id[0];
+                double lastDist = dist[size - 1];
+                int lastId = id[size - 1];
+                size--;
+                if (size > 0) {
+                    siftDown(0, lastDist, lastId);
+                }
+            }
+            return result;
+        }
+
+        private static boolean worse(double d1, int i1, double d2, int i2) {
+            return d1 > d2 || (d1 == d2 && i1 > i2);
+        }
+    }
+}
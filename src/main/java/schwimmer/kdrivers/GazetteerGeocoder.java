@@ -0,0 +1,236 @@
+package schwimmer.kdrivers;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Offline geocoder backed by a local address extract in OpenAddresses CSV format
+ * (columns LON, LAT, NUMBER, STREET and optionally CITY; other columns are ignored).
+ * No network access is needed.
+ * <p>
+ * Addresses are indexed by the 64-bit hash of their normalized "number street" in an open-addressing
+ * table over primitive arrays; entries sharing a number and street (e.g. the same street in several
+ * cities) are chained and told apart by a hash of the city. A query such as
+ * "123 Main Street, Springfield IL" is matched by trying its longest "number street" prefix first and
+ * checking the remaining words for the city. Hashes are not verified against the original text, so an
+ * (astronomically unlikely) 64-bit collision could return a wrong address.
+ */
+class GazetteerGeocoder implements GeocodingEngine {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long NO_CITY = 0;
+    private static final double FIXED_POINT_SCALE = 1e7;
+
+    private final long[] slotKeys;
+    private final int[] slotHeads;
+    private final int[] latE7;
+    private final int[] lonE7;
+    private final long[] cityKeys;
+    private final int[] next;
+    private final int size;
+
+    private GazetteerGeocoder(long[] streetKeys, long[] cityKeys, int[] latE7, int[] lonE7, int size) {
+        this.size = size;
+        this.latE7 = latE7;
+        this.lonE7 = lonE7;
+        this.cityKeys = cityKeys;
+        this.next = new int[size];
+
+        int capacity = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+        this.slotKeys = new long[capacity];
+        this.slotHeads = new int[capacity];
+        // Insert in reverse so each chain lists entries in file order
+        for (int i = size - 1; i >= 0; i--) {
+            int slot = findSlot(streetKeys[i]);
+            if (slotKeys[slot] == 0) {
+                slotKeys[slot] = streetKeys[i];
+                next[i] = -1;
+            } else {
+                next[i] = slotHeads[slot];
+            }
+            slotHeads[slot] = i;
+        }
+    }
+
+    /**
+     * Load an OpenAddresses-style CSV extract into memory.
+     *
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is missing or lacks the required columns
+     */
+    static GazetteerGeocoder load(Path csvPath) throws IOException {
+        if (!Files.exists(csvPath)) {
+            throw new IllegalArgumentException("Gazetteer file not found: " + csvPath);
+        }
+
+        int count = 0;
+        long[] streetKeys = new long[1024];
+        long[] cityKeys = new long[1024];
+        int[] latE7 = new int[1024];
+        int[] lonE7 = new int[1024];
+
+        try (Reader reader = Files.newBufferedReader(csvPath);
+             CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.builder()
+                     .setHeader()
+                     .setSkipHeaderRecord(true)
+                     .setIgnoreHeaderCase(true)
+                     .setTrim(true)
+                     .build())) {
+
+            List<String> headers = parser.getHeaderNames().stream().map(h -> h.toLowerCase(Locale.ROOT)).toList();
+            if (!headers.containsAll(List.of("lon", "lat", "number", "street"))) {
+                throw new IllegalArgumentException("Gazetteer must have columns LON, LAT, NUMBER, STREET: " + csvPath);
+            }
+
+            for (CSVRecord record : parser) {
+                String lon = get(record, "lon");
+                String lat = get(record, "lat");
+                String number = get(record, "number");
+                String street = get(record, "street");
+                String city = get(record, "city");
+                if (lon == null || lat == null || number == null || street == null
+                        || number.isBlank() || street.isBlank()) {
+                    continue;
+                }
+                double latitude;
+                double longitude;
+                try {
+                    latitude = Double.parseDouble(lat);
+                    longitude = Double.parseDouble(lon);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                if (count == streetKeys.length) {
+                    int newLength = count * 2;
+                    streetKeys = Arrays.copyOf(streetKeys, newLength);
+                    cityKeys = Arrays.copyOf(cityKeys, newLength);
+                    latE7 = Arrays.copyOf(latE7, newLength);
+                    lonE7 = Arrays.copyOf(lonE7, newLength);
+                }
+                String[] streetTokens = AddressNormalizer.normalize(number + " " + street).split(" ");
+                streetKeys[count] = hash(streetTokens, 0, streetTokens.length);
+                String[] cityTokens = city == null ? new String[0] : AddressNormalizer.normalize(city).split(" ");
+                cityKeys[count] = cityTokens.length == 0 || cityTokens[0].isEmpty()
+                        ? NO_CITY : hash(cityTokens, 0, cityTokens.length);
+                latE7[count] = (int) Math.round(latitude * FIXED_POINT_SCALE);
+                lonE7[count] = (int) Math.round(longitude * FIXED_POINT_SCALE);
+                count++;
+            }
+        }
+
+        return new GazetteerGeocoder(streetKeys, Arrays.copyOf(cityKeys, count),
+                Arrays.copyOf(latE7, count), Arrays.copyOf(lonE7, count), count);
+    }
+
+    @Override
+    public Geocoder.GeocodeResult geocode(String address) {
+        return new Geocoder.GeocodeResult(lookup(address), true);
+    }
+
+    /** Number of addresses in the index. */
+    int size() {
+        return size;
+    }
+
+    /** Approximate heap used by the index, in bytes. */
+    long indexBytes() {
+        return (long) slotKeys.length * (Long.BYTES + Integer.BYTES)
+                + (long) size * (Integer.BYTES * 3 + Long.BYTES);
+    }
+
+    private Optional<Geocoder.Coordinates> lookup(String address) {
+        String[] tokens = AddressNormalizer.normalize(address).split(" ");
+        if (tokens.length < 2 || !Character.isDigit(tokens[0].charAt(0))) {
+            return Optional.empty();
+        }
+        for (int streetEnd = tokens.length; streetEnd >= 2; streetEnd--) {
+            int slot = findSlot(hash(tokens, 0, streetEnd));
+            if (slotKeys[slot] == 0) {
+                continue;
+            }
+            int head = slotHeads[slot];
+            long[] cityCandidates = cityHashes(tokens, streetEnd);
+            for (int i = head; i >= 0; i = next[i]) {
+                if (cityKeys[i] == NO_CITY || contains(cityCandidates, cityKeys[i])) {
+                    return Optional.of(coordinates(i));
+                }
+            }
+            if (next[head] < 0) {
+                // The only address with this number and street; accept it even if the city is spelled differently
+                return Optional.of(coordinates(head));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Geocoder.Coordinates coordinates(int i) {
+        return new Geocoder.Coordinates(latE7[i] / FIXED_POINT_SCALE, lonE7[i] / FIXED_POINT_SCALE);
+    }
+
+    private int findSlot(long key) {
+        int mask = slotKeys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (slotKeys[slot] != 0 && slotKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Hashes of every run of consecutive tokens after the street, any of which may be the city. */
+    private static long[] cityHashes(String[] tokens, int from) {
+        int n = tokens.length - from;
+        long[] hashes = new long[n * (n + 1) / 2];
+        int k = 0;
+        for (int start = from; start < tokens.length; start++) {
+            for (int end = start + 1; end <= tokens.length; end++) {
+                hashes[k++] = hash(tokens, start, end);
+            }
+        }
+        return hashes;
+    }
+
+    private static boolean contains(long[] values, long value) {
+        for (long v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** FNV-1a over the space-joined tokens; never 0, which marks an empty slot. */
+    private static long hash(String[] tokens, int from, int to) {
+        long h = FNV_OFFSET;
+        for (int t = from; t < to; t++) {
+            if (t > from) {
+                h = (h ^ ' ') * FNV_PRIME;
+            }
+            String token = tokens[t];
+            for (int i = 0; i < token.length(); i++) {
+                h = (h ^ token.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    private static String get(CSVRecord record, String header) {
+        try {
+            String value = record.get(header);
+            return value == null ? null : value.trim();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
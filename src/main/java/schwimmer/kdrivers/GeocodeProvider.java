@@ -0,0 +1,27 @@
+package schwimmer.kdrivers;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One source of geocodes in a {@link Geocoder}'s lookup chain, e.g. an in-process memo, the persistent
+ * store, a local Nominatim instance or the public endpoint. Wrap a provider in a {@link GeocodeTier}
+ * to give it a timeout and concurrency limit.
+ */
+public interface GeocodeProvider {
+
+    /** Short name for log messages. */
+    String name();
+
+    /**
+     * Look up an address. The returned future must not complete exceptionally.
+     *
+     * @return a definitive result (found, or known not to exist), or empty if this provider has no answer
+     * and the next tier should be asked
+     */
+    CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address);
+
+    /** Remember a definitive result found by a slower tier. Read-only providers ignore this. */
+    default void remember(String address, Geocoder.GeocodeResult result) {
+    }
+}
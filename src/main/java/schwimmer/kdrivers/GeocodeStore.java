@@ -0,0 +1,326 @@
+package schwimmer.kdrivers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Persistent geocode store in a single memory-mapped file, keyed by the normalized query string.
+ * Coordinates are stored as fixed-point integers (1e-7 degrees, about 1 cm). Queries the geocoder
+ * definitively could not find are stored too (as an out-of-range latitude) with their own, usually
+ * shorter, TTL, so known-bad addresses are not looked up again until they change.
+ * <p>
+ * File layout: a 32-byte header (magic, version, generation, end of data) followed by append-only
+ * records {@code [short keyLength][key UTF-8][int latE7][int lonE7][long storedAt][long lastAccess]}.
+ * A later record for the same key replaces an earlier one. Entries older than the TTL are ignored;
+ * when the store grows past its entry limit or accumulates too many replaced records it is compacted
+ * in place, evicting expired and least recently used entries.
+ * <p>
+ * Every operation holds an OS file lock (shared for reads, exclusive for writes), so several JVMs on
+ * one host can use the same file. Compaction bumps the generation so other processes re-index.
+ * Within a JVM use {@link #open}, which shares one reference-counted instance per file.
+ */
+class GeocodeStore implements Closeable {
+
+    private static final int MAGIC = 0x4B444753; // "KDGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int DATA_END_OFFSET = 16;
+    private static final int RECORD_FIXED_SIZE = 2 + 4 + 4 + 8 + 8;
+    private static final int MAX_KEY_BYTES = 1024;
+    private static final long INITIAL_FILE_SIZE = 64 * 1024;
+    private static final double FIXED_POINT_SCALE = 1e7;
+    private static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private static final Map<Path, GeocodeStore> OPEN_STORES = new HashMap<>();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long ttlMillis;
+    private final long notFoundTtlMillis;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final Map<String, Integer> index = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private long generation = -1;
+    private int indexedEnd;
+    private int replacedRecords;
+    private int references = 1; // guarded by OPEN_STORES
+
+    GeocodeStore(Path file, Duration ttl, Duration notFoundTtl, int maxEntries, LongSupplier clock)
+            throws IOException {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.file = file;
+        this.ttlMillis = ttl.toMillis();
+        this.notFoundTtlMillis = notFoundTtl.toMillis();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try (FileLock lock = channel.lock()) {
+            initializeIfNeeded();
+        }
+    }
+
+    /**
+     * Open the store at the given file, creating it if needed. Returns the already open instance
+     * when the file is open elsewhere in this JVM; each call must be matched by a {@link #close}.
+     *
+     * @throws IllegalArgumentException if the file is already open in this JVM with other TTLs
+     */
+    static GeocodeStore open(Path file, Duration ttl, Duration notFoundTtl, int maxEntries) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (OPEN_STORES) {
+            GeocodeStore existing = OPEN_STORES.get(key);
+            if (existing != null) {
+                if (existing.ttlMillis != ttl.toMillis() || existing.notFoundTtlMillis != notFoundTtl.toMillis()) {
+                    throw new IllegalArgumentException(file + " is already open with other TTLs");
+                }
+                existing.references++;
+                return existing;
+            }
+            GeocodeStore store = new GeocodeStore(key, ttl, notFoundTtl, maxEntries, System::currentTimeMillis);
+            OPEN_STORES.put(key, store);
+            return store;
+        }
+    }
+
+    /** Normalize a query for use as a key: trimmed, single-spaced and lower case. */
+    static String normalizeKey(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Look up a query. Marks the entry as recently used.
+     *
+     * @return a cached result (with or without coordinates) if stored and not older than its TTL
+     */
+    synchronized Optional<Geocoder.GeocodeResult> get(String query) throws IOException {
+        String key = normalizeKey(query);
+        try (FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+            refresh();
+            Integer offset = index.get(key);
+            if (offset == null) {
+                return Optional.empty();
+            }
+            int pos = offset + 2 + buffer.getShort(offset);
+            long now = clock.getAsLong();
+            if (isExpired(pos, now)) {
+                return Optional.empty();
+            }
+            // Best-effort LRU touch; concurrent readers may race on this field, which is harmless
+            buffer.putLong(pos + 16, now);
+            int latE7 = buffer.getInt(pos);
+            if (latE7 == NOT_FOUND) {
+                return Optional.of(new Geocoder.GeocodeResult(Optional.empty(), true));
+            }
+            return Optional.of(new Geocoder.GeocodeResult(Optional.of(new Geocoder.Coordinates(
+                    latE7 / FIXED_POINT_SCALE, buffer.getInt(pos + 4) / FIXED_POINT_SCALE)), true));
+        }
+    }
+
+    /** Store coordinates for a query, replacing any previous entry. */
+    synchronized void put(String query, Geocoder.Coordinates coordinates) throws IOException {
+        append(query, (int) Math.round(coordinates.latitude() * FIXED_POINT_SCALE),
+                (int) Math.round(coordinates.longitude() * FIXED_POINT_SCALE));
+    }
+
+    /** Record that the geocoder has no result for a query, replacing any previous entry. */
+    synchronized void putNotFound(String query) throws IOException {
+        append(query, NOT_FOUND, 0);
+    }
+
+    private void append(String query, int latE7, int lonE7) throws IOException {
+        byte[] keyBytes = normalizeKey(query).getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_BYTES) {
+            return;
+        }
+        try (FileLock lock = channel.lock()) {
+            refresh();
+            if (index.size() >= maxEntries) {
+                compactLocked(Math.max(1, maxEntries * 9 / 10));
+            } else if (replacedRecords > Math.max(1024, index.size())) {
+                compactLocked(maxEntries);
+            }
+
+            long now = clock.getAsLong();
+            int offset = indexedEnd;
+            int recordSize = RECORD_FIXED_SIZE + keyBytes.length;
+            ensureCapacity((long) offset + recordSize);
+            buffer.position(offset);
+            buffer.putShort((short) keyBytes.length);
+            buffer.put(keyBytes);
+            buffer.putInt(latE7);
+            buffer.putInt(lonE7);
+            buffer.putLong(now);
+            buffer.putLong(now);
+            buffer.putLong(DATA_END_OFFSET, offset + recordSize);
+
+            if (index.put(new String(keyBytes, StandardCharsets.UTF_8), offset) != null) {
+                replacedRecords++;
+            }
+            indexedEnd = offset + recordSize;
+        }
+    }
+
+    /** Number of live entries (including expired entries not yet compacted away). */
+    synchronized int size() throws IOException {
+        try (FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+            refresh();
+            return index.size();
+        }
+    }
+
+    /** Drop expired and replaced records and evict least recently used entries beyond the limit. */
+    synchronized void compact() throws IOException {
+        try (FileLock lock = channel.lock()) {
+            refresh();
+            compactLocked(maxEntries);
+        }
+    }
+
+    /** Release this reference; the last one closes the file. */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN_STORES) {
+            if (--references > 0) {
+                return;
+            }
+            OPEN_STORES.remove(file.toAbsolutePath().normalize(), this);
+        }
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    private void initializeIfNeeded() throws IOException {
+        boolean valid = false;
+        if (channel.size() >= HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            header.flip();
+            valid = header.getInt() == MAGIC && header.getInt() == VERSION;
+        }
+        if (!valid) {
+            // New file, or a format we don't understand: the store is only a cache, so start over
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(0).putLong(HEADER_SIZE).flip();
+            channel.write(header, 0);
+            channel.write(ByteBuffer.wrap(new byte[1]), INITIAL_FILE_SIZE - 1);
+        }
+    }
+
+    /** Bring the mapping and index up to date with changes made by this or other processes. */
+    private void refresh() throws IOException {
+        long size = channel.size();
+        if (buffer == null || size > buffer.capacity()) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        long currentGeneration = buffer.getLong(GENERATION_OFFSET);
+        if (currentGeneration != generation) {
+            generation = currentGeneration;
+            index.clear();
+            indexedEnd = HEADER_SIZE;
+            replacedRecords = 0;
+        }
+        long dataEnd = Math.min(buffer.getLong(DATA_END_OFFSET), buffer.capacity());
+        while (indexedEnd + RECORD_FIXED_SIZE <= dataEnd) {
+            int keyLength = buffer.getShort(indexedEnd);
+            int recordSize = RECORD_FIXED_SIZE + keyLength;
+            if (keyLength < 0 || keyLength > MAX_KEY_BYTES || indexedEnd + recordSize > dataEnd) {
+                break; // Torn or corrupt tail; ignore it until the next compaction rewrites the file
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(indexedEnd + 2, keyBytes);
+            if (index.put(new String(keyBytes, StandardCharsets.UTF_8), indexedEnd) != null) {
+                replacedRecords++;
+            }
+            indexedEnd += recordSize;
+        }
+    }
+
+    private void compactLocked(int keep) throws IOException {
+        long now = clock.getAsLong();
+        List<byte[]> live = new ArrayList<>();
+        List<Long> lastAccess = new ArrayList<>();
+        for (int offset : index.values()) {
+            int recordSize = RECORD_FIXED_SIZE + buffer.getShort(offset);
+            int fieldsPos = offset + recordSize - 24;
+            if (isExpired(fieldsPos, now)) {
+                continue;
+            }
+            byte[] record = new byte[recordSize];
+            buffer.get(offset, record);
+            live.add(record);
+            lastAccess.add(buffer.getLong(fieldsPos + 16));
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < live.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(lastAccess::get, Comparator.reverseOrder()));
+        if (order.size() > keep) {
+            order = order.subList(0, keep);
+        }
+
+        // Publish an empty store first so a crash mid-rewrite loses entries rather than corrupting them
+        generation++;
+        buffer.putLong(GENERATION_OFFSET, generation);
+        buffer.putLong(DATA_END_OFFSET, HEADER_SIZE);
+
+        index.clear();
+        replacedRecords = 0;
+        int offset = HEADER_SIZE;
+        for (int i : order) {
+            byte[] record = live.get(i);
+            buffer.put(offset, record);
+            index.put(new String(record, 2, record.length - RECORD_FIXED_SIZE, StandardCharsets.UTF_8), offset);
+            offset += record.length;
+        }
+        indexedEnd = offset;
+        buffer.putLong(DATA_END_OFFSET, offset);
+    }
+
+    /** @param pos position of the record's fixed-size fields (after the key) */
+    private boolean isExpired(int pos, long now) {
+        long ttl = buffer.getInt(pos) == NOT_FOUND ? notFoundTtlMillis : ttlMillis;
+        return now - buffer.getLong(pos + 8) > ttl;
+    }
+
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed <= buffer.capacity()) {
+            return;
+        }
+        long newSize = Math.max((long) buffer.capacity() * 2, needed);
+        if (newSize > Integer.MAX_VALUE) {
+            throw new IOException("Geocode store is full: " + file);
+        }
+        channel.write(ByteBuffer.wrap(new byte[1]), newSize - 1);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+    }
+}
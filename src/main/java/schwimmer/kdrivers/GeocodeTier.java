@@ -0,0 +1,109 @@
+package schwimmer.kdrivers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A {@link GeocodeProvider} with its own timeout and limit on concurrent lookups. Lookups beyond the
+ * limit wait in FIFO order and are started on an executor, never on the thread that freed the slot. A
+ * lookup that exceeds the timeout is reported as "no answer" so the chain moves on to the next tier; the
+ * provider's work keeps its slot until it actually finishes, and a definitive answer that arrives late is
+ * still handed to the caller.
+ */
+public final class GeocodeTier {
+
+    private final GeocodeProvider provider;
+    private final Duration timeout;
+    private final int maxConcurrent;
+    private final Executor executor;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int active;
+
+    /**
+     * @param timeout       how long to wait for an answer, or null to wait indefinitely
+     * @param maxConcurrent maximum lookups in flight at once
+     */
+    public GeocodeTier(GeocodeProvider provider, Duration timeout, int maxConcurrent) {
+        this(provider, timeout, maxConcurrent, ForkJoinPool.commonPool());
+    }
+
+    /** @param executor runs lookups that had to wait for a slot */
+    GeocodeTier(GeocodeProvider provider, Duration timeout, int maxConcurrent, Executor executor) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1: " + maxConcurrent);
+        }
+        this.provider = provider;
+        this.timeout = timeout;
+        this.maxConcurrent = maxConcurrent;
+        this.executor = executor;
+    }
+
+    /** A tier with no timeout and no concurrency limit, for providers that answer in-process. */
+    public static GeocodeTier unlimited(GeocodeProvider provider) {
+        return new GeocodeTier(provider, null, Integer.MAX_VALUE);
+    }
+
+    public GeocodeProvider provider() {
+        return provider;
+    }
+
+    CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address) {
+        return lookup(address, late -> {
+        });
+    }
+
+    /**
+     * @param lateAnswer receives the provider's definitive answer if it arrives after the lookup timed out
+     */
+    CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address,
+                                                               Consumer<Geocoder.GeocodeResult> lateAnswer) {
+        CompletableFuture<Optional<Geocoder.GeocodeResult>> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<Optional<Geocoder.GeocodeResult>> call = provider.lookup(address);
+            call.whenComplete((answer, e) -> {
+                release();
+                if (answer != null && answer.isPresent() && !result.complete(answer)) {
+                    // The chain moved on after the timeout; the answer is still worth keeping
+                    if (result.join().isEmpty()) {
+                        lateAnswer.accept(answer.get());
+                    }
+                }
+            });
+            CompletableFuture<Optional<Geocoder.GeocodeResult>> answer = call.copy();
+            if (timeout != null) {
+                answer = answer.completeOnTimeout(Optional.empty(), timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            answer.whenComplete((a, e) -> result.complete(e == null ? a : Optional.empty()));
+        };
+        synchronized (this) {
+            if (active >= maxConcurrent) {
+                waiting.add(start);
+                return result;
+            }
+            active++;
+        }
+        start.run();
+        return result;
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                active--;
+            }
+        }
+        if (next != null) {
+            // Start it elsewhere: running it here would recurse when the provider answers synchronously
+            executor.execute(next);
+        }
+    }
+}
@@ -1,118 +1,200 @@
 package schwimmer.kdrivers;
 
-import okhttp3.Cache;
-import okhttp3.Interceptor;
-import okhttp3.OkHttpClient;
-import retrofit2.Retrofit;
-import retrofit2.converter.jackson.JacksonConverterFactory;
-
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Geocodes addresses to lat/lon using OpenStreetMap Nominatim API via Retrofit.
- * Results are cached on disk via OkHttp to avoid repeated API calls.
+ * Geocodes addresses to lat/lon by passing each lookup down an ordered chain of {@link GeocodeTier}s,
+ * fastest first, until one has a definitive answer. The answer is then written back into every faster
+ * tier, so repeated addresses are served from the cheapest one.
+ * <p>
+ * The default chain is an in-process memo, the long-lived {@link GeocodeStore}, the OkHttp disk cache of
+ * public responses, then the public OpenStreetMap Nominatim API (throttled by a token bucket, since
+ * Nominatim allows about one request per second). The disk cache has a tier of its own, so cache hits wait
+ * for neither the token bucket nor the public tier's concurrency limit. {@link #withLocalNominatim} adds a
+ * self-hosted Nominatim instance ahead of the public one.
  * See https://nominatim.org/release-docs/develop/api/Search/
  */
-public class Geocoder {
+public class Geocoder implements GeocodingEngine {
 
     private static final String DEFAULT_BASE_URL = "https://nominatim.openstreetmap.org/";
-    private static final String USER_AGENT = "kdrivers/1.0 (delivery clustering app)";
     private static final Path DEFAULT_CACHE_DIR = Path.of(".geocoder-cache");
-    private static final long CACHE_SIZE = 10L * 1024 * 1024; // 10 MB
-
-    private static final Interceptor CACHE_CONTROL_INTERCEPTOR = chain -> {
-        var response = chain.proceed(chain.request());
-        return response.newBuilder()
-                .header("Cache-Control", "max-age=86400")
-                .build();
-    };
+    private static final Path DEFAULT_STORE_DIR = Path.of(".geocoder-store");
+    private static final String STORE_FILE_NAME = "geocodes.dat";
+    /** How long found coordinates are served from the store before being looked up again. */
+    static final Duration DEFAULT_STORE_TTL = Duration.ofDays(365);
+    private static final Duration STORE_NOT_FOUND_TTL = Duration.ofDays(90);
+    private static final int STORE_MAX_ENTRIES = 200_000;
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 1 / 1.1;
+    private static final int DEFAULT_BURST = 1;
+
+    private static final Duration LOCAL_TIMEOUT = Duration.ofSeconds(5);
+    private static final int LOCAL_MAX_CONCURRENT = 8;
+    // Long enough for the limiter wait plus all retries of a lookup that has reached the front of the queue
+    private static final Duration PUBLIC_TIMEOUT = Duration.ofMinutes(2);
+    private static final int PUBLIC_MAX_CONCURRENT = 2;
+
+    private final List<GeocodeTier> tiers;
+    private final GeocodeStore store;
 
-    private final NominatimApi api;
+    /**
+     * @param tiers lookup chain, fastest first
+     */
+    public Geocoder(List<GeocodeTier> tiers) {
+        this(tiers, null);
+    }
 
-    public Geocoder() {
-        this(createDefaultApi(DEFAULT_BASE_URL, DEFAULT_CACHE_DIR));
+    private Geocoder(List<GeocodeTier> tiers, GeocodeStore store) {
+        if (tiers.isEmpty()) {
+            throw new IllegalArgumentException("At least one geocode tier is required");
+        }
+        this.tiers = List.copyOf(tiers);
+        this.store = store;
     }
 
-    public Geocoder(Path cacheDir) {
-        this(createDefaultApi(DEFAULT_BASE_URL, cacheDir));
+    /**
+     * The default chain, ending at the public Nominatim API.
+     *
+     * @param storeTtl how long found coordinates are served from the store
+     */
+    public static Geocoder create(Duration storeTtl) {
+        return withStore(DEFAULT_STORE_DIR, storeTtl, publicTiers(NominatimGeocodeProvider.create("nominatim",
+                DEFAULT_BASE_URL, DEFAULT_CACHE_DIR, new TokenBucket(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST))));
     }
 
-    Geocoder(NominatimApi api) {
-        this.api = api;
+    /**
+     * The default chain with a self-hosted Nominatim instance consulted before the public endpoint.
+     * The local instance is not rate limited or cached on disk, but gets a short timeout so a slow or
+     * unreachable server falls through to the public API.
+     *
+     * @param storeTtl how long found coordinates are served from the store
+     */
+    public static Geocoder withLocalNominatim(String localBaseUrl, Duration storeTtl) {
+        GeocodeTier local = new GeocodeTier(NominatimGeocodeProvider.create("local nominatim", localBaseUrl,
+                null, null), LOCAL_TIMEOUT, LOCAL_MAX_CONCURRENT);
+        List<GeocodeTier> remote = new ArrayList<>(publicTiers(NominatimGeocodeProvider.create("nominatim",
+                DEFAULT_BASE_URL, DEFAULT_CACHE_DIR, new TokenBucket(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST))));
+        // The public disk cache is still cheaper than the local server
+        remote.add(1, local);
+        return withStore(DEFAULT_STORE_DIR, storeTtl, remote);
     }
 
     /**
-     * Create a Geocoder with a custom base URL (e.g. for testing with MockWebServer).
-     * Uses a temp directory for cache.
+     * Memo and store tiers followed by {@code remote}. The store is skipped if its file cannot be opened.
+     *
+     * @throws IllegalArgumentException if the store is already open in this JVM with another TTL
      */
-    public static Geocoder forBaseUrl(String baseUrl) {
-        Path cacheDir = Path.of(System.getProperty("java.io.tmpdir"), "geocoder-cache");
-        return new Geocoder(createDefaultApi(baseUrl, cacheDir));
+    static Geocoder withStore(Path storeDir, Duration storeTtl, List<GeocodeTier> remote) {
+        List<GeocodeTier> tiers = new ArrayList<>();
+        tiers.add(GeocodeTier.unlimited(new MemoGeocodeProvider()));
+        GeocodeStore store = openStore(storeDir, storeTtl);
+        if (store != null) {
+            tiers.add(GeocodeTier.unlimited(new StoreGeocodeProvider(store)));
+        }
+        tiers.addAll(remote);
+        return new Geocoder(tiers, store);
+    }
+
+    /** The public endpoint's HTTP cache, outside any concurrency limit, then the endpoint itself. */
+    private static List<GeocodeTier> publicTiers(NominatimGeocodeProvider provider) {
+        return List.of(GeocodeTier.unlimited(provider.httpCache()),
+                new GeocodeTier(provider, PUBLIC_TIMEOUT, PUBLIC_MAX_CONCURRENT));
     }
 
-    private static final Interceptor CACHE_MISS_INTERCEPTOR = chain -> {
-        var request = chain.request();
-        var response = chain.proceed(request);
-        if (response.cacheResponse() == null && response.networkResponse() != null) {
-            System.err.println("Geocoder cache miss: " + request.url());
+    private static GeocodeStore openStore(Path storeDir, Duration storeTtl) {
+        try {
+            return GeocodeStore.open(storeDir.resolve(STORE_FILE_NAME), storeTtl, STORE_NOT_FOUND_TTL,
+                    STORE_MAX_ENTRIES);
+        } catch (IOException e) {
+            System.err.println("Geocode store unavailable, continuing without it: " + e.getMessage());
+            return null;
         }
-        return response;
-    };
-
-    private static NominatimApi createDefaultApi(String baseUrl, Path cacheDir) {
-        var builder = new OkHttpClient.Builder()
-                .cache(new Cache(cacheDir.toFile(), CACHE_SIZE))
-                .addInterceptor(CACHE_MISS_INTERCEPTOR)
-                .addInterceptor(chain -> chain.proceed(
-                        chain.request().newBuilder()
-                                .header("User-Agent", USER_AGENT)
-                                .build()))
-                .addNetworkInterceptor(CACHE_CONTROL_INTERCEPTOR);
-
-        OkHttpClient client = builder.build();
-
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(baseUrl)
-                .client(client)
-                .addConverterFactory(JacksonConverterFactory.create())
-                .build();
-
-        return retrofit.create(NominatimApi.class);
     }
 
     /**
      * Geocode an address to latitude and longitude.
-     * Caches results via OkHttp to avoid repeated API calls.
      *
      * @param address the address to look up (e.g. "123 Main St, New York NY")
-     * @return GeocodeResult with coordinates (if found) and whether the result was from cache
+     * @return GeocodeResult with coordinates (if found) and whether the result was from cache;
+     * failed if no tier had an answer
      */
+    @Override
     public GeocodeResult geocode(String address) {
-        try {
-            var response = api.search(address, "json", 1).execute();
-            boolean fromCache = response.raw().cacheResponse() != null;
-            if (!response.isSuccessful() || response.body() == null) {
-                return new GeocodeResult(Optional.empty(), fromCache);
-            }
+        return geocodeAsync(address).join();
+    }
 
-            List<NominatimResult> results = response.body();
-            if (results.isEmpty()) {
-                return new GeocodeResult(Optional.empty(), fromCache);
-            }
+    /**
+     * Geocode many addresses concurrently. Lookups answered by a fast tier complete immediately; the
+     * rest queue at the slower tiers within each tier's concurrency limit. Duplicate addresses share a
+     * single lookup.
+     *
+     * @param addresses the addresses to look up
+     * @return one future per distinct address, in input order
+     */
+    @Override
+    public Map<String, CompletableFuture<GeocodeResult>> geocodeAll(Collection<String> addresses) {
+        Map<String, CompletableFuture<GeocodeResult>> results = new LinkedHashMap<>();
+        for (String address : addresses) {
+            results.computeIfAbsent(address, this::geocodeAsync);
+        }
+        return results;
+    }
+
+    /** Release the geocode store; lookups still in flight may no longer be written to it. */
+    @Override
+    public void close() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private CompletableFuture<GeocodeResult> geocodeAsync(String address) {
+        return lookupFrom(0, address);
+    }
 
-            NominatimResult first = results.get(0);
-            double lat = Double.parseDouble(first.lat());
-            double lon = Double.parseDouble(first.lon());
-            return new GeocodeResult(Optional.of(new Coordinates(lat, lon)), fromCache);
+    private CompletableFuture<GeocodeResult> lookupFrom(int tierIndex, String address) {
+        if (tierIndex == tiers.size()) {
+            return CompletableFuture.completedFuture(GeocodeResult.failure());
+        }
+        GeocodeTier tier = tiers.get(tierIndex);
+        return tier.lookup(address, late -> rememberInFasterTiers(tierIndex, address, late)).thenCompose(answer -> {
+            if (answer.isEmpty()) {
+                return lookupFrom(tierIndex + 1, address);
+            }
+            rememberInFasterTiers(tierIndex, address, answer.get());
+            return CompletableFuture.completedFuture(answer.get());
+        });
+    }
 
-        } catch (Exception e) {
-            return new GeocodeResult(Optional.empty(), false);
+    private void rememberInFasterTiers(int tierIndex, String address, GeocodeResult answer) {
+        for (int i = 0; i < tierIndex; i++) {
+            tiers.get(i).provider().remember(address, answer);
         }
     }
 
     public record Coordinates(double latitude, double longitude) {}
 
-    public record GeocodeResult(Optional<Coordinates> coordinates, boolean fromCache) {}
+    /**
+     * @param coordinates the location, or empty if not found or the lookup failed
+     * @param fromCache   whether the answer came from a local cache rather than the network
+     * @param failed      whether the lookup failed (e.g. network error) without a definitive answer
+     */
+    public record GeocodeResult(Optional<Coordinates> coordinates, boolean fromCache, boolean failed) {
+
+        public GeocodeResult(Optional<Coordinates> coordinates, boolean fromCache) {
+            this(coordinates, fromCache, false);
+        }
+
+        static GeocodeResult failure() {
+            return new GeocodeResult(Optional.empty(), false, true);
+        }
+    }
 }
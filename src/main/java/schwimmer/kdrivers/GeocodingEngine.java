@@ -0,0 +1,35 @@
+package schwimmer.kdrivers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves addresses to coordinates. Close it when done to release any files it holds open.
+ */
+public interface GeocodingEngine extends Closeable {
+
+    Geocoder.GeocodeResult geocode(String address);
+
+    /**
+     * Geocode many addresses. Duplicate addresses share a single lookup.
+     * The default implementation looks addresses up one at a time on the calling thread.
+     *
+     * @return one future per distinct address, in input order
+     */
+    default Map<String, CompletableFuture<Geocoder.GeocodeResult>> geocodeAll(Collection<String> addresses) {
+        Map<String, CompletableFuture<Geocoder.GeocodeResult>> results = new LinkedHashMap<>();
+        for (String address : addresses) {
+            results.computeIfAbsent(address, a -> CompletableFuture.completedFuture(geocode(a)));
+        }
+        return results;
+    }
+
+    /** The default holds nothing open. */
+    @Override
+    default void close() throws IOException {
+    }
+}
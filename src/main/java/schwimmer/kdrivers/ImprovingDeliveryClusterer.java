@@ -0,0 +1,283 @@
+package schwimmer.kdrivers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs another clusterer, then improves its assignment with local search between neighbouring drivers:
+ * relocating a delivery to a neighbour with room, or swapping two deliveries between neighbours, whenever
+ * that lowers {@link KMeansDeliveryClusterer#objective}: the total delivery-to-driver distance plus a
+ * penalty for uneven loads, so a relocation may lengthen the total if it evens out the loads by more. With a
+ * {@link DistanceModel} the penalty is charged in the model's unit. Capacity limits hold throughout, and
+ * pinned ({@code assign_to}) deliveries and drivers' own addresses never move.
+ * <p>
+ * Each driver's neighbours are its {@value #NEIGHBOURS} nearest drivers, found once, and every delivery's
+ * distance to its current driver is kept, so pricing a move takes two or four distance lookups. Search runs
+ * in rounds: every driver whose cluster or neighbours changed in the last round finds the best move for each
+ * of its deliveries, one fork/join task per driver, then the moves are applied largest gain first, each
+ * re-priced against the moves already made and skipped if it no longer helps or fits. It stops when no move
+ * helps or the time budget runs out.
+ */
+public class ImprovingDeliveryClusterer implements DeliveryClusterer {
+
+    /** Nearest drivers each driver trades deliveries with. */
+    private static final int NEIGHBOURS = 8;
+    private static final double EPSILON = 1e-9;
+
+    private final DeliveryClusterer clusterer;
+    private final int maxDeliveriesPerDriver;
+    private final Duration budget;
+    private final DistanceModel distanceModel;
+
+    public ImprovingDeliveryClusterer(DeliveryClusterer clusterer, int maxDeliveriesPerDriver, Duration budget) {
+        this(clusterer, maxDeliveriesPerDriver, budget, null);
+    }
+
+    /**
+     * @param budget        time for the improvement, after {@code clusterer} has finished
+     * @param distanceModel travel costs to improve by, or null for straight-line distance
+     */
+    public ImprovingDeliveryClusterer(DeliveryClusterer clusterer, int maxDeliveriesPerDriver, Duration budget,
+                                      DistanceModel distanceModel) {
+        if (maxDeliveriesPerDriver < 1) {
+            throw new IllegalArgumentException("maxDeliveriesPerDriver must be at least 1: " + maxDeliveriesPerDriver);
+        }
+        this.clusterer = clusterer;
+        this.maxDeliveriesPerDriver = maxDeliveriesPerDriver;
+        this.budget = budget;
+        this.distanceModel = distanceModel;
+    }
+
+    @Override
+    public List<Driver> clusterAndAssign(List<Delivery> deliveries, List<Driver> drivers) {
+        List<Driver> assigned = clusterer.clusterAndAssign(deliveries, drivers);
+        improve(deliveries, assigned, System.nanoTime() + budget.toNanos());
+        return assigned;
+    }
+
+    /** Improve the drivers' assignment in place; returns the number of moves made. */
+    int improve(List<Delivery> deliveries, List<Driver> drivers, long deadline) {
+        if (drivers.size() < 2) {
+            return 0;
+        }
+        Search search = new Search(deliveries, drivers);
+        int moves = 0;
+        boolean[] dirty = new boolean[drivers.size()];
+        Arrays.fill(dirty, true);
+        while (System.nanoTime() - deadline < 0) {
+            List<ForkJoinTask<List<Move>>> tasks = new ArrayList<>();
+            for (int a = 0; a < drivers.size(); a++) {
+                if (dirty[a] && search.kernel.hasDriver(a)) {
+                    int driver = a;
+                    tasks.add(ForkJoinTask.adapt(() -> search.bestMoves(driver, deadline)));
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            List<Move> found = new ArrayList<>();
+            for (ForkJoinTask<List<Move>> task : tasks) {
+                found.addAll(task.join());
+            }
+            found.sort(Comparator.comparingDouble(Move::gain).reversed());
+            boolean[] touched = new boolean[drivers.size()];
+            int applied = 0;
+            for (Move move : found) {
+                if (search.apply(move)) {
+                    touched[move.from()] = true;
+                    touched[move.to()] = true;
+                    applied++;
+                }
+            }
+            if (applied == 0) {
+                break;
+            }
+            moves += applied;
+            for (int a = 0; a < drivers.size(); a++) {
+                dirty[a] = touched[a];
+                for (int b : search.neighbours[a]) {
+                    dirty[a] |= touched[b];
+                }
+            }
+        }
+        search.assignTo(drivers);
+        return moves;
+    }
+
+    /**
+     * Moving {@code delivery} from driver {@code from} to {@code to}, and {@code swapped} (or -1) back the
+     * other way, lowers the objective by {@code gain}.
+     */
+    private record Move(double gain, int delivery, int swapped, int from, int to) {}
+
+    /** The assignment being improved, by delivery and driver index. */
+    private final class Search {
+
+        private final List<Delivery> deliveries;
+        private final CoordinateKernel kernel;
+        private final DriverDistances distances;
+        private final int[][] neighbours;
+        private final Clusters clusters;
+        private final int[] initialOwner;
+        private final int[] owner;
+        /** Each movable delivery's distance to its current driver. */
+        private final double[] cost;
+        private final boolean[] movable;
+        /** Average load, as in {@link KMeansDeliveryClusterer#objective}. */
+        private final double meanLoad;
+
+        Search(List<Delivery> deliveries, List<Driver> drivers) {
+            this.deliveries = deliveries;
+            meanLoad = (double) deliveries.size() / drivers.size();
+            kernel = new CoordinateKernel(deliveries, drivers);
+            DriverIndex index = new DriverIndex(kernel);
+            distances = new DriverDistances(kernel, index, distanceModel);
+
+            neighbours = new int[drivers.size()][];
+            for (int a = 0; a < drivers.size(); a++) {
+                int self = a;
+                neighbours[a] = !kernel.hasDriver(a) ? new int[0]
+                        : Arrays.stream(index.kNearest(kernel.driverX(a), kernel.driverY(a), NEIGHBOURS + 1))
+                                .filter(b -> b != self)
+                                .toArray();
+            }
+
+            Map<Delivery, Integer> deliveryIndex = new IdentityHashMap<>(deliveries.size());
+            for (int d = 0; d < deliveries.size(); d++) {
+                deliveryIndex.put(deliveries.get(d), d);
+            }
+            clusters = new Clusters(drivers.size());
+            owner = new int[deliveries.size()];
+            Arrays.fill(owner, -1);
+            cost = new double[deliveries.size()];
+            movable = new boolean[deliveries.size()];
+            for (int a = 0; a < drivers.size(); a++) {
+                for (Delivery delivery : drivers.get(a).getAssignedDeliveries()) {
+                    Integer d = deliveryIndex.get(delivery);
+                    if (d == null) {
+                        continue;
+                    }
+                    clusters.add(a, d);
+                    owner[d] = a;
+                    String pinned = delivery.assignToDriverName();
+                    movable[d] = kernel.hasDriver(a) && (pinned == null || pinned.isBlank())
+                            && !delivery.id().endsWith("-home");
+                    if (movable[d]) {
+                        cost[d] = distances.deliveryToDriver(d, a);
+                    }
+                }
+            }
+            initialOwner = owner.clone();
+        }
+
+        /** For each movable delivery of driver {@code a}, its best relocation or swap with a neighbour. */
+        List<Move> bestMoves(int a, long deadline) {
+            List<Move> moves = new ArrayList<>();
+            if (System.nanoTime() - deadline >= 0) {
+                return moves;
+            }
+            int aSize = clusters.size(a);
+            Move[] best = new Move[aSize];
+            for (int b : neighbours[a]) {
+                // Distances from b's movable deliveries to a, shared by every swap with b
+                int bSize = clusters.size(b);
+                double[] toA = new double[bSize];
+                for (int k = 0; k < bSize; k++) {
+                    int e = clusters.get(b, k);
+                    toA[k] = movable[e] ? distances.deliveryToDriver(e, a) : Double.NaN;
+                }
+                boolean room = bSize < maxDeliveriesPerDriver;
+                double balance = room ? balanceGain(a, b) : 0;
+                for (int j = 0; j < aSize; j++) {
+                    int d = clusters.get(a, j);
+                    if (!movable[d]) {
+                        continue;
+                    }
+                    double toB = distances.deliveryToDriver(d, b);
+                    double bestGain = best[j] == null ? EPSILON : best[j].gain();
+                    if (room && cost[d] - toB + balance > bestGain) {
+                        bestGain = cost[d] - toB + balance;
+                        best[j] = new Move(bestGain, d, -1, a, b);
+                    }
+                    for (int k = 0; k < bSize; k++) {
+                        int e = clusters.get(b, k);
+                        if (movable[e]) {
+                            double gain = cost[d] + cost[e] - toB - toA[k];
+                            if (gain > bestGain) {
+                                bestGain = gain;
+                                best[j] = new Move(gain, d, e, a, b);
+                            }
+                        }
+                    }
+                }
+            }
+            for (Move move : best) {
+                if (move != null) {
+                    moves.add(move);
+                }
+            }
+            return moves;
+        }
+
+        /**
+         * Make the move if it is still possible and still gains, which may no longer hold once an earlier
+         * move of the round has taken one of its deliveries or filled its recipient.
+         */
+        boolean apply(Move move) {
+            int d = move.delivery();
+            int e = move.swapped();
+            if (owner[d] != move.from() || (e >= 0 && owner[e] != move.to())
+                    || (e < 0 && clusters.size(move.to()) >= maxDeliveriesPerDriver)) {
+                return false;
+            }
+            double gain = e < 0
+                    ? cost[d] - distances.deliveryToDriver(d, move.to()) + balanceGain(move.from(), move.to())
+                    : cost[d] + cost[e] - distances.deliveryToDriver(d, move.to())
+                            - distances.deliveryToDriver(e, move.from());
+            if (!(gain > EPSILON)) {
+                return false;
+            }
+            relocate(d, move.from(), move.to());
+            if (e >= 0) {
+                relocate(e, move.to(), move.from());
+            }
+            return true;
+        }
+
+        /** How much moving one delivery from driver {@code from} to {@code to} lowers the imbalance penalty. */
+        private double balanceGain(int from, int to) {
+            int fromSize = clusters.size(from);
+            int toSize = clusters.size(to);
+            return KMeansDeliveryClusterer.IMBALANCE_PENALTY_KM
+                    * (Math.abs(fromSize - meanLoad) + Math.abs(toSize - meanLoad)
+                            - Math.abs(fromSize - 1 - meanLoad) - Math.abs(toSize + 1 - meanLoad));
+        }
+
+        private void relocate(int delivery, int from, int to) {
+            for (int j = 0; j < clusters.size(from); j++) {
+                if (clusters.get(from, j) == delivery) {
+                    clusters.remove(from, j);
+                    break;
+                }
+            }
+            clusters.add(to, delivery);
+            owner[delivery] = to;
+            cost[delivery] = distances.deliveryToDriver(delivery, to);
+        }
+
+        /** Move the deliveries that changed driver; everyone else's deliveries stay in their order. */
+        void assignTo(List<Driver> drivers) {
+            for (int d = 0; d < owner.length; d++) {
+                if (owner[d] != initialOwner[d]) {
+                    drivers.get(initialOwner[d]).removeDelivery(deliveries.get(d));
+                    drivers.get(owner[d]).addDelivery(deliveries.get(d));
+                }
+            }
+        }
+    }
+}
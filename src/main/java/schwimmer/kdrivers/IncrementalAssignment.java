@@ -0,0 +1,196 @@
+package schwimmer.kdrivers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps an existing assignment of deliveries to drivers up to date as single deliveries are added, removed
+ * or moved, without re-clustering. Every update changes only the drivers it returns, so drivers who already
+ * have their route sheets are left alone unless the update had to involve them.
+ * <p>
+ * A new delivery goes to the nearest driver with room. If its nearest driver is full, it may instead take
+ * that driver's place and push one of the driver's deliveries to the nearest driver with room, whichever
+ * adds less total distance. Deliveries with an {@code assign_to} driver go to that driver regardless of
+ * capacity, as they do in the clusterers.
+ * <p>
+ * Deliveries are tracked by identity: pass the same {@code Delivery} instances that were added or assigned.
+ */
+public final class IncrementalAssignment {
+
+    private final List<Driver> drivers;
+    private final int maxPerDriver;
+    private final CoordinateKernel kernel;
+    private final DriverIndex driverIndex;
+    private final int[] loads;
+    // Identity keys: hashing the record would hash its strings on every lookup, and two equal rows are
+    // still two deliveries
+    private final Map<Delivery, Integer> driverOf = new IdentityHashMap<>();
+    private final Map<String, Integer> driversByName = new HashMap<>();
+
+    /**
+     * @param drivers      drivers with their current deliveries, e.g. as returned by a {@link DeliveryClusterer}
+     * @param maxPerDriver capacity used when placing new deliveries
+     */
+    public IncrementalAssignment(List<Driver> drivers, int maxPerDriver) {
+        if (maxPerDriver < 1) {
+            throw new IllegalArgumentException("maxPerDriver must be at least 1: " + maxPerDriver);
+        }
+        this.drivers = List.copyOf(drivers);
+        this.maxPerDriver = maxPerDriver;
+        this.loads = new int[drivers.size()];
+        List<Delivery> assigned = new ArrayList<>();
+        for (int i = 0; i < drivers.size(); i++) {
+            Driver driver = drivers.get(i);
+            driversByName.putIfAbsent(driver.getName().trim().toLowerCase(), i);
+            for (Delivery d : driver.getAssignedDeliveries()) {
+                driverOf.put(d, i);
+                assigned.add(d);
+            }
+            loads[i] = driver.getAssignedDeliveries().size();
+        }
+        this.kernel = new CoordinateKernel(assigned, drivers);
+        this.driverIndex = new DriverIndex(kernel);
+    }
+
+    /** The driver the delivery is assigned to, or null if it is not in the assignment. */
+    public Driver driverOf(Delivery delivery) {
+        Integer driver = driverOf.get(delivery);
+        return driver == null ? null : drivers.get(driver);
+    }
+
+    /**
+     * Assign a new delivery and return the drivers whose deliveries changed.
+     *
+     * @throws IllegalArgumentException if the delivery is already assigned
+     * @throws IllegalStateException    if no driver with coordinates has room for it
+     */
+    public Set<Driver> add(Delivery delivery) {
+        if (driverOf.containsKey(delivery)) {
+            throw new IllegalArgumentException("Delivery " + delivery.id() + " is already assigned");
+        }
+        Set<Driver> changed = new LinkedHashSet<>();
+        int pinned = pinnedDriver(delivery);
+        if (pinned >= 0) {
+            assign(delivery, pinned, changed);
+            return changed;
+        }
+
+        double x = kernel.projectX(delivery.longitude());
+        double y = kernel.projectY(delivery.latitude());
+        int withRoom = driverIndex.nearest(x, y, i -> loads[i] < maxPerDriver);
+        int nearest = driverIndex.nearest(x, y);
+        if (nearest < 0) {
+            throw new IllegalStateException("No driver has coordinates to assign " + delivery.id() + " to");
+        }
+
+        // Option 1: the nearest driver with room. Option 2: the nearest driver, bumping one of its deliveries
+        double bestCost = withRoom >= 0 ? kernel.driverToPoint(withRoom, x, y) : Double.POSITIVE_INFINITY;
+        Delivery bumped = null;
+        int bumpedTo = -1;
+        if (nearest != withRoom) {
+            double direct = kernel.driverToPoint(nearest, x, y);
+            for (Delivery d : drivers.get(nearest).getAssignedDeliveries()) {
+                if (!movable(d)) {
+                    continue;
+                }
+                double dx = kernel.projectX(d.longitude());
+                double dy = kernel.projectY(d.latitude());
+                int to = driverIndex.nearest(dx, dy, i -> i != nearest && loads[i] < maxPerDriver);
+                if (to < 0) {
+                    continue;
+                }
+                double cost = direct + kernel.driverToPoint(to, dx, dy) - kernel.driverToPoint(nearest, dx, dy);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bumped = d;
+                    bumpedTo = to;
+                }
+            }
+        }
+        if (bumped != null) {
+            unassign(bumped, changed);
+            assign(bumped, bumpedTo, changed);
+            assign(delivery, nearest, changed);
+        } else if (withRoom >= 0) {
+            assign(delivery, withRoom, changed);
+        } else {
+            throw new IllegalStateException("All drivers are at capacity (" + maxPerDriver
+                    + "); cannot assign " + delivery.id());
+        }
+        return changed;
+    }
+
+    /**
+     * Remove a delivery and return the driver it was taken from. Other drivers keep their deliveries.
+     *
+     * @throws IllegalArgumentException if the delivery is not assigned
+     */
+    public Set<Driver> remove(Delivery delivery) {
+        if (!driverOf.containsKey(delivery)) {
+            throw new IllegalArgumentException("Delivery " + delivery.id() + " is not assigned");
+        }
+        Set<Driver> changed = new LinkedHashSet<>();
+        unassign(delivery, changed);
+        return changed;
+    }
+
+    /**
+     * Move a delivery to the given driver, even past capacity (a dispatcher's explicit choice, like
+     * {@code assign_to}), and return both drivers involved; empty if it is already there.
+     *
+     * @throws IllegalArgumentException if the delivery is not assigned or the driver is not in the assignment
+     */
+    public Set<Driver> move(Delivery delivery, Driver to) {
+        if (!driverOf.containsKey(delivery)) {
+            throw new IllegalArgumentException("Delivery " + delivery.id() + " is not assigned");
+        }
+        int toIdx = indexOf(to);
+        Set<Driver> changed = new LinkedHashSet<>();
+        if (driverOf.get(delivery) != toIdx) {
+            unassign(delivery, changed);
+            assign(delivery, toIdx, changed);
+        }
+        return changed;
+    }
+
+    private void assign(Delivery delivery, int driver, Set<Driver> changed) {
+        drivers.get(driver).addDelivery(delivery);
+        driverOf.put(delivery, driver);
+        loads[driver]++;
+        changed.add(drivers.get(driver));
+    }
+
+    private void unassign(Delivery delivery, Set<Driver> changed) {
+        int driver = driverOf.remove(delivery);
+        drivers.get(driver).removeDelivery(delivery);
+        loads[driver]--;
+        changed.add(drivers.get(driver));
+    }
+
+    private int indexOf(Driver driver) {
+        for (int i = 0; i < drivers.size(); i++) {
+            if (drivers.get(i) == driver) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Driver " + driver.getId() + " is not in the assignment");
+    }
+
+    private int pinnedDriver(Delivery delivery) {
+        if (delivery.assignToDriverName() == null || delivery.assignToDriverName().isBlank()) {
+            return -1;
+        }
+        return driversByName.getOrDefault(delivery.assignToDriverName().trim().toLowerCase(), -1);
+    }
+
+    /** Deliveries that may be bumped to another driver: not pinned with assign_to and not a driver's home. */
+    private static boolean movable(Delivery delivery) {
+        return !delivery.id().endsWith("-home")
+                && (delivery.assignToDriverName() == null || delivery.assignToDriverName().isBlank());
+    }
+}
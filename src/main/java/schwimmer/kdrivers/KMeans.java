@@ -0,0 +1,300 @@
+package schwimmer.kdrivers;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * K-means over flat coordinate arrays in the {@link CoordinateKernel} plane.
+ * <p>
+ * Centres are seeded with k-means++ and refined with Hamerly's algorithm: each point keeps an upper bound
+ * on the distance to its own centre and a lower bound on the distance to any other, and is only
+ * reconsidered when a centre moved far enough to break them. A point that is reconsidered finds its two
+ * nearest centres with a {@link DriverIndex} built over the centres, so an iteration costs O(n log k) at
+ * worst rather than O(nk). Seeding updates and the assignment step run on the fork/join pool over fixed
+ * chunks of points; everything else, including the centroid sums, runs in point order, so the result
+ * depends only on the input and the seed.
+ */
+final class KMeans {
+
+    /** Points per fork/join leaf; small inputs run on the calling thread. */
+    private static final int CHUNK = 4096;
+
+    private final int k;
+    private final long seed;
+    private final int maxIterations;
+
+    KMeans(int k, long seed) {
+        this(k, seed, 300);
+    }
+
+    KMeans(int k, long seed, int maxIterations) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+        this.k = k;
+        this.seed = seed;
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * @param assignment   centre index of each point
+     * @param iterations   number of assignment passes after the initial one
+     */
+    record Result(int[] assignment, double[] centerX, double[] centerY, int iterations) {
+
+        /** Sum of squared distances from each point to its centre. */
+        double inertia(double[] x, double[] y) {
+            double sum = 0;
+            for (int i = 0; i < x.length; i++) {
+                double d = CoordinateKernel.distance(x[i], y[i], centerX[assignment[i]], centerY[assignment[i]]);
+                sum += d * d;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Cluster the points ({@code x[i]}, {@code y[i]}) into {@code min(k, n)} clusters. Stops early, with the
+     * clusters so far, if the calling thread is interrupted.
+     */
+    Result cluster(double[] x, double[] y) {
+        int n = x.length;
+        if (y.length != n) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length: " + n + " vs " + y.length);
+        }
+        int clusters = Math.min(k, n);
+        if (clusters == 0) {
+            return new Result(new int[0], new double[0], new double[0], 0);
+        }
+        double[] cx = new double[clusters];
+        double[] cy = new double[clusters];
+        seed(x, y, cx, cy);
+
+        int[] assignment = new int[n];
+        double[] upper = new double[n];
+        double[] lower = new double[n];
+        DriverIndex centers = new DriverIndex(cx, cy);
+        forEachChunk(n, chunk -> {
+            for (int i = chunkStart(chunk); i < chunkEnd(chunk, n); i++) {
+                reassign(i, x, y, cx, cy, centers, assignment, upper, lower);
+            }
+        });
+
+        double[] moved = new double[clusters];
+        double[] half = new double[clusters];
+        int iterations = 0;
+        while (iterations < maxIterations && !Thread.currentThread().isInterrupted()) {
+            double[] farthest = moveCenters(x, y, assignment, cx, cy, moved);
+            if (farthest[0] == 0) {
+                break;
+            }
+            iterations++;
+            DriverIndex index = new DriverIndex(cx, cy);
+            for (int c = 0; c < clusters; c++) {
+                half[c] = clusters == 1 ? Double.POSITIVE_INFINITY : nearestOther(index, cx, cy, c) / 2;
+            }
+            int farthestCenter = (int) farthest[1];
+            double maxMove = farthest[0];
+            double secondMove = farthest[2];
+            int[] changes = new int[chunkCount(n)];
+            forEachChunk(n, chunk -> {
+                int changed = 0;
+                for (int i = chunkStart(chunk); i < chunkEnd(chunk, n); i++) {
+                    int a = assignment[i];
+                    upper[i] += moved[a];
+                    lower[i] -= a == farthestCenter ? secondMove : maxMove;
+                    double bound = Math.max(half[a], lower[i]);
+                    if (upper[i] <= bound) {
+                        continue;
+                    }
+                    upper[i] = CoordinateKernel.distance(x[i], y[i], cx[a], cy[a]);
+                    if (upper[i] <= bound) {
+                        continue;
+                    }
+                    if (reassign(i, x, y, cx, cy, index, assignment, upper, lower)) {
+                        changed++;
+                    }
+                }
+                changes[chunk] = changed;
+            });
+            int changed = 0;
+            for (int c : changes) {
+                changed += c;
+            }
+            if (changed == 0) {
+                break;
+            }
+        }
+        return new Result(assignment, cx, cy, iterations);
+    }
+
+    /** k-means++: each further centre is drawn with probability proportional to the squared distance. */
+    private void seed(double[] x, double[] y, double[] cx, double[] cy) {
+        int n = x.length;
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] nearest = new double[n];
+        double[] chunkSums = new double[chunkCount(n)];
+        int first = random.nextInt(n);
+        cx[0] = x[first];
+        cy[0] = y[first];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int c = 1; c < cx.length; c++) {
+            double px = cx[c - 1];
+            double py = cy[c - 1];
+            forEachChunk(n, chunk -> {
+                double sum = 0;
+                for (int i = chunkStart(chunk); i < chunkEnd(chunk, n); i++) {
+                    double dx = x[i] - px;
+                    double dy = y[i] - py;
+                    double squared = dx * dx + dy * dy;
+                    if (squared < nearest[i]) {
+                        nearest[i] = squared;
+                    }
+                    sum += nearest[i];
+                }
+                chunkSums[chunk] = sum;
+            });
+            double total = 0;
+            for (double sum : chunkSums) {
+                total += sum;
+            }
+            int pick = total > 0 ? sample(nearest, chunkSums, random.nextDouble() * total) : random.nextInt(n);
+            cx[c] = x[pick];
+            cy[c] = y[pick];
+        }
+    }
+
+    /** Index of the point where the running sum of weights first exceeds {@code target}. */
+    private static int sample(double[] weights, double[] chunkSums, double target) {
+        int chunk = 0;
+        while (chunk < chunkSums.length - 1 && target >= chunkSums[chunk]) {
+            target -= chunkSums[chunk];
+            chunk++;
+        }
+        int end = chunkEnd(chunk, weights.length);
+        int last = -1;
+        for (int i = chunkStart(chunk); i < end; i++) {
+            if (weights[i] > 0) {
+                last = i;
+                if (target < weights[i]) {
+                    return i;
+                }
+                target -= weights[i];
+            }
+        }
+        // Rounding left a sliver past the last positive weight in the chunk
+        return last >= 0 ? last : chunkStart(chunk);
+    }
+
+    /**
+     * Find the two nearest centres of point i exactly and update its bounds.
+     * Returns whether its centre changed.
+     */
+    private static boolean reassign(int i, double[] x, double[] y, double[] cx, double[] cy, DriverIndex centers,
+                                    int[] assignment, double[] upper, double[] lower) {
+        int[] two = centers.kNearest(x[i], y[i], 2);
+        int best = two[0];
+        upper[i] = CoordinateKernel.distance(x[i], y[i], cx[best], cy[best]);
+        lower[i] = two.length > 1
+                ? CoordinateKernel.distance(x[i], y[i], cx[two[1]], cy[two[1]])
+                : Double.POSITIVE_INFINITY;
+        boolean changed = assignment[i] != best;
+        assignment[i] = best;
+        return changed;
+    }
+
+    /**
+     * Move each centre to the mean of its points (an empty cluster keeps its centre) and record how far
+     * each moved. Returns {largest move, centre that made it, second-largest move}.
+     */
+    private static double[] moveCenters(double[] x, double[] y, int[] assignment,
+                                        double[] cx, double[] cy, double[] moved) {
+        int clusters = cx.length;
+        double[] sumX = new double[clusters];
+        double[] sumY = new double[clusters];
+        int[] counts = new int[clusters];
+        for (int i = 0; i < x.length; i++) {
+            int a = assignment[i];
+            sumX[a] += x[i];
+            sumY[a] += y[i];
+            counts[a]++;
+        }
+        double max = 0;
+        double second = 0;
+        int farthest = -1;
+        for (int c = 0; c < clusters; c++) {
+            moved[c] = 0;
+            if (counts[c] > 0) {
+                double nx = sumX[c] / counts[c];
+                double ny = sumY[c] / counts[c];
+                moved[c] = CoordinateKernel.distance(cx[c], cy[c], nx, ny);
+                cx[c] = nx;
+                cy[c] = ny;
+            }
+            if (moved[c] > max) {
+                second = max;
+                max = moved[c];
+                farthest = c;
+            } else if (moved[c] > second) {
+                second = moved[c];
+            }
+        }
+        return new double[] {max, farthest, second};
+    }
+
+    private static double nearestOther(DriverIndex index, double[] cx, double[] cy, int c) {
+        for (int other : index.kNearest(cx[c], cy[c], 2)) {
+            if (other != c) {
+                return CoordinateKernel.distance(cx[c], cy[c], cx[other], cy[other]);
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static int chunkCount(int n) {
+        return (n + CHUNK - 1) / CHUNK;
+    }
+
+    private static int chunkStart(int chunk) {
+        return chunk * CHUNK;
+    }
+
+    private static int chunkEnd(int chunk, int n) {
+        return Math.min(n, (chunk + 1) * CHUNK);
+    }
+
+    /** Run {@code body} once per chunk of n points, on the common fork/join pool when there is more than one. */
+    private static void forEachChunk(int n, IntConsumer body) {
+        int chunks = chunkCount(n);
+        if (chunks == 1) {
+            body.accept(0);
+        } else {
+            ForkJoinPool.commonPool().invoke(new ChunkTask(0, chunks, body));
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        ChunkTask(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(from, mid, body), new ChunkTask(mid, to, body));
+            }
+        }
+    }
+}
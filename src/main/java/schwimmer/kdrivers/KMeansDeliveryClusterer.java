@@ -1,23 +1,72 @@
 package schwimmer.kdrivers;
 
-import org.apache.commons.math3.ml.clustering.CentroidCluster;
-import org.apache.commons.math3.ml.clustering.Clusterable;
-import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
-import org.apache.commons.math3.ml.distance.EuclideanDistance;
-import org.apache.commons.math3.random.JDKRandomGenerator;
-
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Clusters deliveries using K-means with 1.4 * drivers clusters, assigns each cluster to a driver
- * balancing proximity and workload, and redistributes when any driver exceeds 15 deliveries.
+ * balancing proximity and workload, and redistributes when any driver exceeds 12 deliveries (configurable).
+ * <p>
+ * With several starts, independent k-means seeds run concurrently and the assignment with the lowest
+ * {@link #objective} wins (ties go to the earlier start). Start s uses seed 42 + s, so a run that is not
+ * cut short by its time budget always returns the same assignment.
+ * <p>
+ * K-means itself always works on straight-line positions. With a {@link DistanceModel}, clusters are
+ * matched to drivers and redistributed by travel cost instead of straight-line distance.
  */
 public class KMeansDeliveryClusterer implements DeliveryClusterer {
 
-    private static final int MAX_DELIVERIES_PER_DRIVER = 12;
+    static final int DEFAULT_MAX_DELIVERIES = 12;
     /** Weight for load balancing: score = distance * (1 + this * currentCount). Higher = more balance. */
     private static final double BALANCE_WEIGHT = 0.08;
+    /** Objective penalty, in km, for each delivery by which a driver's load differs from the average. */
+    static final double IMBALANCE_PENALTY_KM = 1.0;
+    private static final long FIRST_SEED = 42;
+
+    private final int maxDeliveriesPerDriver;
+    private final int starts;
+    private final Duration budget;
+    private final DistanceModel distanceModel;
+
+    public KMeansDeliveryClusterer() {
+        this(1, null);
+    }
+
+    public KMeansDeliveryClusterer(int starts, Duration budget) {
+        this(starts, budget, null);
+    }
+
+    /**
+     * @param starts number of k-means seeds to try, on up to one thread per core
+     * @param budget wall-clock limit, or null for none. Starts not begun when it runs out are skipped and
+     *               ones still running are discarded; the first start always completes.
+     * @param distanceModel travel costs for matching clusters to drivers, or null for straight-line distance
+     */
+    public KMeansDeliveryClusterer(int starts, Duration budget, DistanceModel distanceModel) {
+        this(DEFAULT_MAX_DELIVERIES, starts, budget, distanceModel);
+    }
+
+    /** As {@link #KMeansDeliveryClusterer(int, Duration, DistanceModel)}, with another per-driver capacity. */
+    public KMeansDeliveryClusterer(int maxDeliveriesPerDriver, int starts, Duration budget,
+                                   DistanceModel distanceModel) {
+        if (maxDeliveriesPerDriver < 1) {
+            throw new IllegalArgumentException("maxDeliveriesPerDriver must be at least 1: " + maxDeliveriesPerDriver);
+        }
+        if (starts < 1) {
+            throw new IllegalArgumentException("starts must be at least 1: " + starts);
+        }
+        this.maxDeliveriesPerDriver = maxDeliveriesPerDriver;
+        this.starts = starts;
+        this.budget = budget;
+        this.distanceModel = distanceModel;
+    }
 
     @Override
     public List<Driver> clusterAndAssign(List<Delivery> deliveries, List<Driver> drivers) {
@@ -29,176 +78,174 @@ public class KMeansDeliveryClusterer implements DeliveryClusterer {
             return drivers;
         }
 
-        if (deliveries.size() > drivers.size() * MAX_DELIVERIES_PER_DRIVER) {
+        if (deliveries.size() > drivers.size() * maxDeliveriesPerDriver) {
             throw new IllegalArgumentException(
                     "Deliveries (" + deliveries.size() + ") exceeds capacity: " + drivers.size()
-                            + " drivers * " + MAX_DELIVERIES_PER_DRIVER + " max = "
-                            + (drivers.size() * MAX_DELIVERIES_PER_DRIVER));
+                            + " drivers * " + maxDeliveriesPerDriver + " max = "
+                            + (drivers.size() * maxDeliveriesPerDriver));
         }
 
-        List<List<Delivery>> clustersByDriver = new ArrayList<>();
-        for (int i = 0; i < drivers.size(); i++) {
-            clustersByDriver.add(new ArrayList<>());
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+        DriverDistances distances = new DriverDistances(kernel, new DriverIndex(kernel), distanceModel);
+        Clusters best = starts == 1
+                ? cluster(kernel, distances, deliveries, drivers, FIRST_SEED)
+                : bestOfStarts(kernel, distances, deliveries, drivers);
+        return best.assignTo(deliveries, drivers);
+    }
+
+    private Clusters bestOfStarts(CoordinateKernel kernel, DriverDistances distances,
+                                  List<Delivery> deliveries, List<Driver> drivers) {
+        long deadline = budget == null ? 0 : System.nanoTime() + budget.toNanos();
+        int threads = Math.min(starts, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "kmeans-start");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Clusters>> futures = new ArrayList<>();
+            for (int s = 0; s < starts; s++) {
+                long seed = FIRST_SEED + s;
+                boolean required = s == 0;
+                futures.add(pool.submit(() -> required || budget == null || System.nanoTime() - deadline < 0
+                        ? cluster(kernel, distances, deliveries, drivers, seed)
+                        : null));
+            }
+
+            Clusters best = futures.get(0).get();
+            double bestObjective = objective(best, kernel);
+            for (int s = 1; s < starts; s++) {
+                Clusters candidate = budget == null ? futures.get(s).get() : await(futures.get(s), deadline);
+                if (candidate != null) {
+                    double value = objective(candidate, kernel);
+                    if (value < bestObjective) {
+                        best = candidate;
+                        bestObjective = value;
+                    }
+                }
+            }
+            return best;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while clustering", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("K-means start failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
+    }
+
+    /** The start's result, or null if it was skipped or does not finish before the deadline. */
+    private static Clusters await(Future<Clusters> future, long deadline)
+            throws InterruptedException, ExecutionException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return null;
+        }
+    }
+
+    /**
+     * One k-means start: cluster, assign clusters to drivers, redistribute and apply overrides.
+     * {@link AnytimeDeliveryClusterer} runs starts of its own with this.
+     */
+    Clusters cluster(CoordinateKernel kernel, DriverDistances distances,
+                     List<Delivery> deliveries, List<Driver> drivers, long seed) {
+        Clusters clustersByDriver = new Clusters(drivers.size());
 
         // Pre-assign overrides (deliveries with assign_to driver name)
-        List<Delivery> clusterableDeliveries = new ArrayList<>();
-        for (Delivery d : deliveries) {
+        int[] clusterable = new int[deliveries.size()];
+        int clusterableCount = 0;
+        for (int i = 0; i < deliveries.size(); i++) {
+            Delivery d = deliveries.get(i);
+            int driverIdx = -1;
             if (d.assignToDriverName() != null && !d.assignToDriverName().isBlank()) {
-                int driverIdx = findDriverByName(drivers, d.assignToDriverName());
-                if (driverIdx >= 0) {
-                    clustersByDriver.get(driverIdx).add(d);
-                } else {
-                    clusterableDeliveries.add(d);
-                }
+                driverIdx = findDriverByName(drivers, d.assignToDriverName());
+            }
+            if (driverIdx >= 0) {
+                clustersByDriver.add(driverIdx, i);
             } else {
-                clusterableDeliveries.add(d);
+                clusterable[clusterableCount++] = i;
             }
         }
 
-        if (clusterableDeliveries.isEmpty()) {
-            for (int i = 0; i < drivers.size(); i++) {
-                for (Delivery d : clustersByDriver.get(i)) {
-                    drivers.get(i).addDelivery(d);
-                }
-            }
-            return drivers;
+        if (clusterableCount == 0) {
+            return clustersByDriver;
         }
 
-        // K-means on non-override deliveries
-        List<ClusterableDelivery> clusterable = new ArrayList<>();
-        for (Delivery d : clusterableDeliveries) {
-            clusterable.add(new ClusterableDelivery(d));
+        // K-means on non-override deliveries, in the kernel's projected plane
+        double[] xs = new double[clusterableCount];
+        double[] ys = new double[clusterableCount];
+        for (int p = 0; p < clusterableCount; p++) {
+            xs[p] = kernel.deliveryX(clusterable[p]);
+            ys[p] = kernel.deliveryY(clusterable[p]);
         }
+        int k = Math.max(1, Math.min((int) Math.ceil(1.4 * drivers.size()), clusterableCount));
+        KMeans.Result kmeans = new KMeans(k, seed).cluster(xs, ys);
 
-        int k = Math.max(1, Math.min((int) Math.ceil(1.4 * drivers.size()), clusterableDeliveries.size()));
-        var random = new JDKRandomGenerator(42);
-        var clusterer = new KMeansPlusPlusClusterer<ClusterableDelivery>(k, -1, new EuclideanDistance(), random);
-        List<CentroidCluster<ClusterableDelivery>> centroidClusters = clusterer.cluster(clusterable);
-
-        for (CentroidCluster<ClusterableDelivery> cluster : centroidClusters) {
-            double[] centroid = cluster.getCenter().getPoint();
-            double cx = centroid[0];
-            double cy = centroid[1];
-
-            int bestDriver = -1;
-            double bestScore = Double.MAX_VALUE;
+        // Group points by centroid, keeping delivery order within each cluster
+        Clusters centroidClusters = new Clusters(kmeans.centerX().length);
+        for (int p = 0; p < clusterableCount; p++) {
+            centroidClusters.add(kmeans.assignment()[p], clusterable[p]);
+        }
 
-            for (int i = 0; i < drivers.size(); i++) {
-                Driver driver = drivers.get(i);
-                if (!driver.hasCoordinates()) {
-                    continue;
-                }
-                double dist = distance(cx, cy, driver.getLatitude(), driver.getLongitude());
-                int currentCount = clustersByDriver.get(i).size();
-                double score = dist * (1 + BALANCE_WEIGHT * currentCount);
-                if (score < bestScore) {
-                    bestScore = score;
-                    bestDriver = i;
-                }
+        for (int c = 0; c < centroidClusters.count(); c++) {
+            if (centroidClusters.size(c) == 0) {
+                continue;
             }
-
+            int bestDriver = distances.bestForPoint(kmeans.centerX()[c], kmeans.centerY()[c],
+                    i -> 1 + BALANCE_WEIGHT * clustersByDriver.size(i));
             if (bestDriver >= 0) {
-                for (ClusterableDelivery cd : cluster.getPoints()) {
-                    clustersByDriver.get(bestDriver).add(cd.delivery);
+                for (int j = 0; j < centroidClusters.size(c); j++) {
+                    clustersByDriver.add(bestDriver, centroidClusters.get(c, j));
                 }
             }
         }
 
         // Redistribution: move deliveries from oversized clusters to underfull ones
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (int donorIdx = 0; donorIdx < drivers.size(); donorIdx++) {
-                List<Delivery> donorCluster = clustersByDriver.get(donorIdx);
-                Driver donorDriver = drivers.get(donorIdx);
-                if (!donorDriver.hasCoordinates() || donorCluster.size() <= MAX_DELIVERIES_PER_DRIVER) {
-                    continue;
-                }
-
-                // Find farthest delivery from donor
-                Delivery bestToMove = null;
-                double bestScore = -1;
-                int bestToMoveIdx = -1;
-
-                for (int j = 0; j < donorCluster.size(); j++) {
-                    Delivery d = donorCluster.get(j);
-                    if (d.assignToDriverName() != null && !d.assignToDriverName().isBlank()) {
-                        continue;
-                    }
-                    double distFromDonor = distance(d.latitude(), d.longitude(),
-                            donorDriver.getLatitude(), donorDriver.getLongitude());
-                    if (distFromDonor > bestScore) {
-                        bestScore = distFromDonor;
-                        bestToMove = d;
-                        bestToMoveIdx = j;
-                    }
-                }
+        new ClusterRebalancer(maxDeliveriesPerDriver, BALANCE_WEIGHT, i -> {
+            Delivery d = deliveries.get(i);
+            return d.assignToDriverName() == null || d.assignToDriverName().isBlank();
+        }).rebalance(clustersByDriver, distances);
 
-                if (bestToMove == null) {
-                    continue;
-                }
-
-                // Find recipient: driver with room that minimizes distance + balance (prefer underloaded)
-                int recipientIdx = -1;
-                double bestRecipientScore = Double.MAX_VALUE;
+        // Apply overrides: move deliveries with assign_to to their specified driver
+        applyOverrides(clustersByDriver, deliveries, drivers);
 
-                for (int i = 0; i < drivers.size(); i++) {
-                    if (i == donorIdx) {
-                        continue;
-                    }
-                    List<Delivery> recipientCluster = clustersByDriver.get(i);
-                    if (recipientCluster.size() >= MAX_DELIVERIES_PER_DRIVER) {
-                        continue;
-                    }
-                    Driver recipientDriver = drivers.get(i);
-                    if (!recipientDriver.hasCoordinates()) {
-                        continue;
-                    }
-                    double dist = distance(bestToMove.latitude(), bestToMove.longitude(),
-                            recipientDriver.getLatitude(), recipientDriver.getLongitude());
-                    int currentCount = recipientCluster.size();
-                    double score = dist * (1 + BALANCE_WEIGHT * currentCount);
-                    if (score < bestRecipientScore) {
-                        bestRecipientScore = score;
-                        recipientIdx = i;
-                    }
-                }
+        return clustersByDriver;
+    }
 
-                if (recipientIdx >= 0) {
-                    donorCluster.remove(bestToMoveIdx);
-                    clustersByDriver.get(recipientIdx).add(bestToMove);
-                    changed = true;
-                    break;
+    /**
+     * Total delivery-to-driver distance in km plus {@link #IMBALANCE_PENALTY_KM} for each delivery by which
+     * a driver's load differs from the average. Deliveries of drivers without coordinates add no distance.
+     */
+    static double objective(Clusters clusters, CoordinateKernel kernel) {
+        double mean = (double) kernel.deliveryCount() / clusters.count();
+        double distance = 0;
+        double imbalance = 0;
+        for (int c = 0; c < clusters.count(); c++) {
+            if (kernel.hasDriver(c)) {
+                for (int j = 0; j < clusters.size(c); j++) {
+                    distance += kernel.deliveryToDriver(clusters.get(c, j), c);
                 }
             }
+            imbalance += Math.abs(clusters.size(c) - mean);
         }
-
-        // Apply overrides: move deliveries with assign_to to their specified driver
-        applyOverrides(clustersByDriver, drivers);
-
-        // Assign clusters to drivers
-        for (int i = 0; i < drivers.size(); i++) {
-            for (Delivery d : clustersByDriver.get(i)) {
-                drivers.get(i).addDelivery(d);
-            }
-        }
-
-        return drivers;
+        return distance + IMBALANCE_PENALTY_KM * imbalance;
     }
 
-    private static void applyOverrides(List<List<Delivery>> clustersByDriver, List<Driver> drivers) {
-        for (int fromIdx = 0; fromIdx < clustersByDriver.size(); fromIdx++) {
-            List<Delivery> cluster = clustersByDriver.get(fromIdx);
-            for (int j = cluster.size() - 1; j >= 0; j--) {
-                Delivery d = cluster.get(j);
+    private static void applyOverrides(Clusters clustersByDriver, List<Delivery> deliveries, List<Driver> drivers) {
+        for (int fromIdx = 0; fromIdx < clustersByDriver.count(); fromIdx++) {
+            for (int j = clustersByDriver.size(fromIdx) - 1; j >= 0; j--) {
+                int i = clustersByDriver.get(fromIdx, j);
+                Delivery d = deliveries.get(i);
                 if (d.assignToDriverName() == null || d.assignToDriverName().isBlank()) {
                     continue;
                 }
                 int toIdx = findDriverByName(drivers, d.assignToDriverName());
                 if (toIdx >= 0 && toIdx != fromIdx) {
-                    cluster.remove(j);
-                    clustersByDriver.get(toIdx).add(d);
+                    clustersByDriver.remove(fromIdx, j);
+                    clustersByDriver.add(toIdx, i);
                 }
             }
         }
@@ -213,23 +260,4 @@ public class KMeansDeliveryClusterer implements DeliveryClusterer {
         }
         return -1;
     }
-
-    private static double distance(double lat1, double lon1, double lat2, double lon2) {
-        double dLat = lat2 - lat1;
-        double dLon = lon2 - lon1;
-        return Math.sqrt(dLat * dLat + dLon * dLon);
-    }
-
-    private static class ClusterableDelivery implements Clusterable {
-        private final Delivery delivery;
-
-        ClusterableDelivery(Delivery d) {
-            this.delivery = d;
-        }
-
-        @Override
-        public double[] getPoint() {
-            return new double[]{delivery.latitude(), delivery.longitude()};
-        }
-    }
 }
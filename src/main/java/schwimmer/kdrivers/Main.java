@@ -1,27 +1,269 @@
 package schwimmer.kdrivers;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Clusters deliveries from CSV using K-means and assigns clusters to drivers by proximity.
- * Usage: kdrivers <csv-file> [--no-map]
+ * Usage: kdrivers [warm] <csv-file> [--no-map] [--use-warm] [--starts <n> | --deadline <seconds>]
+ *        [--improve <seconds>] [--roads <extract.osm>] [--gazetteer <addresses.csv> | --nominatim <url>]
+ *        [--geocode-ttl <days>]
+ *        kdrivers evaluate <csv-file | synthetic:DELIVERIESxDRIVERS[:distribution]>... [--out <results.csv>]
  */
 public class Main {
 
+    /** Wall-clock limit for the extra k-means starts requested with --starts. */
+    private static final Duration STARTS_BUDGET = Duration.ofMinutes(1);
+    private static final Path DISTANCE_STORE = Path.of(".distance-store", "distances.dat");
+    private static final int DISTANCE_STORE_MAX_ENTRIES = 1_000_000;
+    private static final String SYNTHETIC_PREFIX = "synthetic:";
+    private static final long SYNTHETIC_SEED = 42;
+
     public static void main(String[] args) throws InterruptedException {
         List<String> argList = new ArrayList<>(List.of(args));
+        boolean warm = !argList.isEmpty() && argList.get(0).equals("warm");
+        boolean evaluate = !argList.isEmpty() && argList.get(0).equals("evaluate");
+        if (warm || evaluate) {
+            argList.remove(0);
+        }
         boolean includeMap = !argList.remove("--no-map");
+        boolean useWarm = argList.remove("--use-warm");
+        String gazetteerPath = removeOption(argList, "--gazetteer");
+        String localNominatim = removeOption(argList, "--nominatim");
+        String geocodeTtl = removeOption(argList, "--geocode-ttl");
+        String starts = removeOption(argList, "--starts");
+        String improve = removeOption(argList, "--improve");
+        String deadline = removeOption(argList, "--deadline");
+        String roadsPath = removeOption(argList, "--roads");
+        String evaluationOut = removeOption(argList, "--out");
 
         if (argList.isEmpty()) {
-            System.err.println("Usage: kdrivers <csv-file> [--no-map]");
+            System.err.println("Usage: kdrivers [warm] <csv-file> [--no-map] [--use-warm]"
+                    + " [--starts <n> | --deadline <seconds>] [--improve <seconds>] [--roads <extract.osm>]"
+                    + " [--gazetteer <addresses.csv> | --nominatim <url>] [--geocode-ttl <days>]");
             System.err.println("  CSV must have columns: name, address, driver");
             System.err.println("  Rows with 'Driver' in driver column are drivers.");
+            System.err.println("  --gazetteer geocodes offline from an OpenAddresses-style CSV instead of Nominatim.");
+            System.err.println("  --nominatim tries a self-hosted Nominatim instance before the public one.");
+            System.err.println("  --geocode-ttl keeps found coordinates in the geocode store for the given days"
+                    + " (default 365).");
+            System.err.println("  --starts runs n k-means seeds in parallel and keeps the best assignment.");
+            System.err.println("  --deadline clusters within the given seconds, keeping the best assignment found by then.");
+            System.err.println("  --improve spends up to the given seconds trading deliveries between nearby drivers.");
+            System.err.println("  --roads matches deliveries to drivers by travel time over a local OSM road extract.");
+            System.err.println("  warm only fills the geocode and map tile caches and saves the assignment;"
+                    + " no output is written.");
+            System.err.println("  --use-warm uses the assignment warm saved for the same deliveries instead of"
+                    + " clustering.");
+            System.err.println("Usage: kdrivers evaluate <csv-file | synthetic:DELIVERIESxDRIVERS[:distribution]>..."
+                    + " [--out <results.csv>]");
+            System.err.println("  Runs every clusterer on each dataset and compares time, memory and quality.");
+            System.err.println("  Distributions: uniform (default), clustered-city, heavy-override.");
+            System.exit(1);
+        }
+        if (deadline != null && starts != null) {
+            System.err.println("--deadline and --starts cannot be combined: --deadline runs as many starts as fit");
             System.exit(1);
         }
 
+        Duration storeTtl = geocodeTtl != null
+                ? Duration.ofDays(parsePositive("--geocode-ttl", geocodeTtl, 0))
+                : Geocoder.DEFAULT_STORE_TTL;
+        if (evaluate) {
+            // Synthetic datasets need no geocoder, so only set one up for CSV files
+            Supplier<GeocodingEngine> geocoder = () -> createGeocoder(gazetteerPath, localNominatim, storeTtl);
+            runEvaluation(argList, geocoder, Path.of(evaluationOut != null ? evaluationOut : "evaluation.csv"));
+            return;
+        }
+        GeocodingEngine geocoder = createGeocoder(gazetteerPath, localNominatim, storeTtl);
+        RoadNetwork roads = roadsPath != null ? loadRoads(Path.of(roadsPath)) : null;
+        DistanceStore distanceStore = roads != null ? openStore(roads) : null;
+        DistanceModel distanceModel = distanceStore != null ? new StoredDistanceModel(roads, distanceStore) : roads;
+        DeliveryClusterer clusterer = deadline != null
+                ? new AnytimeDeliveryClusterer(KMeansDeliveryClusterer.DEFAULT_MAX_DELIVERIES,
+                        Duration.ofSeconds(parsePositive("--deadline", deadline, 0)), distanceModel, Main::logProgress)
+                : new KMeansDeliveryClusterer(parsePositive("--starts", starts, 1), STARTS_BUDGET, distanceModel);
+        if (improve != null) {
+            clusterer = new ImprovingDeliveryClusterer(clusterer, KMeansDeliveryClusterer.DEFAULT_MAX_DELIVERIES,
+                    Duration.ofSeconds(parsePositive("--improve", improve, 0)), distanceModel);
+        }
         Path csvPath = Path.of(argList.get(0));
-        new DeliveryRoutingApp().run(csvPath, includeMap);
+        try {
+            if (warm) {
+                new DeliveryRoutingApp(geocoder, clusterer).warm(csvPath, useWarm);
+            } else {
+                new DeliveryRoutingApp(geocoder, clusterer).run(csvPath, includeMap, useWarm);
+            }
+        } finally {
+            close(distanceStore, "distance store");
+            close(geocoder, "geocoder");
+        }
+    }
+
+    private static void close(Closeable closeable, String what) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close " + what + ": " + e.getMessage());
+        }
+    }
+
+    private static GeocodingEngine createGeocoder(String gazetteerPath, String localNominatim, Duration storeTtl) {
+        if (gazetteerPath != null) {
+            return loadGazetteer(Path.of(gazetteerPath));
+        } else if (localNominatim != null) {
+            return Geocoder.withLocalNominatim(localNominatim, storeTtl);
+        }
+        return Geocoder.create(storeTtl);
+    }
+
+    private static void runEvaluation(List<String> datasetArgs, Supplier<GeocodingEngine> geocoder, Path out) {
+        List<ClustererEvaluation.Dataset> datasets = new ArrayList<>();
+        GeocodingEngine engine = null;
+        try {
+            DeliveryRoutingApp app = null;
+            for (String arg : datasetArgs) {
+                if (arg.startsWith(SYNTHETIC_PREFIX)) {
+                    datasets.add(syntheticDataset(arg));
+                } else {
+                    if (app == null) {
+                        engine = geocoder.get();
+                        app = new DeliveryRoutingApp(engine);
+                    }
+                    datasets.add(app.dataset(Path.of(arg)));
+                }
+            }
+        } finally {
+            close(engine, "geocoder");
+        }
+        List<ClustererEvaluation.Result> results = ClustererEvaluation.evaluate(datasets);
+        System.out.println();
+        ClustererEvaluation.printTable(results);
+        try {
+            ClustererEvaluation.writeCsv(results, out);
+            System.out.println("\nWrote " + out);
+        } catch (IOException e) {
+            System.err.println("Failed to write " + out + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Parse "synthetic:10000x100[:clustered-city]". */
+    private static ClustererEvaluation.Dataset syntheticDataset(String spec) {
+        String[] parts = spec.substring(SYNTHETIC_PREFIX.length()).split(":");
+        String[] sizes = parts[0].split("x");
+        try {
+            int deliveries = Integer.parseInt(sizes[0]);
+            int drivers = Integer.parseInt(sizes[1]);
+            SyntheticDeliveries.Distribution distribution = parts.length > 1
+                    ? SyntheticDeliveries.Distribution.valueOf(parts[1].toUpperCase().replace('-', '_'))
+                    : SyntheticDeliveries.Distribution.UNIFORM;
+            if (deliveries < 0 || drivers < 1 || sizes.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            SyntheticDeliveries day = new SyntheticDeliveries(SYNTHETIC_SEED, deliveries, drivers, distribution);
+            return new ClustererEvaluation.Dataset(spec.substring(SYNTHETIC_PREFIX.length()), day.deliveries(),
+                    day::drivers);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Expected synthetic:DELIVERIESxDRIVERS[:uniform|clustered-city|heavy-override]: "
+                    + spec);
+            System.exit(1);
+            throw new AssertionError("unreachable");
+        }
+    }
+
+    /** Remove "--name value" from the arguments and return the value, or null if the option is absent. */
+    private static String removeOption(List<String> argList, String name) {
+        int index = argList.indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        if (index + 1 >= argList.size()) {
+            System.err.println(name + " requires an argument");
+            System.exit(1);
+        }
+        String value = argList.remove(index + 1);
+        argList.remove(index);
+        return value;
+    }
+
+    private static void logProgress(AnytimeDeliveryClusterer.Progress progress) {
+        if (progress.improved()) {
+            System.out.printf("Clustering: objective %.1f after %d k-means starts (%d ms)%n",
+                    progress.objective(), progress.iterations(), progress.elapsed().toMillis());
+        }
+    }
+
+    private static int parsePositive(String option, String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 1) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        System.err.println(option + " requires a positive integer: " + value);
+        System.exit(1);
+        throw new AssertionError("unreachable");
+    }
+
+    /** Remember road-network costs across runs; without the store, every run queries the network afresh. */
+    private static DistanceStore openStore(RoadNetwork roads) {
+        try {
+            return DistanceStore.open(DISTANCE_STORE, DISTANCE_STORE_MAX_ENTRIES, roads.fingerprint());
+        } catch (IOException e) {
+            System.err.println("Distance store unavailable, continuing without it: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static RoadNetwork loadRoads(Path path) {
+        try {
+            RoadNetwork roads = RoadNetwork.load(path);
+            System.out.printf("Loaded %,d road nodes and %,d edges from %s; preprocessed in %d ms"
+                            + " (%,d shortcuts, ~%.1f MB)%n",
+                    roads.nodeCount(), roads.edgeCount(), path, roads.preprocessingMillis(),
+                    roads.shortcutCount(), roads.bytes() / (1024.0 * 1024.0));
+            return roads;
+        } catch (IOException e) {
+            System.err.println("Failed to read road network: " + e.getMessage());
+            System.exit(1);
+            throw new AssertionError("unreachable");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            throw new AssertionError("unreachable");
+        }
+    }
+
+    private static GazetteerGeocoder loadGazetteer(Path path) {
+        try {
+            long start = System.nanoTime();
+            GazetteerGeocoder gazetteer = GazetteerGeocoder.load(path);
+            System.out.printf("Loaded %,d gazetteer addresses from %s in %d ms (index ~%.1f MB)%n",
+                    gazetteer.size(), path, (System.nanoTime() - start) / 1_000_000,
+                    gazetteer.indexBytes() / (1024.0 * 1024.0));
+            return gazetteer;
+        } catch (IOException e) {
+            System.err.println("Failed to read gazetteer: " + e.getMessage());
+            System.exit(1);
+            throw new AssertionError("unreachable");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            throw new AssertionError("unreachable");
+        }
     }
 }
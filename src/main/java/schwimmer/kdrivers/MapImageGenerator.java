@@ -1,6 +1,10 @@
 package schwimmer.kdrivers;
 
 import okhttp3.Cache;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -9,14 +13,28 @@ import okhttp3.Response;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Generates a map image showing delivery locations using OpenStreetMap tiles.
- * Tiles are cached on disk via OkHttp.
+ * The {@link Viewport} is fixed before anything is drawn, and tiles are scaled straight into the output
+ * image, so a map needs one output-sized raster however many tiles it spans.
+ * A map's tiles are fetched concurrently, at most {@value #MAX_TILE_REQUESTS_PER_HOST} at a time from the
+ * tile server, and cached on disk via OkHttp. Decoded tiles are also kept in a {@link TileCache} shared by
+ * every map in the process, since neighbouring drivers' maps overlap.
  * See https://operations.osmfoundation.org/policies/tiles/
  */
 class MapImageGenerator {
@@ -25,8 +43,23 @@ class MapImageGenerator {
     private static final int TILE_SIZE = 256;
     private static final int MAP_WIDTH = 600;
     private static final int MAP_HEIGHT = 400;
+    /** Deepest zoom the tile server offers. */
+    private static final int MAX_ZOOM = 18;
+    /** Web Mercator's limit; tiles stop here. */
+    private static final double MAX_LATITUDE = 85.0511;
     private static final Path CACHE_DIR = Path.of(".map-tile-cache");
     private static final long CACHE_SIZE = 50L * 1024 * 1024; // 50 MB
+    private static final double PREFETCH_TILES_PER_SECOND = 2;
+    /** Tile downloads in flight at once, per host, as the tile usage policy asks. */
+    private static final int MAX_TILE_REQUESTS_PER_HOST = 2;
+    /** Time for all of one map's tiles; any still missing are left blank so the PDF is not held up. */
+    private static final Duration MAP_TILE_TIMEOUT = Duration.ofSeconds(15);
+    /** Decoded tiles kept in memory: 256 tiles' worth, about 64 MB as RGB rasters. */
+    private static final long TILE_CACHE_PIXELS = 256L * TILE_SIZE * TILE_SIZE;
+    private static final TileCache TILE_CACHE = new TileCache(TILE_CACHE_PIXELS);
+    /** OSM's land colour, for tiles that could not be fetched. */
+    private static final Color BLANK_TILE = new Color(242, 239, 233);
+    private static final CacheControl ONLY_IF_CACHED = new CacheControl.Builder().onlyIfCached().build();
 
     private static final Interceptor CACHE_CONTROL_INTERCEPTOR = chain -> {
         Response response = chain.proceed(chain.request());
@@ -44,70 +77,58 @@ class MapImageGenerator {
         return response;
     };
 
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .cache(new Cache(CACHE_DIR.toFile(), CACHE_SIZE))
-            .addInterceptor(CACHE_MISS_INTERCEPTOR)
-            .addInterceptor(chain -> chain.proceed(
-                    chain.request().newBuilder()
-                            .header("User-Agent", "kdrivers/1.0 (delivery routing app)")
-                            .build()))
-            .addNetworkInterceptor(CACHE_CONTROL_INTERCEPTOR)
-            .build();
+    private final String tileServer;
+    private final Duration tileTimeout;
+    private final TileCache tiles;
+    private final OkHttpClient httpClient;
 
-    byte[] generateMapImage(List<Delivery> deliveries, Driver driver) throws IOException {
-        if (deliveries.isEmpty() && (driver == null || !driver.hasCoordinates())) {
-            return createEmptyMapPlaceholder();
-        }
+    MapImageGenerator() {
+        this(TILE_URL, CACHE_DIR, MAP_TILE_TIMEOUT, TILE_CACHE);
+    }
 
-        double minLat = deliveries.stream().mapToDouble(Delivery::latitude).min().orElse(Double.MAX_VALUE);
-        double maxLat = deliveries.stream().mapToDouble(Delivery::latitude).max().orElse(Double.MIN_VALUE);
-        double minLon = deliveries.stream().mapToDouble(Delivery::longitude).min().orElse(Double.MAX_VALUE);
-        double maxLon = deliveries.stream().mapToDouble(Delivery::longitude).max().orElse(Double.MIN_VALUE);
+    /**
+     * @param tileServer  base URL of the tile server, without a trailing slash
+     * @param cacheDir    directory for the HTTP cache of tiles
+     * @param tileTimeout time for all of one map's tiles to arrive
+     * @param tiles       in-memory cache of decoded tiles
+     */
+    MapImageGenerator(String tileServer, Path cacheDir, Duration tileTimeout, TileCache tiles) {
+        this.tileServer = tileServer;
+        this.tileTimeout = tileTimeout;
+        this.tiles = tiles;
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(tileDispatcher())
+                .cache(new Cache(cacheDir.toFile(), CACHE_SIZE))
+                .addInterceptor(CACHE_MISS_INTERCEPTOR)
+                .addInterceptor(chain -> chain.proceed(
+                        chain.request().newBuilder()
+                                .header("User-Agent", "kdrivers/1.0 (delivery routing app)")
+                                .build()))
+                .addNetworkInterceptor(CACHE_CONTROL_INTERCEPTOR)
+                .build();
+    }
 
-        if (driver != null && driver.hasCoordinates()) {
-            minLat = Math.min(minLat, driver.getLatitude());
-            maxLat = Math.max(maxLat, driver.getLatitude());
-            minLon = Math.min(minLon, driver.getLongitude());
-            maxLon = Math.max(maxLon, driver.getLongitude());
+    byte[] generateMapImage(List<Delivery> deliveries, Driver driver) throws IOException {
+        Viewport viewport = viewport(deliveries, driver);
+        if (viewport == null) {
+            return createEmptyMapPlaceholder();
         }
 
-        // Minimal padding to zoom in as much as possible
-        double latSpan = Math.max((maxLat - minLat) * 0.05, 0.001);
-        double lonSpan = Math.max((maxLon - minLon) * 0.05, 0.001);
-        minLat -= latSpan;
-        maxLat += latSpan;
-        minLon -= lonSpan;
-        maxLon += lonSpan;
-
-        int zoom = calculateZoom(minLat, maxLat, minLon, maxLon);
-
-        int minTileX = lonToTileX(minLon, zoom);
-        int maxTileX = lonToTileX(maxLon, zoom);
-        int minTileY = latToTileY(maxLat, zoom);
-        int maxTileY = latToTileY(minLat, zoom);
-
-        int tilesWide = maxTileX - minTileX + 1;
-        int tilesHigh = maxTileY - minTileY + 1;
-
-        BufferedImage mapImage = new BufferedImage(tilesWide * TILE_SIZE, tilesHigh * TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        // The only raster a map needs: tiles and markers are drawn straight onto it at output resolution
+        BufferedImage mapImage = new BufferedImage(MAP_WIDTH, MAP_HEIGHT, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = mapImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        for (int ty = minTileY; ty <= maxTileY; ty++) {
-            for (int tx = minTileX; tx <= maxTileX; tx++) {
-                BufferedImage tile = fetchTile(tx, ty, zoom);
-                if (tile != null) {
-                    int x = (tx - minTileX) * TILE_SIZE;
-                    int y = (ty - minTileY) * TILE_SIZE;
-                    g.drawImage(tile, x, y, null);
-                }
-            }
-        }
+        g.setColor(BLANK_TILE);
+        g.fillRect(0, 0, MAP_WIDTH, MAP_HEIGHT);
+        drawTiles(g, viewport);
 
         // Draw driver's address (start) in green if present and not already in deliveries
         boolean driverInList = deliveries.stream().anyMatch(d -> d.id().endsWith("-home"));
         if (driver != null && driver.hasCoordinates() && !driverInList) {
-            int px = lonToPixel(driver.getLongitude(), zoom) - minTileX * TILE_SIZE;
-            int py = latToPixel(driver.getLatitude(), zoom) - minTileY * TILE_SIZE;
+            int px = (int) Math.round(viewport.x(driver.getLongitude()));
+            int py = (int) Math.round(viewport.y(driver.getLatitude()));
             g.setColor(new Color(34, 139, 34));
             g.fillOval(px - 12, py - 12, 24, 24);
             g.setColor(Color.WHITE);
@@ -118,8 +139,8 @@ class MapImageGenerator {
         g.setFont(new Font("SansSerif", Font.BOLD, 14));
         for (int i = 0; i < deliveries.size(); i++) {
             Delivery d = deliveries.get(i);
-            int px = lonToPixel(d.longitude(), zoom) - minTileX * TILE_SIZE;
-            int py = latToPixel(d.latitude(), zoom) - minTileY * TILE_SIZE;
+            int px = (int) Math.round(viewport.x(d.longitude()));
+            int py = (int) Math.round(viewport.y(d.latitude()));
 
             boolean isDriverAddress = d.id().endsWith("-home");
             g.setColor(isDriverAddress ? new Color(34, 139, 34) : new Color(220, 53, 69));
@@ -131,71 +152,249 @@ class MapImageGenerator {
 
         g.dispose();
 
-        // Scale to output size
-        BufferedImage scaled = new BufferedImage(MAP_WIDTH, MAP_HEIGHT, BufferedImage.TYPE_INT_RGB);
-        Graphics2D sg = scaled.createGraphics();
-        sg.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        sg.drawImage(mapImage, 0, 0, MAP_WIDTH, MAP_HEIGHT, null);
-        sg.dispose();
-
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(scaled, "PNG", baos);
+        ImageIO.write(mapImage, "PNG", baos);
         return baos.toByteArray();
     }
 
-    private int calculateZoom(double minLat, double maxLat, double minLon, double maxLon) {
-        double latSpan = maxLat - minLat;
-        double lonSpan = maxLon - minLon;
-        double maxSpan = Math.max(latSpan, lonSpan);
+    /**
+     * Compute the tiles a map of these deliveries (and the driver's home) covers.
+     *
+     * @return the tile range, or null if there is nothing to show
+     */
+    TileRange tileRange(List<Delivery> deliveries, Driver driver) {
+        Viewport viewport = viewport(deliveries, driver);
+        return viewport == null ? null : viewport.tiles();
+    }
+
+    /**
+     * Fit the deliveries (and the driver's home), with a little padding, into the output image: the deepest
+     * zoom at which the padded box fits, scaled up uniformly to fill the image and centred in it.
+     *
+     * @return the viewport, or null if there is nothing to show
+     */
+    static Viewport viewport(List<Delivery> deliveries, Driver driver) {
+        if (deliveries.isEmpty() && (driver == null || !driver.hasCoordinates())) {
+            return null;
+        }
+
+        double minLat = deliveries.stream().mapToDouble(Delivery::latitude).min().orElse(Double.MAX_VALUE);
+        double maxLat = deliveries.stream().mapToDouble(Delivery::latitude).max().orElse(-Double.MAX_VALUE);
+        double minLon = deliveries.stream().mapToDouble(Delivery::longitude).min().orElse(Double.MAX_VALUE);
+        double maxLon = deliveries.stream().mapToDouble(Delivery::longitude).max().orElse(-Double.MAX_VALUE);
+
+        if (driver != null && driver.hasCoordinates()) {
+            minLat = Math.min(minLat, driver.getLatitude());
+            maxLat = Math.max(maxLat, driver.getLatitude());
+            minLon = Math.min(minLon, driver.getLongitude());
+            maxLon = Math.max(maxLon, driver.getLongitude());
+        }
 
-        for (int z = 18; z >= 1; z--) {
-            double degPerTile = 360.0 / Math.pow(2, z);
-            if (maxSpan <= degPerTile * 1.2) {
-                return Math.min(z, 18);
+        // Minimal padding to zoom in as much as possible
+        double latSpan = Math.max((maxLat - minLat) * 0.05, 0.001);
+        double lonSpan = Math.max((maxLon - minLon) * 0.05, 0.001);
+        minLat = Math.max(minLat - latSpan, -MAX_LATITUDE);
+        maxLat = Math.min(maxLat + latSpan, MAX_LATITUDE);
+        minLon -= lonSpan;
+        maxLon += lonSpan;
+
+        // World pixels at zoom 0; each zoom level doubles them
+        double left = lonToWorld(minLon);
+        double right = lonToWorld(maxLon);
+        double top = latToWorld(maxLat);
+        double bottom = latToWorld(minLat);
+        int zoom = MAX_ZOOM;
+        while (zoom > 0 && ((right - left) * (1 << zoom) > MAP_WIDTH || (bottom - top) * (1 << zoom) > MAP_HEIGHT)) {
+            zoom--;
+        }
+
+        double width = (right - left) * (1 << zoom);
+        double height = (bottom - top) * (1 << zoom);
+        double scale = Math.min(MAP_WIDTH / width, MAP_HEIGHT / height);
+        double originX = (left + right) / 2 * (1 << zoom) - MAP_WIDTH / scale / 2;
+        double originY = (top + bottom) / 2 * (1 << zoom) - MAP_HEIGHT / scale / 2;
+        return new Viewport(zoom, originX, originY, scale);
+    }
+
+    /**
+     * Make sure the disk cache holds every tile the maps for these drivers will use, fetching missing
+     * tiles at a throttled rate. Safe to interrupt and rerun: tiles already cached are skipped.
+     */
+    void prefetchTiles(List<Driver> drivers) throws InterruptedException {
+        Set<String> urls = new LinkedHashSet<>();
+        for (Driver driver : drivers) {
+            TileRange range = tileRange(driver.getAssignedDeliveries(), driver);
+            if (range == null) {
+                continue;
+            }
+            for (int ty = range.minTileY(); ty <= range.maxTileY(); ty++) {
+                for (int tx = range.minTileX(); tx <= range.maxTileX(); tx++) {
+                    urls.add(tileUrl(tx, ty, range.zoom()));
+                }
+            }
+        }
+
+        TokenBucket limiter = new TokenBucket(PREFETCH_TILES_PER_SECOND, 1);
+        int cached = 0;
+        int fetched = 0;
+        int failed = 0;
+        for (String url : urls) {
+            if (isCached(url)) {
+                cached++;
+                continue;
+            }
+            TimeUnit.NANOSECONDS.sleep(limiter.reserve());
+            if (download(url)) {
+                fetched++;
+            } else {
+                failed++;
             }
         }
-        return 10;
+        System.out.println("Map tiles: " + urls.size() + " needed, " + cached + " already cached, "
+                + fetched + " fetched" + (failed > 0 ? ", " + failed + " failed" : ""));
     }
 
-    private int lonToTileX(double lon, int zoom) {
-        return (int) Math.floor((lon + 180) / 360 * Math.pow(2, zoom));
+    /** Web Mercator x of a longitude, in pixels at zoom 0. */
+    private static double lonToWorld(double lon) {
+        return (lon + 180) / 360 * TILE_SIZE;
     }
 
-    private int latToTileY(double lat, int zoom) {
+    /** Web Mercator y of a latitude, in pixels at zoom 0. */
+    private static double latToWorld(double lat) {
         double latRad = Math.toRadians(lat);
-        return (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * Math.pow(2, zoom));
+        return (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * TILE_SIZE;
     }
 
-    private int lonToPixel(double lon, int zoom) {
-        return (int) ((lon + 180) / 360 * Math.pow(2, zoom) * TILE_SIZE);
+    private String tileUrl(int x, int y, int zoom) {
+        return String.format("%s/%d/%d/%d.png", tileServer, zoom, x, y);
     }
 
-    private int latToPixel(double lat, int zoom) {
-        double latRad = Math.toRadians(lat);
-        double y = (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * Math.pow(2, zoom);
-        return (int) (y * TILE_SIZE);
+    private boolean isCached(String url) {
+        Request request = new Request.Builder()
+                .url(url)
+                .cacheControl(ONLY_IF_CACHED)
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            return response.isSuccessful();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Fetch a tile and read its body fully so OkHttp stores it in the cache. */
+    private boolean download(String url) {
+        Request request = new Request.Builder()
+                .url(url)
+                .get()
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                return false;
+            }
+            response.body().bytes();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** The process-wide cache of decoded tiles, e.g. for its hit and miss counts. */
+    static TileCache tileCache() {
+        return TILE_CACHE;
     }
 
-    private BufferedImage fetchTile(int x, int y, int zoom) {
+    /**
+     * Draw the viewport's tiles held in memory, then fetch the rest concurrently and draw each one as it
+     * arrives. Tiles that fail, or are still missing after the tile timeout, stay blank.
+     */
+    private void drawTiles(Graphics2D g, Viewport viewport) {
+        TileRange range = viewport.tiles();
+        BlockingQueue<Tile> arrived = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>();
+        for (int ty = range.minTileY(); ty <= range.maxTileY(); ty++) {
+            for (int tx = range.minTileX(); tx <= range.maxTileX(); tx++) {
+                int column = tx;
+                int row = ty;
+                TileCache.Key key = new TileCache.Key(range.zoom(), tx, ty);
+                BufferedImage cached = tiles.get(key);
+                if (cached != null) {
+                    drawTile(g, viewport, tx, ty, cached);
+                    continue;
+                }
+                Request request = new Request.Builder()
+                        .url(tileUrl(tx, ty, range.zoom()))
+                        .get()
+                        .build();
+                Call call = httpClient.newCall(request);
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        arrived.add(new Tile(column, row, null));
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        BufferedImage image = null;
+                        try (response) {
+                            if (response.isSuccessful() && response.body() != null) {
+                                image = ImageIO.read(new ByteArrayInputStream(response.body().bytes()));
+                            }
+                        } catch (Exception e) {
+                            // unreadable tile: leave it blank
+                        }
+                        if (image != null) {
+                            tiles.put(key, image);
+                        }
+                        arrived.add(new Tile(column, row, image));
+                    }
+                });
+                calls.add(call);
+            }
+        }
+
+        // Graphics2D is not thread-safe, so tiles are drawn here rather than in the callbacks
+        long deadline = System.nanoTime() + tileTimeout.toNanos();
         try {
-            String url = String.format("%s/%d/%d/%d.png", TILE_URL, zoom, x, y);
-            Request request = new Request.Builder()
-                    .url(url)
-                    .get()
-                    .build();
-
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful() || response.body() == null) {
-                    return null;
+            for (int pending = calls.size(); pending > 0; pending--) {
+                Tile tile = arrived.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (tile == null) {
+                    System.err.println("Map tiles timed out; " + pending + " of " + calls.size() + " left blank");
+                    break;
+                }
+                if (tile.image() != null) {
+                    drawTile(g, viewport, tile.column(), tile.row(), tile.image());
                 }
-                byte[] body = response.body().bytes();
-                return ImageIO.read(new java.io.ByteArrayInputStream(body));
             }
-        } catch (Exception e) {
-            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            calls.forEach(Call::cancel);
         }
     }
 
+    /**
+     * Draw tile ({@code tx}, {@code ty}) scaled into its place in the output. Edges are rounded the same way
+     * for neighbouring tiles so no seams show, and the graphics clip to the image, so only the visible part
+     * of a tile on the map's edge is sampled.
+     */
+    private static void drawTile(Graphics2D g, Viewport viewport, int tx, int ty, BufferedImage image) {
+        g.drawImage(image, viewport.tileEdgeX(tx), viewport.tileEdgeY(ty),
+                viewport.tileEdgeX(tx + 1), viewport.tileEdgeY(ty + 1),
+                0, 0, image.getWidth(), image.getHeight(), null);
+    }
+
+    /** Daemon threads so pending tile calls never keep the JVM alive. */
+    private static Dispatcher tileDispatcher() {
+        AtomicInteger count = new AtomicInteger();
+        Dispatcher dispatcher = new Dispatcher(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "map-tiles-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+        dispatcher.setMaxRequestsPerHost(MAX_TILE_REQUESTS_PER_HOST);
+        return dispatcher;
+    }
+
     private byte[] createEmptyMapPlaceholder() throws IOException {
         BufferedImage img = new BufferedImage(MAP_WIDTH, MAP_HEIGHT, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = img.createGraphics();
@@ -210,4 +409,49 @@ class MapImageGenerator {
         ImageIO.write(img, "PNG", baos);
         return baos.toByteArray();
     }
+
+    /** Tiles spanning a map at one zoom level (inclusive bounds). */
+    record TileRange(int zoom, int minTileX, int maxTileX, int minTileY, int maxTileY) {}
+
+    /**
+     * Where the output image lies on the map at one zoom: output pixel (0, 0) is world pixel
+     * ({@code originX}, {@code originY}), and one world pixel covers {@code scale} output pixels.
+     */
+    record Viewport(int zoom, double originX, double originY, double scale) {
+
+        /** Output x of a longitude. */
+        double x(double lon) {
+            return (lonToWorld(lon) * (1 << zoom) - originX) * scale;
+        }
+
+        /** Output y of a latitude. */
+        double y(double lat) {
+            return (latToWorld(lat) * (1 << zoom) - originY) * scale;
+        }
+
+        /** Output x of the left edge of tile column {@code tx}. */
+        int tileEdgeX(int tx) {
+            return (int) Math.round(((double) tx * TILE_SIZE - originX) * scale);
+        }
+
+        /** Output y of the top edge of tile row {@code ty}. */
+        int tileEdgeY(int ty) {
+            return (int) Math.round(((double) ty * TILE_SIZE - originY) * scale);
+        }
+
+        /** The tiles that show in the output, clamped to those that exist at this zoom. */
+        TileRange tiles() {
+            int last = (1 << zoom) - 1;
+            return new TileRange(zoom,
+                    tile(originX, last), tile(originX + MAP_WIDTH / scale - 1e-9, last),
+                    tile(originY, last), tile(originY + MAP_HEIGHT / scale - 1e-9, last));
+        }
+
+        private static int tile(double world, int last) {
+            return Math.max(0, Math.min(last, (int) Math.floor(world / TILE_SIZE)));
+        }
+    }
+
+    /** A fetched tile and its column and row; the image is null if it could not be fetched. */
+    private record Tile(int column, int row, BufferedImage image) {}
 }
@@ -0,0 +1,33 @@
+package schwimmer.kdrivers;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process memo of definitive results for the lifetime of the JVM, keyed like the persistent store.
+ */
+class MemoGeocodeProvider implements GeocodeProvider {
+
+    private final Map<String, Geocoder.GeocodeResult> results = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "memo";
+    }
+
+    @Override
+    public CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address) {
+        return CompletableFuture.completedFuture(
+                Optional.ofNullable(results.get(GeocodeStore.normalizeKey(address))));
+    }
+
+    @Override
+    public void remember(String address, Geocoder.GeocodeResult result) {
+        if (!result.failed()) {
+            results.put(GeocodeStore.normalizeKey(address),
+                    new Geocoder.GeocodeResult(result.coordinates(), true));
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package schwimmer.kdrivers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns deliveries to drivers by solving the capacitated assignment exactly as a min-cost flow: every
+ * delivery has supply 1, every driver capacity {@code maxDeliveriesPerCluster}, and each delivery-to-driver
+ * arc costs their distance, so the total distance over all deliveries is minimal. Deliveries with an
+ * {@code assign_to} override are fixed to that driver and use up its capacity.
+ * <p>
+ * Solved by successive shortest paths. Each delivery in turn is routed to a driver with spare capacity
+ * along a shortest path in the residual graph (possibly moving already-assigned deliveries to other
+ * drivers), found by Dijkstra over reduced costs that stops as soon as such a driver is reached. To keep
+ * the graph small each delivery starts with arcs to only its nearest few drivers; once every delivery is
+ * routed, the node potentials price all missing arcs, and any that would lower the total are added and the
+ * problem is solved again. The result is therefore optimal over the complete bipartite graph.
+ */
+public class MinCostFlowDeliveryClusterer implements DeliveryClusterer {
+
+    private static final int DEFAULT_MAX_DELIVERIES = 15;
+    private static final int DEFAULT_CANDIDATE_DRIVERS = 8;
+
+    private final int maxDeliveriesPerCluster;
+    private final int candidateDrivers;
+
+    public MinCostFlowDeliveryClusterer() {
+        this(DEFAULT_MAX_DELIVERIES);
+    }
+
+    public MinCostFlowDeliveryClusterer(int maxDeliveriesPerCluster) {
+        this(maxDeliveriesPerCluster, DEFAULT_CANDIDATE_DRIVERS);
+    }
+
+    /**
+     * @param candidateDrivers number of nearest drivers each delivery initially gets arcs to
+     */
+    MinCostFlowDeliveryClusterer(int maxDeliveriesPerCluster, int candidateDrivers) {
+        if (candidateDrivers < 1) {
+            throw new IllegalArgumentException("candidateDrivers must be at least 1: " + candidateDrivers);
+        }
+        this.maxDeliveriesPerCluster = maxDeliveriesPerCluster;
+        this.candidateDrivers = candidateDrivers;
+    }
+
+    @Override
+    public List<Driver> clusterAndAssign(List<Delivery> deliveries, List<Driver> drivers) {
+        if (drivers.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int[] capacity = new int[drivers.size()];
+        Arrays.fill(capacity, maxDeliveriesPerCluster);
+        int[] driverOf = new int[deliveries.size()];
+        int[] free = new int[deliveries.size()];
+        int freeCount = 0;
+        for (int i = 0; i < deliveries.size(); i++) {
+            Delivery d = deliveries.get(i);
+            int pinned = -1;
+            if (d.assignToDriverName() != null && !d.assignToDriverName().isBlank()) {
+                pinned = findDriverByName(drivers, d.assignToDriverName());
+            }
+            if (pinned >= 0) {
+                driverOf[i] = pinned;
+                capacity[pinned]--;
+            } else {
+                free[freeCount++] = i;
+            }
+        }
+
+        int spare = 0;
+        for (int i = 0; i < drivers.size(); i++) {
+            if (drivers.get(i).hasCoordinates()) {
+                spare += Math.max(0, capacity[i]);
+            }
+        }
+        if (freeCount > spare) {
+            throw new IllegalArgumentException(
+                    "Deliveries (" + freeCount + ") exceed capacity: " + drivers.size() + " drivers * "
+                            + maxDeliveriesPerCluster + " max leaves room for " + spare);
+        }
+
+        if (freeCount > 0) {
+            CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+            int[] assigned = new Solver(kernel, free, freeCount, capacity, candidateDrivers).solve();
+            for (int v = 0; v < freeCount; v++) {
+                driverOf[free[v]] = assigned[v];
+            }
+        }
+
+        for (int i = 0; i < deliveries.size(); i++) {
+            drivers.get(driverOf[i]).addDelivery(deliveries.get(i));
+        }
+        return drivers;
+    }
+
+    private static int findDriverByName(List<Driver> drivers, String name) {
+        String normalized = name.trim().toLowerCase();
+        for (int i = 0; i < drivers.size(); i++) {
+            if (drivers.get(i).getName().trim().toLowerCase().equals(normalized)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Flow network over primitive arrays. Nodes are the free deliveries {@code 0..n-1}, drivers
+     * {@code n..n+m-1} (by their index in the driver list) and a sink {@code n+m}. A delivery's flow is
+     * the driver it is assigned to; the residual graph has arcs delivery -> candidate driver (unless
+     * assigned there), driver -> each delivery assigned to it (negated cost) and driver -> sink while
+     * the driver has room.
+     */
+    private static final class Solver {
+        private static final double EPSILON = 1e-12;
+
+        private final int n;
+        private final int m;
+        private final int sink;
+        private final CoordinateKernel kernel;
+        private final int[] free;
+        private final int[] capacity;
+        private final DriverIndex driverIndex;
+
+        /** Candidate drivers per delivery, and a distance below which every driver is a candidate. */
+        private final int[][] arcs;
+        private final double[] coveredRadius;
+
+        private final int[] assigned;
+        private final double[] assignedCost;
+        private final int[] load;
+        private final int[][] members;
+        private final int[] memberPosition;
+        private final double[] potential;
+
+        private final double[] dist;
+        private final int[] prev;
+        private final int[] reachedEpoch;
+        private final int[] settledEpoch;
+        private final int[] settled;
+        private int epoch;
+        private double[] heapKeys = new double[64];
+        private int[] heapNodes = new int[64];
+        private int heapSize;
+
+        /**
+         * @param free kernel indices of the deliveries to assign; solver node v is delivery {@code free[v]}
+         */
+        Solver(CoordinateKernel kernel, int[] free, int n, int[] capacity, int candidateDrivers) {
+            this.n = n;
+            this.m = kernel.driverCount();
+            this.sink = n + m;
+            this.kernel = kernel;
+            this.free = free;
+            this.capacity = capacity;
+            driverIndex = new DriverIndex(kernel);
+
+            arcs = new int[n][];
+            coveredRadius = new double[n];
+            int k = Math.min(candidateDrivers, driverIndex.size());
+            for (int v = 0; v < n; v++) {
+                setNearestArcs(v, k);
+            }
+
+            assigned = new int[n];
+            assignedCost = new double[n];
+            load = new int[m];
+            members = new int[m][];
+            for (int i = 0; i < m; i++) {
+                members[i] = new int[Math.max(0, capacity[i])];
+            }
+            memberPosition = new int[n];
+            potential = new double[n + m + 1];
+
+            dist = new double[n + m + 1];
+            prev = new int[n + m + 1];
+            reachedEpoch = new int[n + m + 1];
+            settledEpoch = new int[n + m + 1];
+            settled = new int[n + m + 1];
+        }
+
+        /** @return the driver index for each free delivery */
+        int[] solve() {
+            do {
+                Arrays.fill(assigned, -1);
+                Arrays.fill(load, 0);
+                Arrays.fill(potential, 0);
+                for (int v = 0; v < n; v++) {
+                    while (!route(v)) {
+                        // Every driver reachable from v is full; give v more arcs (it has not been
+                        // reached yet, so its potential is still 0 and new arcs have non-negative reduced cost)
+                        setNearestArcs(v, Math.min(driverIndex.size(), arcs[v].length * 2));
+                    }
+                }
+            } while (addImprovingArcs());
+            return assigned;
+        }
+
+        /** Make v's arcs its k nearest drivers, keeping any other arcs it already has. */
+        private void setNearestArcs(int v, int k) {
+            int[] nearest = driverIndex.kNearest(kernel.deliveryX(free[v]), kernel.deliveryY(free[v]), k);
+            int[] merged = Arrays.copyOf(nearest, nearest.length + (arcs[v] == null ? 0 : arcs[v].length));
+            int count = nearest.length;
+            if (arcs[v] != null) {
+                for (int d : arcs[v]) {
+                    if (!contains(nearest, nearest.length, d)) {
+                        merged[count++] = d;
+                    }
+                }
+            }
+            arcs[v] = Arrays.copyOf(merged, count);
+            coveredRadius[v] = k >= driverIndex.size()
+                    ? Double.POSITIVE_INFINITY : cost(v, nearest[k - 1]);
+        }
+
+        /**
+         * Dijkstra over reduced costs from delivery v to the sink, then update potentials and shift
+         * deliveries along the path.
+         *
+         * @return false if no driver with room is reachable
+         */
+        private boolean route(int v) {
+            epoch++;
+            heapSize = 0;
+            int settledCount = 0;
+            reach(v, 0, -1);
+            double total = -1;
+            while (heapSize > 0) {
+                double key = heapKeys[0];
+                int x = pop();
+                if (settledEpoch[x] == epoch || key > dist[x]) {
+                    continue;
+                }
+                settledEpoch[x] = epoch;
+                settled[settledCount++] = x;
+                if (x == sink) {
+                    total = key;
+                    break;
+                }
+                if (x < n) {
+                    for (int d : arcs[x]) {
+                        if (d != assigned[x] && capacity[d] > 0) {
+                            reach(n + d, key + reduced(cost(x, d), x, n + d), x);
+                        }
+                    }
+                } else {
+                    int d = x - n;
+                    for (int j = 0; j < load[d]; j++) {
+                        int u = members[d][j];
+                        reach(u, key + reduced(-assignedCost[u], x, u), x);
+                    }
+                    if (load[d] < capacity[d]) {
+                        reach(sink, key + reduced(0, x, sink), x);
+                    }
+                }
+            }
+            if (total < 0) {
+                return false;
+            }
+
+            for (int i = 0; i < settledCount; i++) {
+                int x = settled[i];
+                potential[x] += dist[x] - total;
+            }
+
+            int d = prev[sink] - n;
+            while (true) {
+                int x = prev[n + d];
+                int from = assigned[x];
+                if (from >= 0) {
+                    removeMember(from, x);
+                }
+                addMember(d, x);
+                if (x == v) {
+                    return true;
+                }
+                d = from;
+            }
+        }
+
+        /**
+         * Price every arc not in the graph against the current potentials and add those with negative
+         * reduced cost. Arcs shorter than a delivery's covered radius are already present, so only
+         * deliveries whose radius is below the largest possible gain need a full scan.
+         *
+         * @return whether any arc was added
+         */
+        private boolean addImprovingArcs() {
+            double maxDriverPotential = Double.NEGATIVE_INFINITY;
+            for (int d = 0; d < m; d++) {
+                if (usable(d)) {
+                    maxDriverPotential = Math.max(maxDriverPotential, potential[n + d]);
+                }
+            }
+            boolean added = false;
+            for (int v = 0; v < n; v++) {
+                if (coveredRadius[v] >= maxDriverPotential - potential[v]) {
+                    continue;
+                }
+                for (int d = 0; d < m; d++) {
+                    if (!usable(d)) {
+                        continue;
+                    }
+                    double reducedCost = cost(v, d) + potential[v] - potential[n + d];
+                    if (reducedCost < -EPSILON && !contains(arcs[v], arcs[v].length, d)) {
+                        arcs[v] = Arrays.copyOf(arcs[v], arcs[v].length + 1);
+                        arcs[v][arcs[v].length - 1] = d;
+                        added = true;
+                    }
+                }
+            }
+            return added;
+        }
+
+        /** Whether driver d can take free deliveries. */
+        private boolean usable(int d) {
+            return capacity[d] > 0 && kernel.hasDriver(d);
+        }
+
+        private double reduced(double cost, int from, int to) {
+            // Clamp rounding noise; true reduced costs are never negative
+            return Math.max(0, cost + potential[from] - potential[to]);
+        }
+
+        private double cost(int v, int d) {
+            return kernel.deliveryToDriver(free[v], d);
+        }
+
+        private void addMember(int d, int v) {
+            assigned[v] = d;
+            assignedCost[v] = cost(v, d);
+            memberPosition[v] = load[d];
+            members[d][load[d]++] = v;
+        }
+
+        private void removeMember(int d, int v) {
+            int last = members[d][--load[d]];
+            members[d][memberPosition[v]] = last;
+            memberPosition[last] = memberPosition[v];
+        }
+
+        private void reach(int node, double distance, int from) {
+            if (settledEpoch[node] == epoch || (reachedEpoch[node] == epoch && distance >= dist[node])) {
+                return;
+            }
+            reachedEpoch[node] = epoch;
+            dist[node] = distance;
+            prev[node] = from;
+            push(distance, node);
+        }
+
+        private void push(double key, int node) {
+            if (heapSize == heapKeys.length) {
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+                heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heapKeys[parent] <= key) {
+                    break;
+                }
+                heapKeys[i] = heapKeys[parent];
+                heapNodes[i] = heapNodes[parent];
+                i = parent;
+            }
+            heapKeys[i] = key;
+            heapNodes[i] = node;
+        }
+
+        private int pop() {
+            int top = heapNodes[0];
+            double key = heapKeys[--heapSize];
+            int node = heapNodes[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                    child++;
+                }
+                if (heapKeys[child] >= key) {
+                    break;
+                }
+                heapKeys[i] = heapKeys[child];
+                heapNodes[i] = heapNodes[child];
+                i = child;
+            }
+            heapKeys[i] = key;
+            heapNodes[i] = node;
+            return top;
+        }
+
+        private static boolean contains(int[] values, int length, int value) {
+            for (int i = 0; i < length; i++) {
+                if (values[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
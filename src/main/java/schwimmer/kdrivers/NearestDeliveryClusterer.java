@@ -4,21 +4,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Assigns deliveries to drivers by nearest-driver distance. Each cluster has exactly one driver.
+ * Assigns deliveries to drivers by nearest-driver distance (in a {@link CoordinateKernel} projection).
+ * Each cluster has exactly one driver.
  * Max 15 deliveries per cluster (enforced via redistribution).
+ * Nearest-driver and recipient searches go through a {@link DriverIndex} over driver homes, or compare
+ * travel costs from a {@link DistanceModel} among the straight-line nearest drivers when one is given.
  */
 public class NearestDeliveryClusterer implements DeliveryClusterer {
 
     private static final int DEFAULT_MAX_DELIVERIES = 15;
 
     private final int maxDeliveriesPerCluster;
+    private final DistanceModel distanceModel;
 
     public NearestDeliveryClusterer() {
         this(DEFAULT_MAX_DELIVERIES);
     }
 
     public NearestDeliveryClusterer(int maxDeliveriesPerCluster) {
+        this(maxDeliveriesPerCluster, null);
+    }
+
+    /** @param distanceModel travel costs to judge nearness by, or null for straight-line distance */
+    public NearestDeliveryClusterer(int maxDeliveriesPerCluster, DistanceModel distanceModel) {
         this.maxDeliveriesPerCluster = maxDeliveriesPerCluster;
+        this.distanceModel = distanceModel;
     }
 
     @Override
@@ -34,113 +44,31 @@ public class NearestDeliveryClusterer implements DeliveryClusterer {
                             + " drivers * " + maxDeliveriesPerCluster + " max = " + (drivers.size() * maxDeliveriesPerCluster));
         }
 
-        // Build clusters: Map<Driver, List<Delivery>>
-        List<List<Delivery>> clusters = new ArrayList<>();
-        for (int i = 0; i < drivers.size(); i++) {
-            clusters.add(new ArrayList<>());
-        }
-
-        for (Delivery delivery : deliveries) {
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+        DriverDistances distances = new DriverDistances(kernel, new DriverIndex(kernel), distanceModel);
+        Clusters clusters = new Clusters(drivers.size());
+        for (int d = 0; d < deliveries.size(); d++) {
+            Delivery delivery = deliveries.get(d);
             int assignIdx = -1;
             if (delivery.assignToDriverName() != null && !delivery.assignToDriverName().isBlank()) {
                 assignIdx = findDriverByName(drivers, delivery.assignToDriverName());
             }
             if (assignIdx < 0) {
-                double nearestDist = Double.MAX_VALUE;
-                for (int i = 0; i < drivers.size(); i++) {
-                    Driver driver = drivers.get(i);
-                    if (!driver.hasCoordinates()) continue;
-                    double dist = distance(delivery.latitude(), delivery.longitude(),
-                            driver.getLatitude(), driver.getLongitude());
-                    if (dist < nearestDist) {
-                        nearestDist = dist;
-                        assignIdx = i;
-                    }
-                }
+                assignIdx = distances.best(d, i -> 1);
             }
             if (assignIdx >= 0) {
-                clusters.get(assignIdx).add(delivery);
+                clusters.add(assignIdx, d);
             }
         }
 
-        // Redistribute: move deliveries from oversized clusters to underfull ones
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (int donorIdx = 0; donorIdx < clusters.size(); donorIdx++) {
-                List<Delivery> donorCluster = clusters.get(donorIdx);
-                Driver donorDriver = drivers.get(donorIdx);
-                if (!donorDriver.hasCoordinates() || donorCluster.size() <= maxDeliveriesPerCluster) {
-                    continue;
-                }
-
-                // Find best delivery to move: skip driver's home (first one), pick farthest from donor
-                Delivery bestToMove = null;
-                double bestScore = -1;
-                int bestToMoveIdx = -1;
-
-                for (int j = 0; j < donorCluster.size(); j++) {
-                    Delivery d = donorCluster.get(j);
-                    if (d.id().endsWith("-home")) {
-                        continue;
-                    }
-                    if (d.assignToDriverName() != null && !d.assignToDriverName().isBlank()) {
-                        continue;
-                    }
-                    double distFromDonor = distance(d.latitude(), d.longitude(),
-                            donorDriver.getLatitude(), donorDriver.getLongitude());
-                    if (distFromDonor > bestScore) {
-                        bestScore = distFromDonor;
-                        bestToMove = d;
-                        bestToMoveIdx = j;
-                    }
-                }
-
-                if (bestToMove == null) {
-                    continue;
-                }
-
-                // Find recipient: nearest driver with room (excluding donor)
-                int recipientIdx = -1;
-                double nearestRecipientDist = Double.MAX_VALUE;
-
-                for (int i = 0; i < drivers.size(); i++) {
-                    if (i == donorIdx) {
-                        continue;
-                    }
-                    List<Delivery> recipientCluster = clusters.get(i);
-                    if (recipientCluster.size() >= maxDeliveriesPerCluster) {
-                        continue;
-                    }
-                    Driver recipientDriver = drivers.get(i);
-                    if (!recipientDriver.hasCoordinates()) {
-                        continue;
-                    }
-                    double dist = distance(bestToMove.latitude(), bestToMove.longitude(),
-                            recipientDriver.getLatitude(), recipientDriver.getLongitude());
-                    if (dist < nearestRecipientDist) {
-                        nearestRecipientDist = dist;
-                        recipientIdx = i;
-                    }
-                }
+        // Redistribute: move deliveries from oversized clusters to underfull ones, never a driver's home
+        new ClusterRebalancer(maxDeliveriesPerCluster, 0, d -> {
+            Delivery delivery = deliveries.get(d);
+            return !delivery.id().endsWith("-home")
+                    && (delivery.assignToDriverName() == null || delivery.assignToDriverName().isBlank());
+        }).rebalance(clusters, distances);
 
-                if (recipientIdx >= 0) {
-                    donorCluster.remove(bestToMoveIdx);
-                    clusters.get(recipientIdx).add(bestToMove);
-                    changed = true;
-                    break; // Restart loop after modification
-                }
-            }
-        }
-
-        // Assign clusters to drivers
-        for (int i = 0; i < drivers.size(); i++) {
-            for (Delivery d : clusters.get(i)) {
-                drivers.get(i).addDelivery(d);
-            }
-        }
-
-        return drivers;
+        return clusters.assignTo(deliveries, drivers);
     }
 
     private static int findDriverByName(List<Driver> drivers, String name) {
@@ -152,10 +80,4 @@ public class NearestDeliveryClusterer implements DeliveryClusterer {
         }
         return -1;
     }
-
-    private static double distance(double lat1, double lon1, double lat2, double lon2) {
-        double dLat = lat2 - lat1;
-        double dLon = lon2 - lon1;
-        return Math.sqrt(dLat * dLat + dLon * dLon);
-    }
 }
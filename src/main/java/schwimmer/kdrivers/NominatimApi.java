@@ -2,6 +2,7 @@ package schwimmer.kdrivers;
 
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.Query;
 
 import java.util.List;
@@ -18,4 +19,13 @@ interface NominatimApi {
             @Query("format") String format,
             @Query("limit") int limit
     );
+
+    /** Same as {@link #search} but answered only from the HTTP cache (504 when not cached). */
+    @GET("search")
+    @Headers("Cache-Control: only-if-cached")
+    Call<List<NominatimResult>> searchCached(
+            @Query("q") String query,
+            @Query("format") String format,
+            @Query("limit") int limit
+    );
 }
@@ -0,0 +1,229 @@
+package schwimmer.kdrivers;
+
+import okhttp3.Cache;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Looks addresses up in a Nominatim instance via Retrofit, optionally behind an OkHttp disk cache and a
+ * {@link TokenBucket} rate limiter. {@link #httpCache} answers from the response cache alone, so a tier in
+ * front of this one can serve cached responses without waiting for the limiter or this tier's concurrency
+ * limit. Network errors, 429 and 5xx responses are retried with exponential backoff; a lookup that still fails
+ * has no answer, so the chain can fall through to the next tier.
+ * See https://nominatim.org/release-docs/develop/api/Search/
+ */
+class NominatimGeocodeProvider implements GeocodeProvider {
+
+    private static final String USER_AGENT = "kdrivers/1.0 (delivery clustering app)";
+    private static final long CACHE_SIZE = 10L * 1024 * 1024; // 10 MB
+    private static final int MAX_RETRIES = 4;
+    private static final long BASE_BACKOFF_MILLIS = 2_000;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private static final Interceptor CACHE_CONTROL_INTERCEPTOR = chain -> {
+        var response = chain.proceed(chain.request());
+        return response.newBuilder()
+                .header("Cache-Control", "max-age=86400")
+                .build();
+    };
+
+    private static final Interceptor CACHE_MISS_INTERCEPTOR = chain -> {
+        var request = chain.request();
+        var response = chain.proceed(request);
+        if (response.cacheResponse() == null && response.networkResponse() != null) {
+            System.err.println("Geocoder cache miss: " + request.url());
+        }
+        return response;
+    };
+
+    private static final ScheduledExecutorService SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(daemonThreads("geocoder-limiter"));
+
+    private final String name;
+    private final NominatimApi api;
+    private final TokenBucket limiter;
+    private final long baseBackoffMillis;
+
+    /**
+     * @param limiter throttle for network requests, or null for none
+     */
+    NominatimGeocodeProvider(String name, NominatimApi api, TokenBucket limiter) {
+        this(name, api, limiter, BASE_BACKOFF_MILLIS);
+    }
+
+    NominatimGeocodeProvider(String name, NominatimApi api, TokenBucket limiter, long baseBackoffMillis) {
+        this.name = name;
+        this.api = api;
+        this.limiter = limiter;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    /**
+     * @param cacheDir directory for the OkHttp response cache, or null for no cache
+     * @param limiter  throttle for network requests, or null for none
+     */
+    static NominatimGeocodeProvider create(String name, String baseUrl, Path cacheDir, TokenBucket limiter) {
+        return new NominatimGeocodeProvider(name, createApi(baseUrl, cacheDir), limiter);
+    }
+
+    static NominatimApi createApi(String baseUrl, Path cacheDir) {
+        var builder = new OkHttpClient.Builder()
+                // Daemon threads so pending async calls never keep the JVM alive
+                .dispatcher(new Dispatcher(Executors.newCachedThreadPool(daemonThreads("geocoder-http"))))
+                .addInterceptor(CACHE_MISS_INTERCEPTOR)
+                .addInterceptor(chain -> chain.proceed(
+                        chain.request().newBuilder()
+                                .header("User-Agent", USER_AGENT)
+                                .build()))
+                .addNetworkInterceptor(CACHE_CONTROL_INTERCEPTOR);
+        if (cacheDir != null) {
+            builder.cache(new Cache(cacheDir.toFile(), CACHE_SIZE));
+        }
+
+        OkHttpClient client = builder.build();
+
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(JacksonConverterFactory.create())
+                .build();
+
+        return retrofit.create(NominatimApi.class);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address) {
+        return fetchFromNetwork(address, 0).thenApply(NominatimGeocodeProvider::answer);
+    }
+
+    /**
+     * A provider that answers from this provider's HTTP response cache only (an only-if-cached request),
+     * with no limiter and no network traffic. A cache miss has no answer.
+     */
+    GeocodeProvider httpCache() {
+        return new GeocodeProvider() {
+            @Override
+            public String name() {
+                return name + " cache";
+            }
+
+            @Override
+            public CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address) {
+                return enqueue(api.searchCached(address, "json", 1))
+                        .thenApply(attempt -> answer(attempt.result()));
+            }
+        };
+    }
+
+    private static Optional<Geocoder.GeocodeResult> answer(Geocoder.GeocodeResult result) {
+        return result.failed() ? Optional.empty() : Optional.of(result);
+    }
+
+    private CompletableFuture<Geocoder.GeocodeResult> fetchFromNetwork(String address, int retry) {
+        CompletableFuture<Attempt> fetched = new CompletableFuture<>();
+        Runnable send = () -> enqueue(api.search(address, "json", 1)).thenAccept(fetched::complete);
+        if (limiter == null) {
+            send.run();
+        } else {
+            SCHEDULER.schedule(send, limiter.reserve(), TimeUnit.NANOSECONDS);
+        }
+
+        return fetched.thenCompose(attempt -> {
+            if (!attempt.retryable()) {
+                return CompletableFuture.completedFuture(attempt.result());
+            }
+            if (retry >= MAX_RETRIES) {
+                System.err.println("Geocoding via " + name + " failed after " + (retry + 1) + " attempts: "
+                        + address);
+                return CompletableFuture.completedFuture(attempt.result());
+            }
+            CompletableFuture<Geocoder.GeocodeResult> retried = new CompletableFuture<>();
+            SCHEDULER.schedule(() -> {
+                fetchFromNetwork(address, retry + 1).thenAccept(retried::complete);
+            }, backoffMillis(retry), TimeUnit.MILLISECONDS);
+            return retried;
+        });
+    }
+
+    /** Exponential backoff with jitter: a random delay between half and all of base * 2^retry, capped. */
+    private long backoffMillis(int retry) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, baseBackoffMillis << retry);
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * Run a call asynchronously. Never completes exceptionally: failures become a failed result,
+     * marked retryable for network errors, 429 and 5xx responses.
+     */
+    private static CompletableFuture<Attempt> enqueue(Call<List<NominatimResult>> call) {
+        CompletableFuture<Attempt> future = new CompletableFuture<>();
+        call.enqueue(new Callback<>() {
+            @Override
+            public void onResponse(Call<List<NominatimResult>> call, Response<List<NominatimResult>> response) {
+                future.complete(toAttempt(response));
+            }
+
+            @Override
+            public void onFailure(Call<List<NominatimResult>> call, Throwable t) {
+                future.complete(new Attempt(Geocoder.GeocodeResult.failure(), true));
+            }
+        });
+        return future;
+    }
+
+    private static Attempt toAttempt(Response<List<NominatimResult>> response) {
+        if (!response.isSuccessful()) {
+            int code = response.code();
+            // 504 is also what an only-if-cached request returns on a cache miss
+            return new Attempt(Geocoder.GeocodeResult.failure(), code == 429 || code >= 500);
+        }
+        boolean fromCache = response.raw().cacheResponse() != null;
+        List<NominatimResult> results = response.body();
+        if (results == null || results.isEmpty()) {
+            return new Attempt(new Geocoder.GeocodeResult(Optional.empty(), fromCache), false);
+        }
+
+        try {
+            NominatimResult first = results.get(0);
+            double lat = Double.parseDouble(first.lat());
+            double lon = Double.parseDouble(first.lon());
+            return new Attempt(new Geocoder.GeocodeResult(
+                    Optional.of(new Geocoder.Coordinates(lat, lon)), fromCache), false);
+        } catch (RuntimeException e) {
+            return new Attempt(Geocoder.GeocodeResult.failure(), false);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record Attempt(Geocoder.GeocodeResult result, boolean retryable) {}
+}
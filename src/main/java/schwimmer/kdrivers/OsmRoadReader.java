@@ -0,0 +1,268 @@
+package schwimmer.kdrivers;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the drivable road network from an OpenStreetMap XML extract (.osm, as exported by osmium or the
+ * OSM website) with a streaming parser. Ways tagged with a car-accessible {@code highway} value become
+ * directed edges weighted by travel time in seconds, from the way's {@code maxspeed} or a default speed for
+ * its road class. One-way streets, roundabouts and motorways get a single direction.
+ */
+final class OsmRoadReader {
+
+    /** Default speeds in km/h by highway class; classes not listed are not drivable. */
+    private static final Map<String, Double> SPEEDS = Map.ofEntries(
+            Map.entry("motorway", 100.0), Map.entry("motorway_link", 60.0),
+            Map.entry("trunk", 80.0), Map.entry("trunk_link", 50.0),
+            Map.entry("primary", 60.0), Map.entry("primary_link", 40.0),
+            Map.entry("secondary", 50.0), Map.entry("secondary_link", 40.0),
+            Map.entry("tertiary", 40.0), Map.entry("tertiary_link", 30.0),
+            Map.entry("unclassified", 30.0), Map.entry("residential", 25.0),
+            Map.entry("living_street", 10.0), Map.entry("service", 15.0));
+
+    private static final double EARTH_RADIUS_M = 6_371_008.8;
+
+    /** Road graph with nodes numbered from 0 and one entry per directed edge. */
+    record Graph(double[] latitudes, double[] longitudes, int[] from, int[] to, double[] seconds) {}
+
+    /** Node ids, parallel to lat and lon; sorted (by {@link #sortNodes}) before ways are resolved. */
+    private long[] ids = new long[1024];
+    private double[] lat = new double[1024];
+    private double[] lon = new double[1024];
+    private int nodeCount;
+    /** Whether ids arrived in increasing order, as extracts normally list them. */
+    private boolean sorted = true;
+    private final List<long[]> ways = new ArrayList<>();
+    private final List<Double> waySpeeds = new ArrayList<>();
+    private final List<Integer> wayDirections = new ArrayList<>();
+
+    static Graph read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    static Graph read(InputStream in) throws IOException {
+        try {
+            XMLInputFactory factory = XMLInputFactory.newFactory();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                OsmRoadReader reader = new OsmRoadReader();
+                reader.parse(xml);
+                return reader.graph();
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed OSM XML: " + e.getMessage(), e);
+        }
+    }
+
+    private void parse(XMLStreamReader xml) throws XMLStreamException {
+        long[] refs = new long[64];
+        int refCount = 0;
+        Map<String, String> tags = new HashMap<>();
+        boolean inWay = false;
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (xml.getLocalName()) {
+                    case "node" -> addNode(Long.parseLong(xml.getAttributeValue(null, "id")),
+                            Double.parseDouble(xml.getAttributeValue(null, "lat")),
+                            Double.parseDouble(xml.getAttributeValue(null, "lon")));
+                    case "way" -> {
+                        inWay = true;
+                        refCount = 0;
+                        tags.clear();
+                    }
+                    case "nd" -> {
+                        if (inWay) {
+                            if (refCount == refs.length) {
+                                refs = Arrays.copyOf(refs, refCount * 2);
+                            }
+                            refs[refCount++] = Long.parseLong(xml.getAttributeValue(null, "ref"));
+                        }
+                    }
+                    case "tag" -> {
+                        if (inWay) {
+                            tags.put(xml.getAttributeValue(null, "k"), xml.getAttributeValue(null, "v"));
+                        }
+                    }
+                    default -> { }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("way")) {
+                inWay = false;
+                addWay(Arrays.copyOf(refs, refCount), tags);
+            }
+        }
+    }
+
+    private void addNode(long id, double latitude, double longitude) {
+        if (nodeCount == lat.length) {
+            ids = Arrays.copyOf(ids, nodeCount * 2);
+            lat = Arrays.copyOf(lat, nodeCount * 2);
+            lon = Arrays.copyOf(lon, nodeCount * 2);
+        }
+        sorted &= nodeCount == 0 || id > ids[nodeCount - 1];
+        ids[nodeCount] = id;
+        lat[nodeCount] = latitude;
+        lon[nodeCount++] = longitude;
+    }
+
+    private void addWay(long[] refs, Map<String, String> tags) {
+        String highway = tags.get("highway");
+        if (highway == null || !SPEEDS.containsKey(highway) || refs.length < 2
+                || "no".equals(tags.get("access")) || "private".equals(tags.get("access"))
+                || "no".equals(tags.get("motor_vehicle"))) {
+            return;
+        }
+        ways.add(refs);
+        waySpeeds.add(speed(tags.get("maxspeed"), SPEEDS.get(highway)));
+        wayDirections.add(direction(highway, tags));
+    }
+
+    /** 1 = forward only, -1 = backward only, 0 = both ways. */
+    private static int direction(String highway, Map<String, String> tags) {
+        String oneway = tags.getOrDefault("oneway", "");
+        return switch (oneway) {
+            case "yes", "true", "1" -> 1;
+            case "-1", "reverse" -> -1;
+            case "no", "false", "0" -> 0;
+            default -> highway.equals("motorway") || "roundabout".equals(tags.get("junction")) ? 1 : 0;
+        };
+    }
+
+    /** Parse maxspeed ("50", "30 mph"); anything else falls back to the road class default. */
+    private static double speed(String maxspeed, double fallback) {
+        if (maxspeed == null) {
+            return fallback;
+        }
+        String value = maxspeed.trim().toLowerCase();
+        double factor = 1;
+        if (value.endsWith("mph")) {
+            factor = 1.609344;
+            value = value.substring(0, value.length() - 3).trim();
+        }
+        try {
+            double speed = Double.parseDouble(value) * factor;
+            return speed > 0 ? speed : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Sort the nodes by id, unless they already are, so way refs can be resolved by binary search; a node
+     * listed twice keeps its last position.
+     */
+    private void sortNodes() {
+        if (sorted) {
+            return;
+        }
+        long[] sortedIds = Arrays.copyOf(ids, nodeCount);
+        Arrays.sort(sortedIds);
+        int unique = 0;
+        for (int i = 0; i < sortedIds.length; i++) {
+            if (unique == 0 || sortedIds[i] != sortedIds[unique - 1]) {
+                sortedIds[unique++] = sortedIds[i];
+            }
+        }
+        double[] sortedLat = new double[unique];
+        double[] sortedLon = new double[unique];
+        for (int v = 0; v < nodeCount; v++) {
+            int i = Arrays.binarySearch(sortedIds, 0, unique, ids[v]);
+            sortedLat[i] = lat[v];
+            sortedLon[i] = lon[v];
+        }
+        ids = sortedIds;
+        lat = sortedLat;
+        lon = sortedLon;
+        nodeCount = unique;
+        sorted = true;
+    }
+
+    /** Index of the node with this id, or -1 if the extract does not include it. */
+    private int node(long id) {
+        int i = Arrays.binarySearch(ids, 0, nodeCount, id);
+        return i >= 0 ? i : -1;
+    }
+
+    /** Keep only nodes some drivable way uses, renumbered from 0, and split ways into edges. */
+    private Graph graph() {
+        sortNodes();
+        int[] remap = new int[nodeCount];
+        Arrays.fill(remap, -1);
+        int used = 0;
+        int edgeCount = 0;
+        for (int w = 0; w < ways.size(); w++) {
+            for (long ref : ways.get(w)) {
+                int node = node(ref);
+                if (node >= 0 && remap[node] < 0) {
+                    remap[node] = used++;
+                }
+            }
+            edgeCount += (ways.get(w).length - 1) * (wayDirections.get(w) == 0 ? 2 : 1);
+        }
+        double[] latitudes = new double[used];
+        double[] longitudes = new double[used];
+        for (int v = 0; v < nodeCount; v++) {
+            if (remap[v] >= 0) {
+                latitudes[remap[v]] = lat[v];
+                longitudes[remap[v]] = lon[v];
+            }
+        }
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        double[] seconds = new double[edgeCount];
+        int e = 0;
+        for (int w = 0; w < ways.size(); w++) {
+            long[] refs = ways.get(w);
+            double metresPerSecond = waySpeeds.get(w) / 3.6;
+            int direction = wayDirections.get(w);
+            for (int i = 0; i + 1 < refs.length; i++) {
+                int a = node(refs[i]);
+                int b = node(refs[i + 1]);
+                if (a < 0 || b < 0) {
+                    // Way references a node outside the extract
+                    continue;
+                }
+                double time = metres(lat[a], lon[a], lat[b], lon[b]) / metresPerSecond;
+                if (direction >= 0) {
+                    from[e] = remap[a];
+                    to[e] = remap[b];
+                    seconds[e++] = time;
+                }
+                if (direction <= 0) {
+                    from[e] = remap[b];
+                    to[e] = remap[a];
+                    seconds[e++] = time;
+                }
+            }
+        }
+        return new Graph(latitudes, longitudes, Arrays.copyOf(from, e), Arrays.copyOf(to, e),
+                Arrays.copyOf(seconds, e));
+    }
+
+    /** Great-circle distance in metres (haversine). */
+    static double metres(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
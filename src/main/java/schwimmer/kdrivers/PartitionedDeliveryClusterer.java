@@ -0,0 +1,250 @@
+package schwimmer.kdrivers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Divide-and-conquer clustering for metro-scale days: cuts the region into cells, solves each cell with
+ * another clusterer in parallel, then repairs the seams between cells.
+ * <p>
+ * Each k-d cut halves a cell's drivers at the median of their homes along the cell's wider axis, and the
+ * unpinned deliveries go to the side of the cut they lie on, except that the deliveries nearest the cut
+ * cross it while a side has more than its drivers' capacity. Cutting stops at {@code driversPerCell}
+ * drivers. Pinned ({@code assign_to}) deliveries join their driver's cell, and drivers without coordinates
+ * join the first cell. Cells are solved as fork/join tasks, each by a clusterer made with enough per-driver
+ * capacity for the cell's load.
+ * <p>
+ * The repair pass works on the whole day. Deliveries over capacity move to the nearest driver with room,
+ * usually just across a cut. Unpinned deliveries whose nearest driver lives in another cell then move to the
+ * nearest driver with room when that driver is closer and less loaded than their own.
+ */
+public class PartitionedDeliveryClusterer implements DeliveryClusterer {
+
+    private static final int DEFAULT_DRIVERS_PER_CELL = 64;
+
+    private final int maxDeliveriesPerDriver;
+    private final int driversPerCell;
+    private final IntFunction<DeliveryClusterer> cellClusterer;
+
+    /** Single-start k-means in cells of {@value #DEFAULT_DRIVERS_PER_CELL} drivers. */
+    public PartitionedDeliveryClusterer(int maxDeliveriesPerDriver) {
+        this(maxDeliveriesPerDriver, DEFAULT_DRIVERS_PER_CELL,
+                capacity -> new KMeansDeliveryClusterer(capacity, 1, null, null));
+    }
+
+    /**
+     * @param driversPerCell most drivers in one cell
+     * @param cellClusterer  makes the clusterer for one cell, given the per-driver capacity it must allow
+     */
+    public PartitionedDeliveryClusterer(int maxDeliveriesPerDriver, int driversPerCell,
+                                        IntFunction<DeliveryClusterer> cellClusterer) {
+        if (maxDeliveriesPerDriver < 1) {
+            throw new IllegalArgumentException("maxDeliveriesPerDriver must be at least 1: " + maxDeliveriesPerDriver);
+        }
+        if (driversPerCell < 1) {
+            throw new IllegalArgumentException("driversPerCell must be at least 1: " + driversPerCell);
+        }
+        this.maxDeliveriesPerDriver = maxDeliveriesPerDriver;
+        this.driversPerCell = driversPerCell;
+        this.cellClusterer = cellClusterer;
+    }
+
+    @Override
+    public List<Driver> clusterAndAssign(List<Delivery> deliveries, List<Driver> drivers) {
+        if (drivers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (deliveries.size() > drivers.size() * maxDeliveriesPerDriver) {
+            throw new IllegalArgumentException(
+                    "Deliveries (" + deliveries.size() + ") exceeds capacity: " + drivers.size()
+                            + " drivers * " + maxDeliveriesPerDriver + " max = "
+                            + (drivers.size() * maxDeliveriesPerDriver));
+        }
+
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+        Map<String, Integer> driverByName = new HashMap<>();
+        for (int i = 0; i < drivers.size(); i++) {
+            driverByName.putIfAbsent(drivers.get(i).getName().trim().toLowerCase(), i);
+        }
+        int[] pinnedTo = new int[deliveries.size()];
+        for (int d = 0; d < deliveries.size(); d++) {
+            String name = deliveries.get(d).assignToDriverName();
+            pinnedTo[d] = name == null || name.isBlank() ? -1 : driverByName.getOrDefault(name.trim().toLowerCase(), -1);
+        }
+
+        // Cut the located drivers and unpinned deliveries into cells, then add everything else
+        int[] deliveryCell = new int[deliveries.size()];
+        int[] driverCell = new int[drivers.size()];
+        int[] located = IntStream.range(0, drivers.size()).filter(kernel::hasDriver).toArray();
+        int[] free = IntStream.range(0, deliveries.size()).filter(d -> pinnedTo[d] < 0).toArray();
+        int cellCount = located.length == 0 ? 1
+                : split(kernel, free, located, deliveryCell, driverCell, 0);
+        for (int d = 0; d < deliveries.size(); d++) {
+            if (pinnedTo[d] >= 0) {
+                deliveryCell[d] = driverCell[pinnedTo[d]];
+            }
+        }
+        Clusters cellDeliveries = new Clusters(cellCount);
+        Clusters cellDrivers = new Clusters(cellCount);
+        for (int d = 0; d < deliveries.size(); d++) {
+            cellDeliveries.add(deliveryCell[d], d);
+        }
+        for (int i = 0; i < drivers.size(); i++) {
+            cellDrivers.add(driverCell[i], i);
+        }
+
+        List<ForkJoinTask<List<Driver>>> tasks = new ArrayList<>();
+        for (int c = 0; c < cellCount; c++) {
+            int cell = c;
+            tasks.add(ForkJoinTask.adapt(() -> solve(cell, cellDeliveries, cellDrivers, deliveries, drivers)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        Map<Delivery, Integer> deliveryIndex = new IdentityHashMap<>(deliveries.size());
+        for (int d = 0; d < deliveries.size(); d++) {
+            deliveryIndex.put(deliveries.get(d), d);
+        }
+        Clusters clusters = new Clusters(drivers.size());
+        for (int c = 0; c < cellCount; c++) {
+            List<Driver> solved = tasks.get(c).join();
+            for (int k = 0; k < solved.size(); k++) {
+                for (Delivery delivery : solved.get(k).getAssignedDeliveries()) {
+                    clusters.add(cellDrivers.get(c, k), deliveryIndex.get(delivery));
+                }
+            }
+        }
+
+        DriverIndex index = new DriverIndex(kernel);
+        DriverDistances distances = new DriverDistances(kernel, index);
+        IntPredicate movable = d -> pinnedTo[d] < 0 && !deliveries.get(d).id().endsWith("-home");
+        new ClusterRebalancer(maxDeliveriesPerDriver, 0, movable).rebalance(clusters, distances);
+        repairSeams(clusters, distances, index, driverCell, movable);
+        return clusters.assignTo(deliveries, drivers);
+    }
+
+    /**
+     * Cut the deliveries and drivers into cells, numbering them from {@code firstCell}; returns the number
+     * after the last cell.
+     */
+    private int split(CoordinateKernel kernel, int[] deliveries, int[] drivers,
+                      int[] deliveryCell, int[] driverCell, int firstCell) {
+        if (drivers.length <= driversPerCell) {
+            for (int d : deliveries) {
+                deliveryCell[d] = firstCell;
+            }
+            for (int i : drivers) {
+                driverCell[i] = firstCell;
+            }
+            return firstCell + 1;
+        }
+
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i : drivers) {
+            minX = Math.min(minX, kernel.driverX(i));
+            maxX = Math.max(maxX, kernel.driverX(i));
+            minY = Math.min(minY, kernel.driverY(i));
+            maxY = Math.max(maxY, kernel.driverY(i));
+        }
+        boolean alongX = maxX - minX >= maxY - minY;
+        IntToDoubleFunction driverCoordinate = alongX ? kernel::driverX : kernel::driverY;
+        IntToDoubleFunction deliveryCoordinate = alongX ? kernel::deliveryX : kernel::deliveryY;
+        int[] driverOrder = sorted(drivers, driverCoordinate);
+        int[] deliveryOrder = sorted(deliveries, deliveryCoordinate);
+
+        int lowDrivers = drivers.length / 2;
+        double cut = (driverCoordinate.applyAsDouble(driverOrder[lowDrivers - 1])
+                + driverCoordinate.applyAsDouble(driverOrder[lowDrivers])) / 2;
+        int lowDeliveries = 0;
+        while (lowDeliveries < deliveryOrder.length
+                && deliveryCoordinate.applyAsDouble(deliveryOrder[lowDeliveries]) < cut) {
+            lowDeliveries++;
+        }
+        // Shift the deliveries nearest the cut to the other side while one side is over capacity
+        lowDeliveries = Math.max(lowDeliveries,
+                deliveries.length - (drivers.length - lowDrivers) * maxDeliveriesPerDriver);
+        lowDeliveries = Math.min(lowDeliveries, lowDrivers * maxDeliveriesPerDriver);
+        int next = split(kernel, Arrays.copyOfRange(deliveryOrder, 0, lowDeliveries),
+                Arrays.copyOfRange(driverOrder, 0, lowDrivers), deliveryCell, driverCell, firstCell);
+        return split(kernel, Arrays.copyOfRange(deliveryOrder, lowDeliveries, deliveryOrder.length),
+                Arrays.copyOfRange(driverOrder, lowDrivers, driverOrder.length), deliveryCell, driverCell, next);
+    }
+
+    private static int[] sorted(int[] indices, IntToDoubleFunction coordinate) {
+        return Arrays.stream(indices).boxed()
+                .sorted((a, b) -> Double.compare(coordinate.applyAsDouble(a), coordinate.applyAsDouble(b)))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /** Cluster one cell on copies of its drivers, so the real drivers are only assigned once, at the end. */
+    private List<Driver> solve(int cell, Clusters cellDeliveries, Clusters cellDrivers,
+                               List<Delivery> deliveries, List<Driver> drivers) {
+        List<Delivery> cellStops = new ArrayList<>(cellDeliveries.size(cell));
+        for (int j = 0; j < cellDeliveries.size(cell); j++) {
+            cellStops.add(deliveries.get(cellDeliveries.get(cell, j)));
+        }
+        List<Driver> copies = new ArrayList<>(cellDrivers.size(cell));
+        for (int k = 0; k < cellDrivers.size(cell); k++) {
+            Driver driver = drivers.get(cellDrivers.get(cell, k));
+            Driver copy = new Driver(driver.getId(), driver.getName(), driver.getAddress());
+            copy.setCoordinates(driver.getLatitude(), driver.getLongitude());
+            copies.add(copy);
+        }
+        if (copies.isEmpty()) {
+            return copies;
+        }
+        // Homes count against capacity for some clusterers, and pinned deliveries can crowd a cell
+        int capacity = Math.max(maxDeliveriesPerDriver,
+                (int) Math.ceil((double) (cellStops.size() + copies.size()) / copies.size()));
+        return cellClusterer.apply(capacity).clusterAndAssign(cellStops, copies);
+    }
+
+    /**
+     * Move unpinned deliveries whose nearest driver lives in another cell to the nearest driver with room,
+     * when that driver is closer than their own and has fewer deliveries.
+     */
+    private void repairSeams(Clusters clusters, DriverDistances distances, DriverIndex index, int[] driverCell,
+                             IntPredicate movable) {
+        CoordinateKernel kernel = distances.kernel();
+        for (int c = 0; c < clusters.count(); c++) {
+            if (!kernel.hasDriver(c)) {
+                continue;
+            }
+            int own = c;
+            int size = clusters.size(c);
+            boolean[] moved = new boolean[size];
+            int remaining = size;
+            for (int j = 0; j < size; j++) {
+                int d = clusters.get(c, j);
+                if (!movable.test(d)) {
+                    continue;
+                }
+                int nearest = index.nearest(kernel.deliveryX(d), kernel.deliveryY(d));
+                if (nearest < 0 || driverCell[nearest] == driverCell[c]) {
+                    continue;
+                }
+                int limit = Math.min(maxDeliveriesPerDriver, remaining);
+                int target = distances.best(d, i -> i == own || clusters.size(i) >= limit
+                        ? Double.POSITIVE_INFINITY : 1);
+                if (target >= 0 && distances.deliveryToDriver(d, target) < distances.deliveryToDriver(d, c)) {
+                    clusters.add(target, d);
+                    moved[j] = true;
+                    remaining--;
+                }
+            }
+            clusters.removeAll(c, moved);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package schwimmer.kdrivers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Travel times in seconds over a road network loaded from a local OpenStreetMap extract, with no network
+ * access. The network is preprocessed into a {@link ContractionHierarchy} once at load time; queries then
+ * take microseconds.
+ * <p>
+ * Locations are snapped to the nearest road node, and the straight line to it is charged at
+ * {@value #ACCESS_SPEED_KMH} km/h. Only the largest connected part of the network is kept, so a location
+ * never snaps to a stray road fragment that nothing can reach.
+ */
+public final class RoadNetwork implements DistanceModel {
+
+    /** Speed for the stretch between a location and the road node it snaps to. */
+    private static final double ACCESS_SPEED_KMH = 15;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int edgeCount;
+    private final ContractionHierarchy hierarchy;
+    private final DriverIndex nodeIndex;
+    private final double originLat;
+    private final double originLon;
+    private final double kmPerDegreeLat;
+    private final double kmPerDegreeLon;
+    private final long preprocessingMillis;
+    private final long fingerprint;
+
+    /** Load and preprocess a .osm XML extract. */
+    public static RoadNetwork load(Path osmFile) throws IOException {
+        return new RoadNetwork(OsmRoadReader.read(osmFile));
+    }
+
+    RoadNetwork(OsmRoadReader.Graph graph) {
+        long start = System.nanoTime();
+        int[] keep = largestComponent(graph);
+        int kept = 0;
+        for (int v : keep) {
+            if (v >= 0) {
+                kept++;
+            }
+        }
+        if (kept == 0) {
+            throw new IllegalArgumentException("Road network has no drivable roads");
+        }
+        latitudes = new double[kept];
+        longitudes = new double[kept];
+        for (int v = 0; v < keep.length; v++) {
+            if (keep[v] >= 0) {
+                latitudes[keep[v]] = graph.latitudes()[v];
+                longitudes[keep[v]] = graph.longitudes()[v];
+            }
+        }
+        int[] from = new int[graph.from().length];
+        int[] to = new int[from.length];
+        double[] seconds = new double[from.length];
+        int edges = 0;
+        for (int e = 0; e < from.length; e++) {
+            int a = keep[graph.from()[e]];
+            int b = keep[graph.to()[e]];
+            if (a >= 0 && b >= 0) {
+                from[edges] = a;
+                to[edges] = b;
+                seconds[edges++] = graph.seconds()[e];
+            }
+        }
+        edgeCount = edges;
+        from = Arrays.copyOf(from, edges);
+        to = Arrays.copyOf(to, edges);
+        seconds = Arrays.copyOf(seconds, edges);
+        fingerprint = fingerprint(latitudes, longitudes, from, to, seconds);
+        hierarchy = new ContractionHierarchy(kept, from, to, seconds);
+
+        // Same local equirectangular projection as CoordinateKernel, centred on the network
+        originLat = Arrays.stream(latitudes).average().orElse(0);
+        originLon = Arrays.stream(longitudes).average().orElse(0);
+        kmPerDegreeLat = Math.toRadians(6371.0088);
+        kmPerDegreeLon = kmPerDegreeLat * Math.cos(Math.toRadians(originLat));
+        double[] xs = new double[kept];
+        double[] ys = new double[kept];
+        for (int v = 0; v < kept; v++) {
+            xs[v] = x(longitudes[v]);
+            ys[v] = y(latitudes[v]);
+        }
+        nodeIndex = new DriverIndex(xs, ys);
+        preprocessingMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    public int nodeCount() {
+        return latitudes.length;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /** Shortcut edges added by preprocessing. */
+    public int shortcutCount() {
+        return hierarchy.shortcutCount();
+    }
+
+    /** Time spent building the hierarchy and node index. */
+    public long preprocessingMillis() {
+        return preprocessingMillis;
+    }
+
+    /** Hash of the nodes and edges, identifying this network's costs (e.g. for {@link DistanceStore}). */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /** Approximate memory held by the node coordinates, the snapping index and the hierarchy. */
+    public long bytes() {
+        return 36L * latitudes.length + hierarchy.bytes();
+    }
+
+    /** Travel times in seconds; infinite where the road network has no route. */
+    @Override
+    public double[] costs(double fromLatitude, double fromLongitude, double[] toLatitudes, double[] toLongitudes) {
+        int source = snap(fromLatitude, fromLongitude);
+        double sourceAccess = accessSeconds(source, fromLatitude, fromLongitude);
+        int[] targets = new int[toLatitudes.length];
+        for (int t = 0; t < targets.length; t++) {
+            targets[t] = snap(toLatitudes[t], toLongitudes[t]);
+        }
+        double[] result = hierarchy.distances(source, targets);
+        for (int t = 0; t < targets.length; t++) {
+            result[t] += sourceAccess + accessSeconds(targets[t], toLatitudes[t], toLongitudes[t]);
+        }
+        return result;
+    }
+
+    /** Index of the road node nearest to the location. */
+    int snap(double latitude, double longitude) {
+        return nodeIndex.nearest(x(longitude), y(latitude));
+    }
+
+    private double accessSeconds(int node, double latitude, double longitude) {
+        double km = CoordinateKernel.distance(x(longitude), y(latitude), x(longitudes[node]), y(latitudes[node]));
+        return km / ACCESS_SPEED_KMH * 3600;
+    }
+
+    private double x(double longitude) {
+        return (longitude - originLon) * kmPerDegreeLon;
+    }
+
+    private double y(double latitude) {
+        return (latitude - originLat) * kmPerDegreeLat;
+    }
+
+    private static long fingerprint(double[] latitudes, double[] longitudes, int[] from, int[] to, double[] seconds) {
+        long hash = latitudes.length;
+        for (int h : new int[] {Arrays.hashCode(latitudes), Arrays.hashCode(longitudes), Arrays.hashCode(from),
+                Arrays.hashCode(to), Arrays.hashCode(seconds)}) {
+            hash = hash * 0x9E3779B97F4A7C15L + h;
+        }
+        return hash;
+    }
+
+    /** New index of each node in the largest weakly connected component, -1 for nodes outside it. */
+    private static int[] largestComponent(OsmRoadReader.Graph graph) {
+        int n = graph.latitudes().length;
+        int[] parent = new int[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+        }
+        for (int e = 0; e < graph.from().length; e++) {
+            int a = root(parent, graph.from()[e]);
+            int b = root(parent, graph.to()[e]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        int[] sizes = new int[n];
+        int largest = -1;
+        for (int v = 0; v < n; v++) {
+            int r = root(parent, v);
+            if (++sizes[r] > (largest < 0 ? 0 : sizes[largest])) {
+                largest = r;
+            }
+        }
+        int[] keep = new int[n];
+        int next = 0;
+        for (int v = 0; v < n; v++) {
+            keep[v] = root(parent, v) == largest ? next++ : -1;
+        }
+        return keep;
+    }
+
+    private static int root(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+}
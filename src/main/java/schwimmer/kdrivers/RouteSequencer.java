@@ -0,0 +1,344 @@
+package schwimmer.kdrivers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Orders each driver's deliveries into a short route starting from the driver's home, so that stop
+ * numbers on the route sheet, map and summary follow the order the driver should drive them.
+ * <p>
+ * A route is an open path: it starts at home and ends at whichever stop is last. It is modelled as a cycle
+ * through home, the stops and a virtual end node that is zero distance from every stop, with the end-home
+ * edge fixed, which keeps the problem symmetric for the moves below. Each route starts as a
+ * nearest-neighbour tour and is improved with 2-opt and Or-opt moves (segments of up to three stops) over
+ * each stop's nearest neighbours, with don't-look bits so only stops next to a recent change are
+ * re-examined. Drivers are sequenced in parallel, one fork/join task each, and each stops improving when
+ * its time budget runs out.
+ */
+final class RouteSequencer {
+
+    /** Candidate neighbours per node for improving moves. */
+    private static final int NEIGHBOURS = 8;
+    private static final int MAX_SEGMENT = 3;
+    private static final double EPSILON = 1e-9;
+
+    private final Duration budgetPerDriver;
+
+    RouteSequencer(Duration budgetPerDriver) {
+        this.budgetPerDriver = budgetPerDriver;
+    }
+
+    /** Reorder every driver's deliveries in place. */
+    void sequence(List<Driver> drivers) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Driver driver : drivers) {
+            tasks.add(ForkJoinTask.adapt(() -> sequence(driver)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    private void sequence(Driver driver) {
+        List<Delivery> homes = new ArrayList<>();
+        List<Delivery> stops = new ArrayList<>();
+        for (Delivery d : driver.getAssignedDeliveries()) {
+            // A driver's own address, when it is in the list, stays first
+            (d.id().endsWith("-home") ? homes : stops).add(d);
+        }
+        if (stops.size() < 2) {
+            return;
+        }
+        int[] order = order(driver, stops, System.nanoTime() + budgetPerDriver.toNanos());
+        List<Delivery> sequenced = new ArrayList<>(homes);
+        for (int stop : order) {
+            sequenced.add(stops.get(stop));
+        }
+        driver.reorderDeliveries(sequenced);
+    }
+
+    /**
+     * Visiting order of {@code stops} (as indices) for a route starting at the driver's home, or anywhere
+     * if the driver has no coordinates.
+     */
+    static int[] order(Driver driver, List<Delivery> stops, long deadlineNanos) {
+        int n = stops.size();
+        if (n < 2) {
+            return n == 0 ? new int[0] : new int[] {0};
+        }
+        Tour tour = new Tour(distances(driver, stops));
+        tour.improve(deadlineNanos);
+        return tour.stops();
+    }
+
+    /**
+     * Node 0 is home, nodes 1..n the stops and node n + 1 the virtual end. Distances are in km from a
+     * projection local to this driver.
+     */
+    private static double[][] distances(Driver driver, List<Delivery> stops) {
+        int n = stops.size();
+        CoordinateKernel kernel = new CoordinateKernel(stops, List.of(driver));
+        double[][] dist = new double[n + 2][n + 2];
+        for (int i = 0; i < n; i++) {
+            double home = kernel.hasDriver(0) ? kernel.deliveryToDriver(i, 0) : 0;
+            dist[0][i + 1] = home;
+            dist[i + 1][0] = home;
+            for (int j = i + 1; j < n; j++) {
+                double d = CoordinateKernel.distance(kernel.deliveryX(i), kernel.deliveryY(i),
+                        kernel.deliveryX(j), kernel.deliveryY(j));
+                dist[i + 1][j + 1] = d;
+                dist[j + 1][i + 1] = d;
+            }
+        }
+        return dist;
+    }
+
+    /** A cycle over all nodes as an array of nodes plus each node's position in it. */
+    private static final class Tour {
+        private final double[][] dist;
+        private final int m;
+        private final int[][] neighbours;
+        private int[] nodes;
+        private final int[] pos;
+        private final boolean[] queued;
+        private final ArrayDeque<Integer> active = new ArrayDeque<>();
+
+        Tour(double[][] dist) {
+            this.dist = dist;
+            this.m = dist.length;
+            this.neighbours = new int[m][];
+            for (int a = 0; a < m; a++) {
+                int from = a;
+                neighbours[a] = IntStream.range(0, m)
+                        .filter(b -> b != from)
+                        .boxed()
+                        .sorted((b, c) -> Double.compare(dist[from][b], dist[from][c]))
+                        .limit(NEIGHBOURS)
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+            }
+            this.nodes = nearestNeighbourTour();
+            this.pos = new int[m];
+            for (int i = 0; i < m; i++) {
+                pos[nodes[i]] = i;
+            }
+            this.queued = new boolean[m];
+            for (int node : nodes) {
+                activate(node);
+            }
+        }
+
+        /** Home, then repeatedly the nearest unvisited stop, then the end node. */
+        private int[] nearestNeighbourTour() {
+            int end = m - 1;
+            int[] tour = new int[m];
+            boolean[] visited = new boolean[m];
+            visited[0] = true;
+            int current = 0;
+            for (int i = 1; i < end; i++) {
+                int next = -1;
+                for (int b = 1; b < end; b++) {
+                    if (!visited[b] && (next < 0 || dist[current][b] < dist[current][next])) {
+                        next = b;
+                    }
+                }
+                tour[i] = next;
+                visited[next] = true;
+                current = next;
+            }
+            tour[end] = end;
+            return tour;
+        }
+
+        void improve(long deadlineNanos) {
+            while (!active.isEmpty() && System.nanoTime() - deadlineNanos < 0) {
+                int a = active.poll();
+                queued[a] = false;
+                if (twoOpt(a) || orOpt(a)) {
+                    activate(a);
+                }
+            }
+        }
+
+        /** Stops in visiting order from home, walking away from the end node's side. */
+        int[] stops() {
+            int end = m - 1;
+            int step = next(0) == end ? -1 : 1;
+            int[] order = new int[m - 2];
+            int i = pos[0];
+            for (int k = 0; k < order.length; k++) {
+                i = (i + step + m) % m;
+                order[k] = nodes[i] - 1;
+            }
+            return order;
+        }
+
+        private boolean twoOpt(int a) {
+            for (int direction = 0; direction < 2; direction++) {
+                boolean forward = direction == 0;
+                int an = forward ? next(a) : prev(a);
+                if (fixed(a, an)) {
+                    continue;
+                }
+                double removed = dist[a][an];
+                for (int c : neighbours[a]) {
+                    double added = dist[a][c];
+                    if (added >= removed - EPSILON) {
+                        break;
+                    }
+                    int cn = forward ? next(c) : prev(c);
+                    if (c == an || cn == a || fixed(c, cn)) {
+                        continue;
+                    }
+                    double delta = added + dist[an][cn] - removed - dist[c][cn];
+                    if (delta < -EPSILON) {
+                        if (forward) {
+                            reverse(pos[an], pos[c]);
+                        } else {
+                            reverse(pos[c], pos[an]);
+                        }
+                        activate(an);
+                        activate(c);
+                        activate(cn);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** Move the segment of up to three nodes starting at a so that a sits next to one of its neighbours. */
+        private boolean orOpt(int a) {
+            for (int length = 1; length <= MAX_SEGMENT && length <= m - 3; length++) {
+                int first = pos[a];
+                int lastNode = nodes[(first + length - 1) % m];
+                int before = prev(a);
+                int after = next(lastNode);
+                if (fixed(before, a) || fixed(lastNode, after)) {
+                    continue;
+                }
+                double removal = dist[before][a] + dist[lastNode][after] - dist[before][after];
+                for (int c : neighbours[a]) {
+                    if (dist[a][c] >= removal - EPSILON) {
+                        break;
+                    }
+                    if (inSegment(c, first, length)) {
+                        continue;
+                    }
+                    // ... c, a ... last, next(c) ...
+                    int cn = next(c);
+                    if (cn != a && !inSegment(cn, first, length) && !fixed(c, cn)) {
+                        double delta = dist[c][a] + dist[lastNode][cn] - dist[c][cn] - removal;
+                        if (delta < -EPSILON) {
+                            moveSegment(first, length, c, false);
+                            activateAll(before, after, c, cn, lastNode);
+                            return true;
+                        }
+                    }
+                    // ... prev(c), last ... a, c ...
+                    int cp = prev(c);
+                    if (cp != lastNode && !inSegment(cp, first, length) && !fixed(cp, c)) {
+                        double delta = dist[cp][lastNode] + dist[a][c] - dist[cp][c] - removal;
+                        if (delta < -EPSILON) {
+                            moveSegment(first, length, cp, true);
+                            activateAll(before, after, c, cp, lastNode);
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** The home-end edge closes the cycle and must stay, so the route remains one path from home. */
+        private boolean fixed(int a, int b) {
+            return (a == 0 && b == m - 1) || (a == m - 1 && b == 0);
+        }
+
+        private boolean inSegment(int node, int first, int length) {
+            return (pos[node] - first + m) % m < length;
+        }
+
+        /** Take the segment out and put it back right after node {@code after}, reversed if asked. */
+        private void moveSegment(int first, int length, int after, boolean reversed) {
+            int[] segment = new int[length];
+            for (int k = 0; k < length; k++) {
+                segment[k] = nodes[(first + k) % m];
+            }
+            if (reversed) {
+                for (int k = 0; k < length / 2; k++) {
+                    int t = segment[k];
+                    segment[k] = segment[length - 1 - k];
+                    segment[length - 1 - k] = t;
+                }
+            }
+            int[] rebuilt = new int[m];
+            int n = 0;
+            for (int k = 0; k < m; k++) {
+                int node = nodes[(first + length + k) % m];
+                if (k >= m - length) {
+                    break;
+                }
+                rebuilt[n++] = node;
+                if (node == after) {
+                    for (int s : segment) {
+                        rebuilt[n++] = s;
+                    }
+                }
+            }
+            nodes = rebuilt;
+            for (int i = 0; i < m; i++) {
+                pos[nodes[i]] = i;
+            }
+        }
+
+        /** Reverse the nodes from position i to position j, walking forward around the cycle. */
+        private void reverse(int i, int j) {
+            int length = (j - i + m) % m + 1;
+            for (int k = 0; k < length / 2; k++) {
+                int x = (i + k) % m;
+                int y = (j - k + m) % m;
+                int t = nodes[x];
+                nodes[x] = nodes[y];
+                nodes[y] = t;
+                pos[nodes[x]] = x;
+                pos[nodes[y]] = y;
+            }
+        }
+
+        private int next(int node) {
+            return nodes[(pos[node] + 1) % m];
+        }
+
+        private int prev(int node) {
+            return nodes[(pos[node] - 1 + m) % m];
+        }
+
+        private void activateAll(int... touched) {
+            for (int node : touched) {
+                activate(node);
+            }
+        }
+
+        private void activate(int node) {
+            if (!queued[node]) {
+                queued[node] = true;
+                active.add(node);
+            }
+        }
+    }
+
+    /** Length in km of the route from home through the stops in the given order. */
+    static double length(Driver driver, List<Delivery> stops) {
+        double[][] dist = distances(driver, stops);
+        double total = 0;
+        int previous = 0;
+        for (int i = 1; i <= stops.size(); i++) {
+            total += dist[previous][i];
+            previous = i;
+        }
+        return total;
+    }
+}
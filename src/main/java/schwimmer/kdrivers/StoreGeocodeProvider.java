@@ -0,0 +1,49 @@
+package schwimmer.kdrivers;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serves and remembers results in the persistent {@link GeocodeStore}, including known not-found addresses.
+ * Store errors are logged and treated as a miss.
+ */
+class StoreGeocodeProvider implements GeocodeProvider {
+
+    private final GeocodeStore store;
+
+    StoreGeocodeProvider(GeocodeStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public String name() {
+        return "store";
+    }
+
+    @Override
+    public CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address) {
+        try {
+            return CompletableFuture.completedFuture(store.get(address));
+        } catch (IOException e) {
+            System.err.println("Geocode store read failed: " + e.getMessage());
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+
+    @Override
+    public void remember(String address, Geocoder.GeocodeResult result) {
+        if (result.failed()) {
+            return;
+        }
+        try {
+            if (result.coordinates().isPresent()) {
+                store.put(address, result.coordinates().get());
+            } else {
+                store.putNotFound(address);
+            }
+        } catch (IOException e) {
+            System.err.println("Geocode store write failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package schwimmer.kdrivers;
+
+import java.io.IOException;
+
+/**
+ * Serves costs from the persistent {@link DistanceStore} and asks the underlying model only for the pairs
+ * the store does not have yet, remembering them for later runs. Store errors are logged and treated as a
+ * miss.
+ */
+class StoredDistanceModel implements DistanceModel {
+
+    private final DistanceModel model;
+    private final DistanceStore store;
+
+    StoredDistanceModel(DistanceModel model, DistanceStore store) {
+        this.model = model;
+        this.store = store;
+    }
+
+    @Override
+    public double[] costs(double fromLatitude, double fromLongitude, double[] toLatitudes, double[] toLongitudes) {
+        long from = DistanceStore.key(fromLatitude, fromLongitude);
+        long[] to = new long[toLatitudes.length];
+        for (int t = 0; t < to.length; t++) {
+            to[t] = DistanceStore.key(toLatitudes[t], toLongitudes[t]);
+        }
+        double[] costs = new double[to.length];
+        boolean[] found;
+        try {
+            found = store.get(from, to, costs);
+        } catch (IOException e) {
+            System.err.println("Distance store read failed: " + e.getMessage());
+            found = new boolean[to.length];
+        }
+
+        int missing = 0;
+        for (boolean f : found) {
+            if (!f) {
+                missing++;
+            }
+        }
+        if (missing == 0) {
+            return costs;
+        }
+        double[] missingLats = new double[missing];
+        double[] missingLons = new double[missing];
+        long[] missingKeys = new long[missing];
+        for (int t = 0, m = 0; t < to.length; t++) {
+            if (!found[t]) {
+                missingLats[m] = toLatitudes[t];
+                missingLons[m] = toLongitudes[t];
+                missingKeys[m++] = to[t];
+            }
+        }
+        double[] computed = model.costs(fromLatitude, fromLongitude, missingLats, missingLons);
+        for (int t = 0, m = 0; t < to.length; t++) {
+            if (!found[t]) {
+                costs[t] = computed[m++];
+            }
+        }
+        try {
+            store.put(from, missingKeys, computed);
+        } catch (IOException e) {
+            System.err.println("Distance store write failed: " + e.getMessage());
+        }
+        return costs;
+    }
+}
@@ -0,0 +1,89 @@
+package schwimmer.kdrivers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded synthetic delivery days around New York for benchmarks. The same seed, sizes and distribution
+ * always produce the same deliveries and drivers.
+ */
+final class SyntheticDeliveries {
+
+    private static final double MIN_LAT = 40.55;
+    private static final double MAX_LAT = 40.90;
+    private static final double MIN_LON = -74.10;
+    private static final double MAX_LON = -73.75;
+    /** Neighbourhoods in the clustered distributions, and their spread in degrees (about 1.5 km). */
+    private static final int HOTSPOTS = 8;
+    private static final double HOTSPOT_SPREAD = 0.015;
+    /** Share of deliveries pinned to a driver with assign_to in the heavy-override distribution. */
+    private static final double OVERRIDE_SHARE = 0.4;
+
+    enum Distribution {
+        /** Deliveries and driver homes spread evenly over the city. */
+        UNIFORM,
+        /** Deliveries and driver homes concentrated in a few neighbourhoods. */
+        CLUSTERED_CITY,
+        /** Clustered, with a large share of deliveries pinned to drivers. */
+        HEAVY_OVERRIDE
+    }
+
+    private final List<Delivery> deliveries;
+    private final double[] driverLatitudes;
+    private final double[] driverLongitudes;
+
+    SyntheticDeliveries(long seed, int deliveryCount, int driverCount, Distribution distribution) {
+        Random random = new Random(seed);
+        double[][] hotspots = new double[HOTSPOTS][];
+        for (int h = 0; h < HOTSPOTS; h++) {
+            hotspots[h] = uniform(random);
+        }
+        driverLatitudes = new double[driverCount];
+        driverLongitudes = new double[driverCount];
+        for (int i = 0; i < driverCount; i++) {
+            double[] location = distribution == Distribution.UNIFORM ? uniform(random) : near(random, hotspots);
+            driverLatitudes[i] = location[0];
+            driverLongitudes[i] = location[1];
+        }
+        deliveries = new ArrayList<>(deliveryCount);
+        for (int i = 0; i < deliveryCount; i++) {
+            double[] location = distribution == Distribution.UNIFORM ? uniform(random) : near(random, hotspots);
+            String assignTo = distribution == Distribution.HEAVY_OVERRIDE && random.nextDouble() < OVERRIDE_SHARE
+                    ? driverName(random.nextInt(driverCount))
+                    : null;
+            deliveries.add(new Delivery("DEL-" + i, location[0], location[1], i + " Synthetic St", "Delivery " + i,
+                    null, assignTo));
+        }
+    }
+
+    List<Delivery> deliveries() {
+        return deliveries;
+    }
+
+    /** New drivers with no deliveries, since clustering assigns into the driver objects it is given. */
+    List<Driver> drivers() {
+        List<Driver> drivers = new ArrayList<>(driverLatitudes.length);
+        for (int i = 0; i < driverLatitudes.length; i++) {
+            Driver driver = new Driver("DRV-" + i, driverName(i));
+            driver.setCoordinates(driverLatitudes[i], driverLongitudes[i]);
+            drivers.add(driver);
+        }
+        return drivers;
+    }
+
+    private static String driverName(int i) {
+        return "Driver " + i;
+    }
+
+    private static double[] uniform(Random random) {
+        return new double[] {MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT),
+                MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON)};
+    }
+
+    private static double[] near(Random random, double[][] hotspots) {
+        double[] centre = hotspots[random.nextInt(hotspots.length)];
+        return new double[] {centre[0] + random.nextGaussian() * HOTSPOT_SPREAD,
+                centre[1] + random.nextGaussian() * HOTSPOT_SPREAD};
+    }
+}
@@ -0,0 +1,81 @@
+package schwimmer.kdrivers;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded map tiles held in memory, so a tile shared by neighbouring drivers' maps is read from the disk
+ * cache and decoded once per run rather than once per map.
+ * <p>
+ * Bounded by the pixels held rather than by tile count, since that is what the rasters cost: once the budget
+ * is exceeded the least recently used tiles are dropped. Counts hits and misses. Safe for concurrent use.
+ */
+final class TileCache {
+
+    /** A tile's address on the tile server. */
+    record Key(int zoom, int x, int y) {}
+
+    private final long maxPixels;
+    private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long pixels;
+    private long hits;
+    private long misses;
+
+    TileCache(long maxPixels) {
+        if (maxPixels < 1) {
+            throw new IllegalArgumentException("maxPixels must be at least 1: " + maxPixels);
+        }
+        this.maxPixels = maxPixels;
+    }
+
+    /** The tile, marked as recently used, or null if it is not held. */
+    synchronized BufferedImage get(Key key) {
+        BufferedImage tile = tiles.get(key);
+        if (tile != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return tile;
+    }
+
+    /**
+     * Hold a tile, dropping the least recently used ones while over budget. A tile larger than the whole
+     * budget is not held.
+     */
+    synchronized void put(Key key, BufferedImage tile) {
+        long size = pixels(tile);
+        if (size > maxPixels) {
+            return;
+        }
+        BufferedImage previous = tiles.put(key, tile);
+        pixels += size - (previous == null ? 0 : pixels(previous));
+        Iterator<Map.Entry<Key, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while (pixels > maxPixels) {
+            pixels -= pixels(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    synchronized int size() {
+        return tiles.size();
+    }
+
+    synchronized long pixels() {
+        return pixels;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    private static long pixels(BufferedImage tile) {
+        return (long) tile.getWidth() * tile.getHeight();
+    }
+}
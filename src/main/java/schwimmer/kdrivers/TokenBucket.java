@@ -0,0 +1,51 @@
+package schwimmer.kdrivers;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token-bucket rate limiter. Tokens refill continuously at a fixed rate up to a burst capacity.
+ * Callers reserve a token and are told how long to wait before using it, so no thread is blocked;
+ * reservations beyond the available tokens queue up behind each other at the refill rate.
+ */
+class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double capacity;
+    private final LongSupplier clock;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1: " + burst);
+        }
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000.0;
+        this.capacity = burst;
+        this.clock = clock;
+        this.tokens = burst;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Reserve one token.
+     *
+     * @return nanoseconds the caller must wait before using the token (0 if available now)
+     */
+    synchronized long reserve() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / permitsPerNano);
+    }
+}
@@ -0,0 +1,119 @@
+package schwimmer.kdrivers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The assignment computed by {@code warm}, saved so that a run with {@code --use-warm} can use exactly the
+ * assignment whose map tiles were prefetched. Clustering with a deadline, an improvement budget or a budget
+ * on k-means starts depends on timing, so clustering again could give drivers other stops and need tiles warm
+ * never fetched.
+ * <p>
+ * File format: a header line, the SHA-256 fingerprint of the geocoded deliveries and drivers in hex, then one
+ * line per driver: {@code driverId<TAB>deliveryId deliveryId ...}. A saved assignment only applies to
+ * deliveries and drivers with the same fingerprint. The file does not record the clusterer settings.
+ */
+final class WarmAssignment {
+
+    private static final String HEADER = "kdrivers warm assignment 1";
+
+    private WarmAssignment() {
+    }
+
+    /** Save the assignment held by {@code assignedDrivers}. */
+    static void save(Path file, List<Delivery> deliveries, List<Driver> assignedDrivers) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.add(fingerprint(deliveries, assignedDrivers));
+        for (Driver driver : assignedDrivers) {
+            List<String> ids = driver.getAssignedDeliveries().stream().map(Delivery::id).toList();
+            lines.add(driver.getId() + "\t" + String.join(" ", ids));
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, lines);
+    }
+
+    /**
+     * Assign the deliveries to the drivers (which must have none yet) as saved, if the file holds an
+     * assignment for exactly these deliveries and drivers.
+     *
+     * @return the drivers with their deliveries, or empty if there is no matching saved assignment
+     */
+    static Optional<List<Driver>> load(Path file, List<Delivery> deliveries, List<Driver> drivers)
+            throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        List<String> lines = Files.readAllLines(file);
+        if (lines.size() != drivers.size() + 2 || !lines.get(0).equals(HEADER)
+                || !lines.get(1).equals(fingerprint(deliveries, drivers))) {
+            return Optional.empty();
+        }
+
+        Map<String, Driver> driversById = new HashMap<>();
+        drivers.forEach(driver -> driversById.put(driver.getId(), driver));
+        Map<String, Delivery> unassigned = new HashMap<>();
+        deliveries.forEach(delivery -> unassigned.put(delivery.id(), delivery));
+        Map<Driver, List<Delivery>> assignment = new HashMap<>();
+        for (String line : lines.subList(2, lines.size())) {
+            String[] fields = line.split("\t", -1);
+            Driver driver = driversById.remove(fields[0]);
+            if (fields.length != 2 || driver == null) {
+                return Optional.empty();
+            }
+            List<Delivery> assigned = new ArrayList<>();
+            for (String id : fields[1].isEmpty() ? new String[0] : fields[1].split(" ")) {
+                Delivery delivery = unassigned.remove(id);
+                if (delivery == null) {
+                    return Optional.empty();
+                }
+                assigned.add(delivery);
+            }
+            assignment.put(driver, assigned);
+        }
+        if (!unassigned.isEmpty()) {
+            return Optional.empty();
+        }
+        for (Driver driver : drivers) {
+            assignment.get(driver).forEach(driver::addDelivery);
+        }
+        return Optional.of(drivers);
+    }
+
+    /**
+     * Hash of everything clustering looks at: each delivery's id, location and driver override, and each
+     * driver's id, name and location. Computed from the values' text, so it is the same in every JVM.
+     */
+    private static String fingerprint(List<Delivery> deliveries, List<Driver> drivers) {
+        StringBuilder text = new StringBuilder();
+        for (Delivery delivery : deliveries) {
+            text.append(delivery.id()).append('\0').append(delivery.latitude()).append('\0')
+                    .append(delivery.longitude()).append('\0').append(delivery.assignToDriverName()).append('\n');
+        }
+        text.append('\n');
+        for (Driver driver : drivers) {
+            text.append(driver.getId()).append('\0').append(driver.getName()).append('\0')
+                    .append(driver.getLatitude()).append('\0').append(driver.getLongitude()).append('\n');
+        }
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(text.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
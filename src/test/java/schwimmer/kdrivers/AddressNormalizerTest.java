@@ -0,0 +1,31 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AddressNormalizerTest {
+
+    @Test
+    void normalize_canonicalizesCasePunctuationAndWhitespace() {
+        assertEquals("123 main st new york ny", AddressNormalizer.normalize("  123 Main St.,  New York,NY "));
+    }
+
+    @Test
+    void normalize_abbreviatesStreetTypesAndDirections() {
+        assertEquals(AddressNormalizer.normalize("456 N Oak Ave, Boston MA"),
+                AddressNormalizer.normalize("456 North Oak Avenue Boston MA"));
+        assertEquals(AddressNormalizer.normalize("123 Main St"),
+                AddressNormalizer.normalize("123 MAIN STREET"));
+    }
+
+    @Test
+    void normalize_keepsDistinctAddressesDistinct() {
+        assertNotEquals(AddressNormalizer.normalize("123 Main St"), AddressNormalizer.normalize("125 Main St"));
+    }
+
+    @Test
+    void normalize_returnsEmptyForPunctuationOnly() {
+        assertEquals("", AddressNormalizer.normalize(" , . "));
+    }
+}
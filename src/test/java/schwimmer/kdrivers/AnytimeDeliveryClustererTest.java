@@ -0,0 +1,66 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnytimeDeliveryClustererTest {
+
+    @Test
+    void expiredDeadline_stillReturnsAFeasibleAssignment() {
+        SyntheticDeliveries day = new SyntheticDeliveries(9, 20000, 1000, SyntheticDeliveries.Distribution.HEAVY_OVERRIDE);
+        List<AnytimeDeliveryClusterer.Progress> reports = new CopyOnWriteArrayList<>();
+        AnytimeDeliveryClusterer clusterer = new AnytimeDeliveryClusterer(30, Duration.ofMillis(1), null, reports::add);
+
+        long start = System.nanoTime();
+        List<Driver> result = clusterer.clusterAndAssign(day.deliveries(), day.drivers());
+        Duration took = Duration.ofNanos(System.nanoTime() - start);
+
+        // Only the first assignment is built past the deadline; k-means on this day would take far longer
+        assertTrue(took.compareTo(Duration.ofSeconds(10)) < 0, "took " + took);
+        int assigned = 0;
+        for (Driver driver : result) {
+            assigned += driver.getAssignedDeliveries().size();
+            long free = driver.getAssignedDeliveries().stream().filter(d -> d.assignToDriverName() == null).count();
+            assertTrue(driver.getAssignedDeliveries().size() <= 30 || free == 0, driver.getName());
+            for (Delivery delivery : driver.getAssignedDeliveries()) {
+                if (delivery.assignToDriverName() != null) {
+                    assertEquals(delivery.assignToDriverName(), driver.getName());
+                }
+            }
+        }
+        assertEquals(day.deliveries().size(), assigned);
+        assertEquals(0, reports.get(0).iterations());
+        assertTrue(reports.get(0).improved());
+    }
+
+    @Test
+    void smallDay_stopsOnceStartsStopImprovingAndNeverReportsWorse() {
+        SyntheticDeliveries day = new SyntheticDeliveries(4, 300, 30, SyntheticDeliveries.Distribution.CLUSTERED_CITY);
+        List<AnytimeDeliveryClusterer.Progress> reports = new CopyOnWriteArrayList<>();
+        AnytimeDeliveryClusterer clusterer = new AnytimeDeliveryClusterer(15, Duration.ofMinutes(5), null, reports::add);
+
+        long start = System.nanoTime();
+        List<Driver> result = clusterer.clusterAndAssign(day.deliveries(), day.drivers());
+        Duration took = Duration.ofNanos(System.nanoTime() - start);
+
+        assertTrue(took.compareTo(Duration.ofMinutes(1)) < 0, "took " + took);
+        AnytimeDeliveryClusterer.Progress last = reports.get(reports.size() - 1);
+        assertTrue(last.iterations() >= 16, "starts " + last.iterations());
+        for (int r = 1; r < reports.size(); r++) {
+            assertTrue(reports.get(r).objective() <= reports.get(r - 1).objective());
+        }
+        assertEquals(300, result.stream().mapToInt(driver -> driver.getAssignedDeliveries().size()).sum());
+    }
+
+    @Test
+    void tooManyDeliveries_throws() {
+        SyntheticDeliveries day = new SyntheticDeliveries(1, 100, 5, SyntheticDeliveries.Distribution.UNIFORM);
+        assertThrows(IllegalArgumentException.class,
+                () -> new AnytimeDeliveryClusterer(Duration.ofSeconds(1)).clusterAndAssign(day.deliveries(), day.drivers()));
+    }
+}
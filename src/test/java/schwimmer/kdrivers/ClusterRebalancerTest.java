@@ -0,0 +1,94 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+
+class ClusterRebalancerTest {
+
+    @Test
+    void rebalance_movesFarthestDeliveriesToNearestDriverWithRoom() {
+        List<Driver> drivers = List.of(driver("Driver", 0, 0), driver("Driver", 0, 10), driver("Driver", 0, 3));
+        // near, middle, far, farthest
+        List<Delivery> deliveries = List.of(delivery("D", 0, 1), delivery("D", 0, 2), delivery("D", 0, 4),
+                delivery("D", 0, 8));
+        Clusters clusters = clusters(3, new int[]{0, 1, 2, 3});
+
+        rebalance(new ClusterRebalancer(2, 0, i -> true), clusters, deliveries, drivers);
+
+        assertEquals(List.of(0, 1), members(clusters, 0));
+        assertEquals(List.of(3), members(clusters, 1));
+        assertEquals(List.of(2), members(clusters, 2));
+    }
+
+    @Test
+    void rebalance_keepsUnmovableDeliveriesAndPrefersEarlierOnTies() {
+        // Symmetric about the origin so the projected distances tie exactly
+        List<Driver> drivers = List.of(driver("Driver", 0, 0), driver("Driver", 0, 6));
+        // pinned, first, second
+        List<Delivery> deliveries = List.of(delivery("D", 0, -6), delivery("D", 0, -3), delivery("D", 0, 3));
+        Clusters clusters = clusters(2, new int[]{0, 1, 2});
+
+        rebalance(new ClusterRebalancer(2, 0, i -> i != 0), clusters, deliveries, drivers);
+
+        assertEquals(List.of(0, 2), members(clusters, 0));
+        assertEquals(List.of(1), members(clusters, 1));
+    }
+
+    @Test
+    void rebalance_balanceWeightPrefersLessLoadedRecipient() {
+        List<Driver> drivers = List.of(driver("Driver", 0, 0), driver("Driver", 0, 4), driver("Driver", 0, -5));
+        List<Delivery> deliveries = List.of(delivery("D", 0, 0), delivery("D", 0, 0), delivery("D", 0, 0),
+                delivery("D", 0, 0.5), delivery("D", 0, 4), delivery("D", 0, 4));
+        Clusters clusters = clusters(3, new int[]{0, 1, 2, 3}, new int[]{4, 5});
+
+        rebalance(new ClusterRebalancer(5, 0.5, i -> true), clusters, deliveries, drivers);
+        assertEquals(4, clusters.size(0));
+
+        rebalance(new ClusterRebalancer(3, 0.5, i -> true), clusters, deliveries, drivers);
+        // 3.5 * (1 + 0.5 * 2) = 7 to the loaded driver vs 5.5 * 1 to the empty one
+        assertEquals(List.of(3), members(clusters, 2));
+    }
+
+    @Test
+    void rebalance_leavesOverflowWhenNoClusterHasRoom() {
+        List<Driver> drivers = List.of(driver("Driver", 0, 0), driver("Driver", 0, 1));
+        List<Delivery> deliveries = List.of(delivery("D", 0, 0), delivery("D", 0, 0), delivery("D", 0, 0),
+                delivery("D", 0, 0), delivery("D", 0, 1));
+        Clusters clusters = clusters(2, new int[]{0, 1, 2, 3}, new int[]{4});
+
+        rebalance(new ClusterRebalancer(2, 0, i -> true), clusters, deliveries, drivers);
+
+        assertEquals(3, clusters.size(0));
+        assertEquals(2, clusters.size(1));
+    }
+
+    private static void rebalance(ClusterRebalancer rebalancer, Clusters clusters, List<Delivery> deliveries,
+                                  List<Driver> drivers) {
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+        rebalancer.rebalance(clusters, new DriverDistances(kernel, new DriverIndex(kernel)));
+    }
+
+    private static Clusters clusters(int count, int[]... members) {
+        Clusters clusters = new Clusters(count);
+        for (int c = 0; c < members.length; c++) {
+            for (int d : members[c]) {
+                clusters.add(c, d);
+            }
+        }
+        return clusters;
+    }
+
+    private static List<Integer> members(Clusters clusters, int cluster) {
+        List<Integer> members = new ArrayList<>();
+        for (int j = 0; j < clusters.size(cluster); j++) {
+            members.add(clusters.get(cluster, j));
+        }
+        return members;
+    }
+}
@@ -0,0 +1,75 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+
+class ClustererEvaluationTest {
+
+    private static final double KM_PER_DEGREE = Math.toRadians(6371.0088);
+
+    @Test
+    void measure_reportsDistancesDiameterImbalanceAndDisplacedDeliveries() {
+        Driver west = driver("West", 0, 0);
+        Driver east = driver("East", 0, 0.1);
+        Delivery a = delivery("A", 0, 0.01, null);
+        Delivery b = delivery("B", 0, 0.03, null);
+        Delivery c = delivery("C", 0, 0.09, null);
+        // Closer to East, but pinned to West: not counted as displaced
+        Delivery pinned = delivery("P", 0, 0.08, "West");
+        west.addDelivery(a);
+        west.addDelivery(b);
+        west.addDelivery(pinned);
+        east.addDelivery(c);
+        // Moved away from its nearest driver
+        Delivery moved = delivery("M", 0, 0.02, null);
+        east.addDelivery(moved);
+
+        ClustererEvaluation.Result result = ClustererEvaluation.measure("set", "test",
+                List.of(a, b, c, pinned, moved), List.of(west, east), 5, 0);
+
+        assertEquals((0.01 + 0.03 + 0.08 + 0.01 + 0.08) * KM_PER_DEGREE, result.totalKm(), 0.01);
+        assertEquals(0.08 * KM_PER_DEGREE, result.maxKm(), 0.01);
+        assertEquals(0.07 * KM_PER_DEGREE, result.maxDiameterKm(), 0.01);
+        assertEquals(3 / 2.5, result.loadImbalance(), 1e-9);
+        assertEquals(1, result.displaced());
+        assertEquals("", result.error());
+    }
+
+    @Test
+    void diameter_isTheWidestPairOfPoints() {
+        double[] xs = {0, 1, 2, 1, 1, 0.5};
+        double[] ys = {0, 1, 0, -1, 0, 0.2};
+        assertEquals(2.0, ClustererEvaluation.diameter(xs, ys), 1e-9);
+        assertEquals(0.0, ClustererEvaluation.diameter(new double[] {3}, new double[] {4}), 1e-9);
+        assertEquals(5.0, ClustererEvaluation.diameter(new double[] {0, 3}, new double[] {0, 4}), 1e-9);
+    }
+
+    @Test
+    void evaluate_runsEveryClustererAndWritesCsv(@TempDir Path tempDir) throws Exception {
+        SyntheticDeliveries day = new SyntheticDeliveries(7, 300, 30, SyntheticDeliveries.Distribution.CLUSTERED_CITY);
+        List<ClustererEvaluation.Result> results = ClustererEvaluation.evaluate(
+                List.of(new ClustererEvaluation.Dataset("small", day.deliveries(), day::drivers)));
+
+        assertEquals(ClustererEvaluation.clusterers(300, 30).keySet(),
+                results.stream().map(ClustererEvaluation.Result::clusterer).collect(Collectors.toSet()));
+        for (ClustererEvaluation.Result result : results) {
+            assertEquals("", result.error(), result.clusterer());
+            assertTrue(result.totalKm() > 0);
+        }
+
+        Path csv = tempDir.resolve("evaluation.csv");
+        ClustererEvaluation.writeCsv(results, csv);
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals(results.size() + 1, lines.size());
+        assertTrue(lines.get(0).startsWith("dataset,clusterer,deliveries,drivers,wall_ms"));
+    }
+}
@@ -0,0 +1,102 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContractionHierarchyTest {
+
+    @Test
+    void distances_matchDijkstraOnRandomRoadLikeGraph() {
+        // 40x40 grid with random weights, some one-way streets and a few missing blocks
+        Random random = new Random(42);
+        int side = 40;
+        int n = side * side;
+        List<int[]> edges = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int v = r * side + c;
+                int[] neighbours = {c + 1 < side ? v + 1 : -1, r + 1 < side ? v + side : -1};
+                for (int u : neighbours) {
+                    if (u < 0 || random.nextInt(10) == 0) {
+                        continue;
+                    }
+                    double w = 1 + random.nextInt(20);
+                    int kind = random.nextInt(6);
+                    if (kind != 0) {
+                        edges.add(new int[] {v, u});
+                        weights.add(w);
+                    }
+                    if (kind != 1) {
+                        edges.add(new int[] {u, v});
+                        weights.add(w);
+                    }
+                }
+            }
+        }
+        int[] from = edges.stream().mapToInt(e -> e[0]).toArray();
+        int[] to = edges.stream().mapToInt(e -> e[1]).toArray();
+        double[] weight = weights.stream().mapToDouble(Double::doubleValue).toArray();
+
+        ContractionHierarchy hierarchy = new ContractionHierarchy(n, from, to, weight);
+
+        int[] targets = random.ints(50, 0, n).toArray();
+        for (int q = 0; q < 30; q++) {
+            int source = random.nextInt(n);
+            double[] expected = dijkstra(n, from, to, weight, source);
+            double[] actual = hierarchy.distances(source, targets);
+            for (int t = 0; t < targets.length; t++) {
+                assertEquals(expected[targets[t]], actual[t], 1e-9, "from " + source + " to " + targets[t]);
+            }
+            int target = random.nextInt(n);
+            assertEquals(expected[target], hierarchy.distance(source, target), 1e-9);
+        }
+    }
+
+    @Test
+    void distance_isInfiniteWithoutPathAndZeroToSelf() {
+        // 0 -> 1 -> 2, and 3 only reachable from itself
+        ContractionHierarchy hierarchy = new ContractionHierarchy(4,
+                new int[] {0, 1}, new int[] {1, 2}, new double[] {2.5, 1.5});
+
+        assertEquals(4.0, hierarchy.distance(0, 2), 1e-9);
+        assertEquals(Double.POSITIVE_INFINITY, hierarchy.distance(2, 0));
+        assertEquals(Double.POSITIVE_INFINITY, hierarchy.distance(0, 3));
+        assertEquals(0.0, hierarchy.distance(3, 3));
+    }
+
+    @Test
+    void constructor_rejectsNegativeWeights() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ContractionHierarchy(2, new int[] {0}, new int[] {1}, new double[] {-1}));
+    }
+
+    private static double[] dijkstra(int n, int[] from, int[] to, double[] weight, int source) {
+        double[] dist = new double[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        queue.add(new double[] {0, source});
+        while (!queue.isEmpty()) {
+            double[] top = queue.poll();
+            int v = (int) top[1];
+            if (top[0] > dist[v]) {
+                continue;
+            }
+            for (int e = 0; e < from.length; e++) {
+                if (from[e] == v && dist[v] + weight[e] < dist[to[e]]) {
+                    dist[to[e]] = dist[v] + weight[e];
+                    queue.add(new double[] {dist[to[e]], to[e]});
+                }
+            }
+        }
+        return dist;
+    }
+}
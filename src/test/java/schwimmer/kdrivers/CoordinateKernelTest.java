@@ -0,0 +1,35 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+
+class CoordinateKernelTest {
+
+    @Test
+    void distances_areInKilometresWithEqualScaleOnBothAxes() {
+        // One degree of longitude at 40.7N is about 84.4 km; one degree of latitude about 111.2 km
+        List<Delivery> deliveries = List.of(delivery("D", 40.7, -74.0), delivery("D", 40.7, -73.0),
+                delivery("D", 41.7, -74.0));
+        Driver driver = new Driver("DRV1", "Driver");
+        driver.setCoordinates(40.7, -74.0);
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, List.of(driver));
+
+        assertEquals(0, kernel.deliveryToDriver(0, 0), 1e-9);
+        assertEquals(84.4, kernel.deliveryToDriver(1, 0), 0.5);
+        assertEquals(111.2, kernel.deliveryToDriver(2, 0), 0.5);
+    }
+
+    @Test
+    void driversWithoutCoordinatesAreMarkedMissing() {
+        Driver missing = new Driver("DRV1", "Missing");
+        missing.setCoordinates(Double.NaN, Double.NaN);
+        CoordinateKernel kernel = new CoordinateKernel(List.of(delivery("D", 1, 1)), List.of(missing));
+
+        assertFalse(kernel.hasDriver(0));
+        assertEquals(0, kernel.deliveryX(0), 1e-9);
+    }
+}
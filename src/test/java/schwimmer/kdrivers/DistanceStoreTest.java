@@ -0,0 +1,226 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistanceStoreTest {
+
+    @Test
+    void entriesSurviveReopeningForTheSameModelOnly(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("distances.dat");
+        long from = DistanceStore.key(40.7128, -74.0060);
+        long[] to = {DistanceStore.key(40.7306, -73.9352), DistanceStore.key(40.6782, -73.9442)};
+        try (DistanceStore store = new DistanceStore(file, 100, 1)) {
+            store.put(from, to, new double[] {612.5, Double.POSITIVE_INFINITY});
+        }
+
+        try (DistanceStore store = new DistanceStore(file, 100, 1)) {
+            double[] costs = new double[3];
+            boolean[] found = store.get(from, new long[] {to[0], to[1], DistanceStore.key(0, 0)}, costs);
+            assertArrayEquals(new boolean[] {true, true, false}, found);
+            assertEquals(612.5, costs[0], 1e-3);
+            assertEquals(Double.POSITIVE_INFINITY, costs[1]);
+            assertEquals(0.0, costs[2]);
+        }
+
+        try (DistanceStore store = new DistanceStore(file, 100, 2)) {
+            assertEquals(0, store.size());
+            assertFalse(store.get(from, to, new double[2])[0]);
+        }
+    }
+
+    @Test
+    void put_evictsPairsFromTheLeastRecentlyUsedRuns(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("distances.dat");
+        long from = DistanceStore.key(1, 1);
+        long[] old = keys(0, 50);
+        long[] recent = keys(1000, 40);
+        try (DistanceStore store = new DistanceStore(file, 100, 1)) {
+            store.put(from, old, new double[50]);
+        }
+        try (DistanceStore store = new DistanceStore(file, 100, 1)) {
+            store.put(from, recent, new double[40]);
+        }
+        try (DistanceStore store = new DistanceStore(file, 100, 1)) {
+            // Use the recent pairs again in a later run, then overflow the store
+            store.get(from, recent, new double[40]);
+            store.put(from, keys(2000, 30), new double[30]);
+
+            assertTrue(store.size() <= 100, "size " + store.size());
+            for (boolean found : store.get(from, recent, new double[40])) {
+                assertTrue(found);
+            }
+            int oldFound = 0;
+            for (boolean found : store.get(from, old, new double[50])) {
+                oldFound += found ? 1 : 0;
+            }
+            assertTrue(oldFound < 50, "no old pairs were evicted");
+        }
+    }
+
+    @Test
+    void anotherModel_replacesTheFileAndInstancesOfTheOldOneStopUsingIt(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("distances.dat");
+        long from = DistanceStore.key(1, 1);
+        long[] to = keys(0, 1);
+        try (DistanceStore stale = new DistanceStore(file, 100, 1)) {
+            stale.put(from, to, new double[] {10});
+            // As another process would, open the file for a new network while the old instance is still open
+            try (DistanceStore current = new DistanceStore(file, 100, 2)) {
+                double[] costs = new double[1];
+                assertFalse(stale.get(from, to, costs)[0]);
+                assertEquals(0.0, costs[0]);
+
+                current.put(from, to, new double[] {20});
+                stale.put(from, to, new double[] {30});
+                assertTrue(current.get(from, to, costs)[0]);
+                assertEquals(20, costs[0], 1e-3);
+                assertEquals(1, current.size());
+            }
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void holderOfAReplacedFile_seesItSupersededAndReopensThePath(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("distances.dat");
+        long from = DistanceStore.key(1, 1);
+        long[] to = keys(0, 1);
+        try (DistanceStore holder = new DistanceStore(file, 100, 1);
+             FileChannel oldFile = FileChannel.open(file, StandardOpenOption.READ)) {
+            holder.put(from, to, new double[] {10});
+            long oldSize = oldFile.size();
+
+            // Another network takes the path over, then this network's file is rebuilt in its place
+            new DistanceStore(file, 100, 2).close();
+            try (DistanceStore current = new DistanceStore(file, 100, 1)) {
+                current.put(from, to, new double[] {20});
+
+                ByteBuffer magic = ByteBuffer.allocate(4);
+                oldFile.read(magic, 0);
+                assertEquals("KDXS", new String(magic.array(), StandardCharsets.US_ASCII));
+                assertEquals(oldSize, oldFile.size());
+
+                double[] costs = new double[1];
+                assertTrue(holder.get(from, to, costs)[0]);
+                assertEquals(20, costs[0], 1e-3);
+                assertEquals(1, holder.size());
+            }
+        }
+    }
+
+    @Test
+    void open_sharesOneInstancePerFileUntilTheLastClose(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("distances.dat");
+        long from = DistanceStore.key(1, 1);
+        DistanceStore first = DistanceStore.open(file, 100, 1);
+        DistanceStore second = DistanceStore.open(tempDir.resolve(".").resolve("distances.dat"), 100, 1);
+        assertSame(first, second);
+        assertThrows(IOException.class, () -> DistanceStore.open(file, 100, 2));
+
+        first.put(from, keys(0, 1), new double[] {10});
+        first.close();
+        assertTrue(second.get(from, keys(0, 1), new double[1])[0]);
+        second.close();
+
+        try (DistanceStore reopened = DistanceStore.open(file, 100, 1)) {
+            assertNotSame(first, reopened);
+            assertTrue(reopened.get(from, keys(0, 1), new double[1])[0]);
+        }
+    }
+
+    @Test
+    void get_neverSeesATornTableWhileAnotherThreadWritesAndEvicts(@TempDir Path tempDir) throws Exception {
+        long from = DistanceStore.key(1, 1);
+        try (DistanceStore store = new DistanceStore(tempDir.resolve("distances.dat"), 100, 1)) {
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int round = 0; round < 200; round++) {
+                        int start = round * 37 % 500;
+                        store.put(from, keys(start, 40), costs(start, 40));
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                } finally {
+                    done.set(true);
+                }
+            });
+            writer.start();
+            long[] to = keys(0, 500);
+            double[] expected = costs(0, 500);
+            int found = 0;
+            do {
+                double[] read = new double[500];
+                boolean[] present = store.get(from, to, read);
+                for (int t = 0; t < to.length; t++) {
+                    if (present[t]) {
+                        assertEquals(expected[t], read[t], 1e-3);
+                        found++;
+                    }
+                }
+            } while (!done.get());
+            writer.join();
+            assertNull(failure.get());
+            assertTrue(store.size() <= 100, "size " + store.size());
+            assertTrue(found > 0);
+        }
+    }
+
+    @Test
+    void storedModel_computesOnlyMissingPairs(@TempDir Path tempDir) throws Exception {
+        List<Integer> computed = new ArrayList<>();
+        DistanceModel counting = (fromLat, fromLon, toLats, toLons) -> {
+            computed.add(toLats.length);
+            double[] costs = new double[toLats.length];
+            for (int t = 0; t < costs.length; t++) {
+                costs[t] = Math.abs(toLats[t] - fromLat) * 1000;
+            }
+            return costs;
+        };
+        try (DistanceStore store = new DistanceStore(tempDir.resolve("distances.dat"), 100, 1)) {
+            DistanceModel model = new StoredDistanceModel(counting, store);
+
+            double[] first = model.costs(0, 0, new double[] {1, 2}, new double[] {0, 0});
+            double[] second = model.costs(0, 0, new double[] {2, 3, 1}, new double[] {0, 0, 0});
+
+            assertArrayEquals(new double[] {1000, 2000}, first);
+            assertArrayEquals(new double[] {2000, 3000, 1000}, second);
+            assertEquals(List.of(2, 1), computed);
+        }
+    }
+
+    private static long[] keys(int start, int count) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = DistanceStore.key(0.001 * (start + i), 0);
+        }
+        return keys;
+    }
+
+    private static double[] costs(int start, int count) {
+        double[] costs = new double[count];
+        for (int i = 0; i < count; i++) {
+            costs[i] = start + i;
+        }
+        return costs;
+    }
+}
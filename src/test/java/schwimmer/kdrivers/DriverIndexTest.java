@@ -0,0 +1,96 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DriverIndexTest {
+
+    @Test
+    void nearest_matchesLinearScanIncludingTies() {
+        Random random = new Random(42);
+        // Coarse grid so many drivers share locations and distances tie
+        CoordinateKernel kernel = kernel(randomDrivers(random, 500, 20));
+        DriverIndex index = new DriverIndex(kernel);
+
+        for (int q = 0; q < 2_000; q++) {
+            double x = kernel.projectX(random.nextInt(40) / 2.0);
+            double y = kernel.projectY(random.nextInt(40) / 2.0);
+            assertEquals(linearNearest(kernel, x, y, i -> true), index.nearest(x, y));
+
+            int excluded = random.nextInt(kernel.driverCount());
+            IntPredicate accept = i -> i % 3 != 0 && i != excluded;
+            assertEquals(linearNearest(kernel, x, y, accept), index.nearest(x, y, accept));
+        }
+    }
+
+    @Test
+    void nearest_skipsDriversWithoutCoordinates() {
+        Driver missing = new Driver("DRV1", "Missing");
+        missing.setCoordinates(Double.NaN, Double.NaN);
+        Driver present = new Driver("DRV2", "Present");
+        present.setCoordinates(10, 10);
+
+        DriverIndex index = new DriverIndex(kernel(List.of(missing, present)));
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.nearest(0, 0));
+        assertEquals(-1, index.nearest(0, 0, i -> i != 1));
+        assertEquals(-1, new DriverIndex(kernel(List.of())).nearest(0, 0));
+    }
+
+    @Test
+    void kNearest_returnsClosestDriversInOrder() {
+        Random random = new Random(7);
+        CoordinateKernel kernel = kernel(randomDrivers(random, 300, 15));
+        DriverIndex index = new DriverIndex(kernel);
+
+        for (int q = 0; q < 500; q++) {
+            double x = kernel.projectX(random.nextDouble() * 15);
+            double y = kernel.projectY(random.nextDouble() * 15);
+            int k = 1 + random.nextInt(20);
+            int[] expected = IntStream.range(0, kernel.driverCount()).boxed()
+                    .sorted(Comparator.<Integer>comparingDouble(i -> kernel.driverToPoint(i, x, y))
+                            .thenComparingInt(i -> i))
+                    .limit(k)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            assertArrayEquals(expected, index.kNearest(x, y, k));
+        }
+        assertEquals(300, index.kNearest(0, 0, 1_000).length);
+    }
+
+    private static List<Driver> randomDrivers(Random random, int count, int gridSize) {
+        List<Driver> drivers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Driver driver = new Driver("DRV" + i, "Driver " + i);
+            driver.setCoordinates(random.nextInt(gridSize), random.nextInt(gridSize));
+            drivers.add(driver);
+        }
+        return drivers;
+    }
+
+    private static CoordinateKernel kernel(List<Driver> drivers) {
+        return new CoordinateKernel(List.of(), drivers);
+    }
+
+    private static int linearNearest(CoordinateKernel kernel, double x, double y, IntPredicate accept) {
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+        for (int i = 0; i < kernel.driverCount(); i++) {
+            double dist = kernel.driverToPoint(i, x, y);
+            if (accept.test(i) && dist < bestDist) {
+                bestDist = dist;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
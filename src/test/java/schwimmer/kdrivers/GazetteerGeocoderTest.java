@@ -0,0 +1,68 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GazetteerGeocoderTest {
+
+    private static final String EXTRACT = """
+            LON,LAT,NUMBER,STREET,UNIT,CITY,DISTRICT,REGION,POSTCODE
+            -74.0060,40.7128,123,Main Street,,New York,,NY,10001
+            -71.0589,42.3601,123,Main Street,,Boston,,MA,02108
+            -73.9857,40.7484,350,Fifth Avenue,,New York,,NY,10118
+            -87.6298,41.8781,1,Unique Road,,,,IL,
+            """;
+
+    @Test
+    void geocode_matchesNormalizedStreetAndCity(@TempDir Path tempDir) throws Exception {
+        GazetteerGeocoder geocoder = load(tempDir);
+
+        var result = geocoder.geocode("123 Main St., Boston MA");
+
+        assertTrue(result.fromCache());
+        var coords = result.coordinates().orElseThrow();
+        assertEquals(42.3601, coords.latitude(), 1e-7);
+        assertEquals(-71.0589, coords.longitude(), 1e-7);
+        assertEquals(40.7484,
+                geocoder.geocode("350 Fifth Ave, New York NY").coordinates().orElseThrow().latitude(), 1e-7);
+    }
+
+    @Test
+    void geocode_acceptsUniqueStreetWithoutCity(@TempDir Path tempDir) throws Exception {
+        GazetteerGeocoder geocoder = load(tempDir);
+
+        var coords = geocoder.geocode("1 Unique Rd, Chicago").coordinates().orElseThrow();
+
+        assertEquals(41.8781, coords.latitude(), 1e-7);
+    }
+
+    @Test
+    void geocode_returnsEmpty_forUnknownOrAmbiguousAddress(@TempDir Path tempDir) throws Exception {
+        GazetteerGeocoder geocoder = load(tempDir);
+
+        assertTrue(geocoder.geocode("999 Main St, Boston MA").coordinates().isEmpty());
+        assertTrue(geocoder.geocode("123 Main St, Springfield").coordinates().isEmpty());
+        assertTrue(geocoder.geocode("Main St").coordinates().isEmpty());
+    }
+
+    @Test
+    void load_throwsWhenRequiredColumnsMissing(@TempDir Path tempDir) throws Exception {
+        Path csv = tempDir.resolve("bad.csv");
+        Files.writeString(csv, "LON,LAT,STREET\n1,2,Main St\n");
+
+        assertThrows(IllegalArgumentException.class, () -> GazetteerGeocoder.load(csv));
+    }
+
+    private static GazetteerGeocoder load(Path tempDir) throws Exception {
+        Path csv = tempDir.resolve("addresses.csv");
+        Files.writeString(csv, EXTRACT);
+        GazetteerGeocoder geocoder = GazetteerGeocoder.load(csv);
+        assertEquals(4, geocoder.size());
+        return geocoder;
+    }
+}
@@ -0,0 +1,134 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeocodeStoreTest {
+
+    @Test
+    void get_returnsStoredCoordinates_forNormalizedQuery(@TempDir Path tempDir) throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        try (GeocodeStore store = new GeocodeStore(tempDir.resolve("geocodes.dat"), Duration.ofDays(1),
+                Duration.ofDays(1), 100, clock::get)) {
+            store.put("123 Main St,  New York NY", new Geocoder.Coordinates(40.7128, -74.0060));
+
+            var coords = store.get("  123 MAIN ST, new york ny ").orElseThrow().coordinates().orElseThrow();
+            assertEquals(40.7128, coords.latitude(), 1e-7);
+            assertEquals(-74.0060, coords.longitude(), 1e-7);
+            assertTrue(store.get("456 Oak Ave").isEmpty());
+        }
+    }
+
+    @Test
+    void get_ignoresEntriesOlderThanTtl(@TempDir Path tempDir) throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        try (GeocodeStore store = new GeocodeStore(tempDir.resolve("geocodes.dat"), Duration.ofMillis(500),
+                Duration.ofMillis(500), 100, clock::get)) {
+            store.put("123 Main St", new Geocoder.Coordinates(1, 2));
+
+            clock.addAndGet(501);
+
+            assertTrue(store.get("123 Main St").isEmpty());
+        }
+    }
+
+    @Test
+    void entriesSurviveReopening(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("geocodes.dat");
+        try (GeocodeStore store = new GeocodeStore(file, Duration.ofDays(1), Duration.ofDays(1), 100,
+                System::currentTimeMillis)) {
+            for (int i = 0; i < 5_000; i++) {
+                store.put(i + " Main St", new Geocoder.Coordinates(i / 1000.0, -i / 1000.0));
+            }
+        }
+        try (GeocodeStore store = new GeocodeStore(file, Duration.ofDays(1), Duration.ofDays(1), 100_000,
+                System::currentTimeMillis)) {
+            assertTrue(store.size() <= 100);
+            var coords = store.get("4999 Main St").orElseThrow().coordinates().orElseThrow();
+            assertEquals(4.999, coords.latitude(), 1e-7);
+        }
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsedEntriesWhenFull(@TempDir Path tempDir) throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        try (GeocodeStore store = new GeocodeStore(tempDir.resolve("geocodes.dat"), Duration.ofDays(1),
+                Duration.ofDays(1), 3, clock::get)) {
+            store.put("a", new Geocoder.Coordinates(1, 1));
+            clock.incrementAndGet();
+            store.put("b", new Geocoder.Coordinates(2, 2));
+            clock.incrementAndGet();
+            store.put("c", new Geocoder.Coordinates(3, 3));
+            clock.incrementAndGet();
+            store.get("a");
+            clock.incrementAndGet();
+
+            store.put("d", new Geocoder.Coordinates(4, 4));
+
+            assertTrue(store.get("a").isPresent());
+            assertTrue(store.get("b").isEmpty());
+            assertTrue(store.get("d").isPresent());
+        }
+    }
+
+    @Test
+    void compact_dropsReplacedRecords(@TempDir Path tempDir) throws Exception {
+        try (GeocodeStore store = new GeocodeStore(tempDir.resolve("geocodes.dat"), Duration.ofDays(1),
+                Duration.ofDays(1), 10, System::currentTimeMillis)) {
+            for (int i = 0; i < 100; i++) {
+                store.put("same address", new Geocoder.Coordinates(i, i));
+            }
+
+            store.compact();
+
+            assertEquals(1, store.size());
+            assertEquals(99, store.get("same address").orElseThrow().coordinates().orElseThrow().latitude(), 1e-7);
+        }
+    }
+
+    @Test
+    void putNotFound_isRememberedForItsOwnTtl(@TempDir Path tempDir) throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        try (GeocodeStore store = new GeocodeStore(tempDir.resolve("geocodes.dat"), Duration.ofDays(1),
+                Duration.ofMillis(100), 100, clock::get)) {
+            store.putNotFound("nowhere");
+            store.put("somewhere", new Geocoder.Coordinates(1, 2));
+
+            var result = store.get("nowhere").orElseThrow();
+            assertTrue(result.coordinates().isEmpty());
+            assertFalse(result.failed());
+
+            clock.addAndGet(101);
+
+            assertTrue(store.get("nowhere").isEmpty());
+            assertTrue(store.get("somewhere").isPresent());
+        }
+    }
+
+    @Test
+    void open_sharesOneInstancePerFileUntilTheLastClose(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("geocodes.dat");
+        GeocodeStore first = GeocodeStore.open(file, Duration.ofDays(1), Duration.ofDays(1), 100);
+        GeocodeStore second = GeocodeStore.open(tempDir.resolve(".").resolve("geocodes.dat"), Duration.ofDays(1),
+                Duration.ofDays(1), 100);
+        assertSame(first, second);
+        assertThrows(IllegalArgumentException.class,
+                () -> GeocodeStore.open(file, Duration.ofDays(2), Duration.ofDays(1), 100));
+
+        first.put("123 Main St", new Geocoder.Coordinates(1, 2));
+        first.close();
+        assertTrue(second.get("123 Main St").isPresent());
+        second.close();
+
+        try (GeocodeStore reopened = GeocodeStore.open(file, Duration.ofDays(1), Duration.ofDays(1), 100)) {
+            assertNotSame(first, reopened);
+            assertTrue(reopened.get("123 Main St").isPresent());
+        }
+    }
+}
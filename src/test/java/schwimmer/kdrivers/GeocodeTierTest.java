@@ -0,0 +1,249 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeocodeTierTest {
+
+    private static final Geocoder.GeocodeResult FOUND =
+            new Geocoder.GeocodeResult(Optional.of(new Geocoder.Coordinates(40.7, -74.0)), false);
+
+    @Test
+    void chain_writesSlowTierAnswerBackIntoFasterTiers() {
+        MemoGeocodeProvider memo = new MemoGeocodeProvider();
+        FakeProvider slow = new FakeProvider(FOUND);
+        Geocoder geocoder = new Geocoder(List.of(GeocodeTier.unlimited(memo), GeocodeTier.unlimited(slow)));
+
+        assertEquals(FOUND.coordinates(), geocoder.geocode("123 Main St").coordinates());
+        Geocoder.GeocodeResult second = geocoder.geocode("123  main st");
+
+        assertEquals(FOUND.coordinates(), second.coordinates());
+        assertTrue(second.fromCache());
+        assertEquals(1, slow.calls.get());
+    }
+
+    @Test
+    void chain_fallsThroughTiersWithoutAnAnswer() {
+        FakeProvider empty = new FakeProvider(null);
+        FakeProvider hanging = new FakeProvider(null);
+        hanging.pending = true;
+        FakeProvider last = new FakeProvider(FOUND);
+        Geocoder geocoder = new Geocoder(List.of(
+                GeocodeTier.unlimited(empty),
+                new GeocodeTier(hanging, Duration.ofMillis(50), 1),
+                GeocodeTier.unlimited(last)));
+
+        assertEquals(FOUND.coordinates(), geocoder.geocode("somewhere").coordinates());
+        assertEquals(1, empty.calls.get());
+        assertEquals(1, hanging.calls.get());
+        assertEquals(1, hanging.remembered.size());
+    }
+
+    @Test
+    void chain_looksAddressesUpAgainOnceTheStoreTtlHasPassed(@TempDir Path storeDir) throws Exception {
+        FakeProvider remote = new FakeProvider(FOUND);
+        Duration ttl = Duration.ofMillis(500);
+
+        geocodeWithEmptyMemo(storeDir, ttl, remote);
+        Geocoder.GeocodeResult stored = geocodeWithEmptyMemo(storeDir, ttl, remote);
+        assertTrue(stored.fromCache());
+        assertEquals(1, remote.calls.get());
+
+        Thread.sleep(ttl.toMillis() + 100);
+        Geocoder.GeocodeResult expired = geocodeWithEmptyMemo(storeDir, ttl, remote);
+        assertFalse(expired.fromCache());
+        assertEquals(2, remote.calls.get());
+    }
+
+    @Test
+    void close_releasesTheStoreForAGeocoderWithAnotherTtl(@TempDir Path storeDir) throws Exception {
+        List<GeocodeTier> remote = List.of(GeocodeTier.unlimited(new FakeProvider(FOUND)));
+        try (Geocoder first = Geocoder.withStore(storeDir, Duration.ofDays(1), remote)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> Geocoder.withStore(storeDir, Duration.ofDays(2), remote));
+        }
+        try (Geocoder second = Geocoder.withStore(storeDir, Duration.ofDays(2), remote)) {
+            assertEquals(FOUND.coordinates(), second.geocode("123 Main St").coordinates());
+        }
+    }
+
+    @Test
+    void chain_failsWhenNoTierAnswers() {
+        Geocoder geocoder = new Geocoder(List.of(GeocodeTier.unlimited(new FakeProvider(null))));
+
+        assertTrue(geocoder.geocode("nowhere").failed());
+    }
+
+    @Test
+    void tier_limitsConcurrentLookups() {
+        FakeProvider provider = new FakeProvider(FOUND);
+        provider.pending = true;
+        GeocodeTier tier = new GeocodeTier(provider, null, 2, Runnable::run);
+
+        List<CompletableFuture<Optional<Geocoder.GeocodeResult>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            lookups.add(tier.lookup("address " + i));
+        }
+        assertEquals(2, provider.calls.get());
+
+        provider.completeNext();
+        assertEquals(3, provider.calls.get());
+        assertTrue(lookups.get(0).isDone());
+
+        while (!provider.waiting.isEmpty()) {
+            provider.completeNext();
+        }
+        assertEquals(5, provider.calls.get());
+        assertTrue(lookups.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    void tier_timeoutReportsNoAnswerButKeepsSlotUntilProviderFinishes() {
+        FakeProvider provider = new FakeProvider(FOUND);
+        provider.pending = true;
+        GeocodeTier tier = new GeocodeTier(provider, Duration.ofMillis(20), 1, Runnable::run);
+
+        assertEquals(Optional.empty(), tier.lookup("first").join());
+        CompletableFuture<Optional<Geocoder.GeocodeResult>> second = tier.lookup("second");
+        assertEquals(1, provider.calls.get());
+
+        provider.completeNext();
+        assertEquals(2, provider.calls.get());
+        assertFalse(second.isDone());
+    }
+
+    @Test
+    void chain_remembersAnAnswerThatArrivesAfterTheTimeout() {
+        FakeProvider fast = new FakeProvider(null);
+        FakeProvider slow = new FakeProvider(FOUND);
+        slow.pending = true;
+        Geocoder geocoder = new Geocoder(List.of(
+                GeocodeTier.unlimited(fast),
+                new GeocodeTier(slow, Duration.ofMillis(20), 1)));
+
+        assertTrue(geocoder.geocode("late").failed());
+        assertEquals(List.of(), fast.remembered);
+
+        slow.completeNext();
+        assertEquals(List.of("late"), fast.remembered);
+    }
+
+    @Test
+    void tier_startsQueuedLookupsWithoutRecursing() throws Exception {
+        FakeProvider provider = new FakeProvider(FOUND);
+        provider.pending = true;
+        GeocodeTier tier = new GeocodeTier(provider, null, 1);
+        CompletableFuture<Optional<Geocoder.GeocodeResult>> first = tier.lookup("first");
+        provider.pending = false;
+
+        // Each queued lookup answers synchronously, so starting the next one inline would nest 20,000 deep
+        List<CompletableFuture<Optional<Geocoder.GeocodeResult>>> queued = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            queued.add(tier.lookup("address " + i));
+        }
+        provider.completeNext();
+
+        assertTrue(first.join().isPresent());
+        // A stack overflow inside a callback would leave lookups pending rather than fail
+        CompletableFuture.allOf(queued.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        assertEquals(20_001, provider.calls.get());
+    }
+
+    @Test
+    void geocodeAll_returnsResultsInInputOrder() {
+        FakeProvider provider = new FakeProvider(FOUND);
+        provider.pending = true;
+        Geocoder geocoder = new Geocoder(List.of(GeocodeTier.unlimited(provider)));
+
+        Map<String, CompletableFuture<Geocoder.GeocodeResult>> results =
+                geocoder.geocodeAll(List.of("3 Pine St", "1 Oak St", "2 Elm St"));
+
+        assertEquals(List.of("3 Pine St", "1 Oak St", "2 Elm St"), List.copyOf(results.keySet()));
+        while (!provider.waiting.isEmpty()) {
+            provider.completeNext();
+        }
+        results.values().forEach(result -> assertEquals(FOUND.coordinates(), result.join().coordinates()));
+    }
+
+    @Test
+    void geocodeAll_sendsOneRequestPerDistinctAddress() {
+        FakeProvider provider = new FakeProvider(FOUND);
+        provider.pending = true;
+        Geocoder geocoder = new Geocoder(List.of(GeocodeTier.unlimited(provider)));
+
+        Map<String, CompletableFuture<Geocoder.GeocodeResult>> results =
+                geocoder.geocodeAll(List.of("1 Oak St", "2 Elm St", "1 Oak St", "1 Oak St"));
+
+        assertEquals(2, results.size());
+        assertEquals(2, provider.calls.get());
+        provider.completeNext();
+        provider.completeNext();
+        assertEquals(FOUND.coordinates(), results.get("1 Oak St").join().coordinates());
+    }
+
+    /** Geocode with a new geocoder over the store in storeDir, so a repeat can only come from the store. */
+    private static Geocoder.GeocodeResult geocodeWithEmptyMemo(Path storeDir, Duration ttl, GeocodeProvider remote)
+            throws IOException {
+        try (Geocoder geocoder = Geocoder.withStore(storeDir, ttl, List.of(GeocodeTier.unlimited(remote)))) {
+            return geocoder.geocode("123 Main St");
+        }
+    }
+
+    /** Answers every lookup with a fixed result (null for no answer), immediately or when told to. */
+    private static class FakeProvider implements GeocodeProvider {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<CompletableFuture<Optional<Geocoder.GeocodeResult>>> waiting = new ArrayList<>();
+        final List<String> remembered = new CopyOnWriteArrayList<>();
+        private final Geocoder.GeocodeResult answer;
+        volatile boolean pending;
+
+        FakeProvider(Geocoder.GeocodeResult answer) {
+            this.answer = answer;
+        }
+
+        @Override
+        public String name() {
+            return "fake";
+        }
+
+        @Override
+        public CompletableFuture<Optional<Geocoder.GeocodeResult>> lookup(String address) {
+            calls.incrementAndGet();
+            if (!pending) {
+                return CompletableFuture.completedFuture(Optional.ofNullable(answer));
+            }
+            CompletableFuture<Optional<Geocoder.GeocodeResult>> future = new CompletableFuture<>();
+            synchronized (waiting) {
+                waiting.add(future);
+            }
+            return future;
+        }
+
+        @Override
+        public void remember(String address, Geocoder.GeocodeResult result) {
+            remembered.add(address);
+        }
+
+        void completeNext() {
+            CompletableFuture<Optional<Geocoder.GeocodeResult>> next;
+            synchronized (waiting) {
+                next = waiting.remove(0);
+            }
+            next.complete(Optional.ofNullable(answer));
+        }
+    }
+}
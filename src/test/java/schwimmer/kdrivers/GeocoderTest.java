@@ -7,10 +7,11 @@ import static org.junit.jupiter.api.Assertions.*;
 class GeocoderTest {
 
     @Test
-    void geocode_returnsCoordinates_forRealAddress() {
-        Geocoder geocoder = new Geocoder();
-
-        Geocoder.GeocodeResult result = geocoder.geocode("1600 Amphitheatre Parkway, Mountain View CA");
+    void geocode_returnsCoordinates_forRealAddress() throws Exception {
+        Geocoder.GeocodeResult result;
+        try (Geocoder geocoder = Geocoder.create(Geocoder.DEFAULT_STORE_TTL)) {
+            result = geocoder.geocode("1600 Amphitheatre Parkway, Mountain View CA");
+        }
 
         assertTrue(result.coordinates().isPresent());
         // Google HQ approximate location
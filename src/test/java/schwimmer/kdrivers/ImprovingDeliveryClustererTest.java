@@ -0,0 +1,82 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+import static schwimmer.kdrivers.TestFixtures.objective;
+
+class ImprovingDeliveryClustererTest {
+
+    private static final Duration BUDGET = Duration.ofSeconds(5);
+
+    @Test
+    void swapsDeliveriesBetweenFullNeighbours() {
+        Driver west = driver("West", 40.0, 0.0);
+        Driver east = driver("East", 40.0, 0.01);
+        Delivery nearWest = delivery("W", 40.0, 0.001);
+        Delivery nearEast = delivery("E", 40.0, 0.009);
+        DeliveryClusterer crossed = (deliveries, drivers) -> {
+            west.addDelivery(nearEast);
+            east.addDelivery(nearWest);
+            return drivers;
+        };
+
+        new ImprovingDeliveryClusterer(crossed, 1, BUDGET)
+                .clusterAndAssign(List.of(nearWest, nearEast), List.of(west, east));
+
+        assertEquals(List.of(nearWest), west.getAssignedDeliveries());
+        assertEquals(List.of(nearEast), east.getAssignedDeliveries());
+    }
+
+    @Test
+    void relocatesWithinCapacityAndLeavesPinnedDeliveries() {
+        Driver west = driver("West", 40.0, 0.0);
+        Driver east = driver("East", 40.0, 0.01);
+        Delivery a = delivery("A", 40.0, 0.001);
+        Delivery b = delivery("B", 40.0, 0.002);
+        Delivery c = delivery("C", 40.0, 0.003);
+        Delivery pinned = delivery("P", 40.0, 0.0015, "East");
+        DeliveryClusterer allEast = (deliveries, drivers) -> {
+            deliveries.forEach(east::addDelivery);
+            return drivers;
+        };
+
+        new ImprovingDeliveryClusterer(allEast, 2, BUDGET)
+                .clusterAndAssign(List.of(a, b, c, pinned), List.of(west, east));
+
+        // West has room for two; the two that gain most move, the pinned one stays though it is closer
+        assertEquals(List.of(a, b), west.getAssignedDeliveries());
+        assertEquals(List.of(c, pinned), east.getAssignedDeliveries());
+    }
+
+    @Test
+    void lowersTheObjectiveWithoutBreakingCapacity() {
+        SyntheticDeliveries day = new SyntheticDeliveries(5, 2000, 100, SyntheticDeliveries.Distribution.HEAVY_OVERRIDE);
+        KMeansDeliveryClusterer kMeans = new KMeansDeliveryClusterer(25, 1, null, null);
+        List<Driver> plain = kMeans.clusterAndAssign(day.deliveries(), day.drivers());
+        List<Driver> improved = new ImprovingDeliveryClusterer(kMeans, 25, BUDGET)
+                .clusterAndAssign(day.deliveries(), day.drivers());
+
+        double plainObjective = objective(day.deliveries(), plain);
+        double improvedObjective = objective(day.deliveries(), improved);
+        assertTrue(improvedObjective < plainObjective, improvedObjective + " vs " + plainObjective);
+
+        int assigned = 0;
+        for (int i = 0; i < improved.size(); i++) {
+            Driver driver = improved.get(i);
+            assigned += driver.getAssignedDeliveries().size();
+            assertTrue(driver.getAssignedDeliveries().size() <= Math.max(25, plain.get(i).getAssignedDeliveries().size()));
+            for (Delivery delivery : driver.getAssignedDeliveries()) {
+                if (delivery.assignToDriverName() != null) {
+                    assertEquals(delivery.assignToDriverName(), driver.getName());
+                }
+            }
+        }
+        assertEquals(day.deliveries().size(), assigned);
+    }
+}
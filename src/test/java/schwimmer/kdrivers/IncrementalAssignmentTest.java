@@ -0,0 +1,122 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+
+class IncrementalAssignmentTest {
+
+    @Test
+    void add_placesAtNearestDriverWithRoomAndReportsOnlyThatDriver() {
+        Driver near = driver("Near", 0, 0);
+        Driver full = driver("Full", 0, 0.01);
+        Driver far = driver("Far", 0, 0.2);
+        full.addDelivery(delivery("D1", 0, 0.01));
+        IncrementalAssignment assignment = new IncrementalAssignment(List.of(full, near, far), 1);
+
+        Delivery late = delivery("D2", 0, 0.006);
+        Set<Driver> changed = assignment.add(late);
+
+        // Full is nearest, but bumping D1 to Near would add more distance than sending the new delivery there
+        assertEquals(Set.of(near), changed);
+        assertEquals(List.of(late), near.getAssignedDeliveries());
+        assertSame(near, assignment.driverOf(late));
+    }
+
+    @Test
+    void add_bumpsADeliveryFromTheFullNearestDriverWhenThatIsShorter() {
+        Driver home = driver("Home", 0, 0);
+        Driver other = driver("Other", 0, 0.1);
+        Delivery nearOther = delivery("D1", 0, 0.09);
+        home.addDelivery(nearOther);
+        IncrementalAssignment assignment = new IncrementalAssignment(List.of(home, other), 1);
+
+        Delivery late = delivery("D2", 0, 0.001);
+        Set<Driver> changed = assignment.add(late);
+
+        assertEquals(Set.of(home, other), changed);
+        assertEquals(List.of(late), home.getAssignedDeliveries());
+        assertEquals(List.of(nearOther), other.getAssignedDeliveries());
+    }
+
+    @Test
+    void add_honoursAssignToAndRejectsWhenEveryoneIsFull() {
+        Driver a = driver("Alice", 0, 0);
+        Driver b = driver("Bob", 0, 1);
+        a.addDelivery(delivery("D1", 0, 0));
+        b.addDelivery(delivery("D2", 0, 1, "bob"));
+        IncrementalAssignment assignment = new IncrementalAssignment(List.of(a, b), 1);
+
+        Delivery pinned = delivery("D3", 0, 0, " ALICE ");
+        assertEquals(Set.of(a), assignment.add(pinned));
+        assertEquals(2, a.getAssignedDeliveries().size());
+
+        assertThrows(IllegalStateException.class, () -> assignment.add(delivery("D4", 0, 0.5)));
+        assertThrows(IllegalArgumentException.class, () -> assignment.add(pinned));
+    }
+
+    @Test
+    void removeAndMove_touchOnlyTheDriversInvolved() {
+        Driver a = driver("A", 0, 0);
+        Driver b = driver("B", 0, 1);
+        Driver c = driver("C", 0, 2);
+        Delivery d1 = delivery("D1", 0, 0);
+        Delivery d2 = delivery("D2", 0, 1);
+        a.addDelivery(d1);
+        b.addDelivery(d2);
+        IncrementalAssignment assignment = new IncrementalAssignment(List.of(a, b, c), 5);
+
+        assertEquals(Set.of(a, c), assignment.move(d1, c));
+        assertEquals(List.of(d1), c.getAssignedDeliveries());
+        assertEquals(Set.of(), assignment.move(d1, c));
+        assertEquals(Set.of(b), assignment.remove(d2));
+        assertTrue(b.getAssignedDeliveries().isEmpty());
+        assertNull(assignment.driverOf(d2));
+        assertThrows(IllegalArgumentException.class, () -> assignment.remove(d2));
+        assertThrows(IllegalArgumentException.class, () -> assignment.move(d1, driver("Stranger", 0, 0)));
+    }
+
+    @Test
+    void add_tracksIdenticalRowsAsSeparateDeliveries() {
+        Driver a = driver("A", 0, 0);
+        Driver b = driver("B", 0, 1);
+        IncrementalAssignment assignment = new IncrementalAssignment(List.of(a, b), 1);
+        Delivery first = delivery("D1", 0, 0);
+        Delivery second = delivery("D1", 0, 0);
+
+        assertEquals(Set.of(a), assignment.add(first));
+        assertEquals(Set.of(b), assignment.add(second));
+        assertSame(a, assignment.driverOf(first));
+        assertSame(b, assignment.driverOf(second));
+        assertEquals(Set.of(b), assignment.remove(second));
+        assertSame(a, assignment.driverOf(first));
+    }
+
+    @Test
+    void add_staysWithinCapacityOnALargeAssignment() {
+        Random random = new Random(3);
+        List<Driver> drivers = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            drivers.add(driver("Driver " + i, random.nextDouble(), random.nextDouble()));
+        }
+        List<Delivery> deliveries = new ArrayList<>();
+        for (int i = 0; i < 30_000; i++) {
+            deliveries.add(delivery("D" + i, random.nextDouble(), random.nextDouble()));
+        }
+        new NearestDeliveryClusterer(12).clusterAndAssign(deliveries, drivers);
+        IncrementalAssignment assignment = new IncrementalAssignment(drivers, 12);
+
+        for (int i = 0; i < 1_000; i++) {
+            Set<Driver> changed = assignment.add(delivery("L" + i, random.nextDouble(), random.nextDouble()));
+            assertTrue(changed.size() <= 2);
+        }
+        drivers.forEach(d -> assertTrue(d.getAssignedDeliveries().size() <= 12));
+    }
+}
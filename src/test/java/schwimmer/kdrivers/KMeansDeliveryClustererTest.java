@@ -0,0 +1,55 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.copy;
+import static schwimmer.kdrivers.TestFixtures.objective;
+import static schwimmer.kdrivers.TestFixtures.randomDeliveries;
+import static schwimmer.kdrivers.TestFixtures.randomDrivers;
+
+class KMeansDeliveryClustererTest {
+
+    @Test
+    void clusterAndAssign_multiStartIsReproducibleAndNoWorseThanOneStart() {
+        Random random = new Random(5);
+        List<Delivery> deliveries = randomDeliveries(random, 600);
+        List<Driver> drivers = randomDrivers(random, 60);
+
+        List<Driver> single = new KMeansDeliveryClusterer().clusterAndAssign(deliveries, copy(drivers));
+        List<Driver> first = new KMeansDeliveryClusterer(6, null).clusterAndAssign(deliveries, copy(drivers));
+        List<Driver> second = new KMeansDeliveryClusterer(6, null).clusterAndAssign(deliveries, copy(drivers));
+
+        assertEquals(assignments(first), assignments(second));
+        assertTrue(objective(deliveries, first) <= objective(deliveries, single));
+        assertEquals(600, first.stream().mapToInt(d -> d.getAssignedDeliveries().size()).sum());
+    }
+
+    @Test
+    void clusterAndAssign_exhaustedBudgetFallsBackToFirstStart() {
+        Random random = new Random(9);
+        List<Delivery> deliveries = randomDeliveries(random, 200);
+        List<Driver> drivers = randomDrivers(random, 20);
+
+        List<Driver> single = new KMeansDeliveryClusterer().clusterAndAssign(deliveries, copy(drivers));
+        List<Driver> budgeted = new KMeansDeliveryClusterer(8, Duration.ZERO)
+                .clusterAndAssign(deliveries, copy(drivers));
+
+        assertEquals(assignments(single), assignments(budgeted));
+    }
+
+    @Test
+    void constructor_rejectsNonPositiveStarts() {
+        assertThrows(IllegalArgumentException.class, () -> new KMeansDeliveryClusterer(0, null));
+    }
+
+    private static List<List<String>> assignments(List<Driver> drivers) {
+        return drivers.stream()
+                .map(d -> d.getAssignedDeliveries().stream().map(Delivery::id).toList())
+                .toList();
+    }
+}
@@ -0,0 +1,112 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KMeansTest {
+
+    @Test
+    void cluster_convergesToNearestCentreAssignment() {
+        Random random = new Random(42);
+        // Enough points for several fork/join chunks
+        int n = 20_000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextGaussian() * 20 + (i % 5) * 15;
+            y[i] = random.nextGaussian() * 20;
+        }
+
+        KMeans.Result result = new KMeans(150, 42).cluster(x, y);
+
+        double[] cx = result.centerX();
+        double[] cy = result.centerY();
+        assertEquals(150, cx.length);
+        // Lloyd fixed point: every point is at its nearest centre and every centre is the mean of its points
+        double[] sumX = new double[cx.length];
+        double[] sumY = new double[cx.length];
+        int[] counts = new int[cx.length];
+        for (int i = 0; i < n; i++) {
+            int a = result.assignment()[i];
+            double own = CoordinateKernel.distance(x[i], y[i], cx[a], cy[a]);
+            for (int c = 0; c < cx.length; c++) {
+                assertTrue(own <= CoordinateKernel.distance(x[i], y[i], cx[c], cy[c]) + 1e-9,
+                        "point " + i + " is closer to centre " + c + " than to " + a);
+            }
+            sumX[a] += x[i];
+            sumY[a] += y[i];
+            counts[a]++;
+        }
+        for (int c = 0; c < cx.length; c++) {
+            if (counts[c] > 0) {
+                assertEquals(sumX[c] / counts[c], cx[c], 1e-9);
+                assertEquals(sumY[c] / counts[c], cy[c], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void cluster_isDeterministicForSeed() {
+        Random random = new Random(7);
+        int n = 12_000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = random.nextDouble() * 100;
+        }
+
+        KMeans.Result first = new KMeans(80, 42).cluster(x, y);
+        KMeans.Result second = new KMeans(80, 42).cluster(x, y);
+        KMeans.Result otherSeed = new KMeans(80, 43).cluster(x, y);
+
+        assertArrayEquals(first.assignment(), second.assignment());
+        assertArrayEquals(first.centerX(), second.centerX());
+        assertArrayEquals(first.centerY(), second.centerY());
+        assertFalse(Arrays.equals(first.centerX(), otherSeed.centerX()));
+    }
+
+    @Test
+    void cluster_separatesWellSeparatedGroups() {
+        Random random = new Random(1);
+        int groups = 6;
+        int perGroup = 50;
+        double[] x = new double[groups * perGroup];
+        double[] y = new double[groups * perGroup];
+        for (int i = 0; i < x.length; i++) {
+            int g = i / perGroup;
+            x[i] = g * 100 + random.nextDouble();
+            y[i] = (g % 2) * 100 + random.nextDouble();
+        }
+
+        KMeans.Result result = new KMeans(groups, 42).cluster(x, y);
+
+        Set<Integer> seen = new HashSet<>();
+        for (int g = 0; g < groups; g++) {
+            int label = result.assignment()[g * perGroup];
+            assertTrue(seen.add(label), "two groups share a cluster");
+            for (int i = g * perGroup; i < (g + 1) * perGroup; i++) {
+                assertEquals(label, result.assignment()[i]);
+            }
+        }
+    }
+
+    @Test
+    void cluster_capsClustersAtPointCount() {
+        double[] x = {0, 1, 1};
+        double[] y = {0, 0, 0};
+
+        KMeans.Result result = new KMeans(10, 42).cluster(x, y);
+
+        assertEquals(3, result.centerX().length);
+        assertEquals(0, result.inertia(x, y), 1e-12);
+        assertEquals(0, new KMeans(3, 42).cluster(new double[0], new double[0]).assignment().length);
+        assertThrows(IllegalArgumentException.class, () -> new KMeans(0, 42));
+    }
+}
@@ -0,0 +1,146 @@
+package schwimmer.kdrivers;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+
+class MapImageGeneratorTest {
+
+    @Test
+    void viewport_fitsEveryStopInsideTheOutput() {
+        Driver driver = new Driver("DRV-1", "Ann");
+        driver.setCoordinates(40.70, -74.00);
+        List<Delivery> deliveries = List.of(delivery("A", 40.72, -73.95), delivery("B", 40.69, -74.02));
+
+        MapImageGenerator.Viewport viewport = MapImageGenerator.viewport(deliveries, driver);
+
+        assertInside(viewport, 40.70, -74.00);
+        for (Delivery delivery : deliveries) {
+            assertInside(viewport, delivery.latitude(), delivery.longitude());
+        }
+        // The deepest zoom that fits, never shrinking tiles
+        assertTrue(viewport.scale() >= 1, "scale " + viewport.scale());
+        assertTrue(viewport.scale() < 2 || viewport.zoom() == 18, "scale " + viewport.scale());
+    }
+
+    @Test
+    void viewport_spansFewTilesHoweverSpreadOutTheStops() {
+        Random random = new Random(7);
+        for (double spread : new double[]{0.0001, 0.01, 0.5, 3, 40}) {
+            List<Delivery> deliveries = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                deliveries.add(delivery("D" + i, 45 + random.nextDouble() * spread, 8 + random.nextDouble() * spread));
+            }
+
+            MapImageGenerator.Viewport viewport = MapImageGenerator.viewport(deliveries, null);
+            MapImageGenerator.TileRange tiles = viewport.tiles();
+
+            for (Delivery delivery : deliveries) {
+                assertInside(viewport, delivery.latitude(), delivery.longitude());
+            }
+            int tileCount = (tiles.maxTileX() - tiles.minTileX() + 1) * (tiles.maxTileY() - tiles.minTileY() + 1);
+            assertTrue(tileCount <= 12, "spread " + spread + ": " + tileCount + " tiles");
+            // The tiles cover the whole output
+            assertTrue(viewport.tileEdgeX(tiles.minTileX()) <= 0 && viewport.tileEdgeX(tiles.maxTileX() + 1) >= 600);
+            assertTrue(viewport.tileEdgeY(tiles.minTileY()) <= 0 && viewport.tileEdgeY(tiles.maxTileY() + 1) >= 400);
+        }
+    }
+
+    @Test
+    void viewport_nothingToShow_isNull() {
+        assertNull(MapImageGenerator.viewport(List.of(), null));
+    }
+
+    @Test
+    void generateMapImage_fetchesTwoTilesAtATimeAndLeavesAStalledTileBlank(@TempDir Path cacheDir) throws Exception {
+        Driver driver = new Driver("DRV-1", "Ann");
+        driver.setCoordinates(40.70, -74.00);
+        List<Delivery> deliveries = List.of(delivery("A", 40.72, -73.95), delivery("B", 40.69, -74.02));
+        MapImageGenerator.TileRange range = MapImageGenerator.viewport(deliveries, driver).tiles();
+        // The tile under the map's top-left corner never arrives
+        String stalled = String.format("/tiles/%d/%d/%d.png", range.zoom(), range.minTileX(), range.minTileY());
+
+        byte[] tile = solidPng(Color.BLUE);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        if (request.getPath().equals(stalled)) {
+                            release.await();
+                        } else {
+                            Thread.sleep(50);
+                        }
+                        return new MockResponse().setHeader("Content-Type", "image/png")
+                                .setBody(new Buffer().write(tile));
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            });
+            server.start();
+            MapImageGenerator generator = new MapImageGenerator(server.url("/tiles").toString(), cacheDir,
+                    Duration.ofSeconds(1), new TileCache(64L * 256 * 256));
+
+            BufferedImage map;
+            long millis;
+            try {
+                long start = System.nanoTime();
+                map = ImageIO.read(new ByteArrayInputStream(generator.generateMapImage(deliveries, driver)));
+                millis = (System.nanoTime() - start) / 1_000_000;
+            } finally {
+                release.countDown();
+            }
+
+            assertTrue(millis >= 1_000 && millis < 5_000, millis + " ms");
+            // The stalled request holds one of the host's two slots while the other tiles share the second
+            assertEquals(2, peak.get());
+            assertEquals(new Color(242, 239, 233).getRGB(), map.getRGB(0, 0));
+            assertEquals(Color.BLUE.getRGB(), map.getRGB(599, 399));
+        }
+    }
+
+    private static void assertInside(MapImageGenerator.Viewport viewport, double lat, double lon) {
+        double x = viewport.x(lon);
+        double y = viewport.y(lat);
+        assertTrue(x >= 0 && x <= 600, "x " + x);
+        assertTrue(y >= 0 && y <= 400, "y " + y);
+    }
+
+    private static byte[] solidPng(Color color) throws IOException {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 256, 256);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "PNG", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,120 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.copy;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+import static schwimmer.kdrivers.TestFixtures.randomDeliveries;
+import static schwimmer.kdrivers.TestFixtures.randomDrivers;
+
+class MinCostFlowDeliveryClustererTest {
+
+    @Test
+    void clusterAndAssign_matchesBruteForceOptimum() {
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            List<Delivery> deliveries = randomDeliveries(random, 7);
+            List<Driver> drivers = randomDrivers(random, 3);
+
+            new MinCostFlowDeliveryClusterer(3).clusterAndAssign(deliveries, drivers);
+
+            assertEquals(bruteForceOptimum(deliveries, drivers, 3), totalDistance(deliveries, drivers), 1e-9);
+            drivers.forEach(d -> assertTrue(d.getAssignedDeliveries().size() <= 3));
+        }
+    }
+
+    @Test
+    void clusterAndAssign_sparseCandidateArcsStillReachOptimum() {
+        for (int seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            List<Delivery> deliveries = randomDeliveries(random, 300);
+            List<Driver> sparse = randomDrivers(random, 25);
+            List<Driver> complete = copy(sparse);
+
+            // Tight capacity forces many deliveries away from their nearest drivers
+            new MinCostFlowDeliveryClusterer(13, 1).clusterAndAssign(deliveries, sparse);
+            new MinCostFlowDeliveryClusterer(13, 25).clusterAndAssign(deliveries, complete);
+
+            assertEquals(totalDistance(deliveries, complete), totalDistance(deliveries, sparse), 1e-9);
+            assertEquals(300, sparse.stream().mapToInt(d -> d.getAssignedDeliveries().size()).sum());
+        }
+    }
+
+    @Test
+    void clusterAndAssign_keepsOverridesAndCountsThemAgainstCapacity() {
+        Driver near = driver("Near", 0, 0);
+        Driver far = driver("Far", 10, 10);
+        List<Delivery> deliveries = List.of(
+                delivery("D1", 10, 10, "near"),
+                delivery("D2", 0, 0.1),
+                delivery("D3", 0, 0.2));
+
+        new MinCostFlowDeliveryClusterer(2).clusterAndAssign(deliveries, List.of(near, far));
+
+        assertEquals(List.of(deliveries.get(0), deliveries.get(1)), near.getAssignedDeliveries());
+        assertEquals(List.of(deliveries.get(2)), far.getAssignedDeliveries());
+    }
+
+    @Test
+    void clusterAndAssign_throwsWhenDeliveriesExceedCapacity() {
+        List<Driver> drivers = List.of(driver("A", 0, 0));
+        List<Delivery> deliveries = randomDeliveries(new Random(1), 3);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new MinCostFlowDeliveryClusterer(2).clusterAndAssign(deliveries, drivers));
+    }
+
+    @Test
+    void clusterAndAssign_neverCostsMoreThanGreedyClusterers() {
+        Random random = new Random(99);
+        List<Delivery> deliveries = randomDeliveries(random, 2_000);
+        List<Driver> drivers = randomDrivers(random, 200);
+
+        double flow = totalDistance(deliveries,
+                new MinCostFlowDeliveryClusterer().clusterAndAssign(deliveries, copy(drivers)));
+        double nearest = totalDistance(deliveries,
+                new NearestDeliveryClusterer().clusterAndAssign(deliveries, copy(drivers)));
+        double kMeans = totalDistance(deliveries,
+                new KMeansDeliveryClusterer().clusterAndAssign(deliveries, copy(drivers)));
+
+        // Both greedy results are feasible for the flow's capacity (k-means uses a lower one)
+        assertTrue(flow <= nearest + 1e-9);
+        assertTrue(flow <= kMeans + 1e-9);
+    }
+
+    private static double bruteForceOptimum(List<Delivery> deliveries, List<Driver> drivers, int capacity) {
+        return bruteForce(new CoordinateKernel(deliveries, drivers), capacity, 0, new int[drivers.size()]);
+    }
+
+    private static double bruteForce(CoordinateKernel kernel, int capacity, int next, int[] load) {
+        if (next == kernel.deliveryCount()) {
+            return 0;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < kernel.driverCount(); i++) {
+            if (load[i] < capacity) {
+                load[i]++;
+                best = Math.min(best, kernel.deliveryToDriver(next, i) + bruteForce(kernel, capacity, next + 1, load));
+                load[i]--;
+            }
+        }
+        return best;
+    }
+
+    /** Total distance in the same projection the clusterers use; delivery ids must be unique. */
+    private static double totalDistance(List<Delivery> deliveries, List<Driver> drivers) {
+        CoordinateKernel kernel = new CoordinateKernel(deliveries, drivers);
+        double total = 0;
+        for (int i = 0; i < drivers.size(); i++) {
+            for (Delivery d : drivers.get(i).getAssignedDeliveries()) {
+                total += kernel.deliveryToDriver(deliveries.indexOf(d), i);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,170 @@
+package schwimmer.kdrivers;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NominatimGeocodeProviderTest {
+
+    private static final String FOUND_BODY = "[{\"lat\":\"40.7128\",\"lon\":\"-74.006\"}]";
+
+    private MockWebServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void lookup_parsesFirstResult() {
+        server.enqueue(json(FOUND_BODY));
+
+        Optional<Geocoder.GeocodeResult> result = provider(null).lookup("123 Main St").join();
+
+        assertTrue(result.isPresent());
+        assertEquals(40.7128, result.get().coordinates().orElseThrow().latitude(), 1e-9);
+        assertFalse(result.get().fromCache());
+    }
+
+    @Test
+    void lookup_emptyResponseIsDefinitiveNotFound() {
+        server.enqueue(json("[]"));
+
+        Optional<Geocoder.GeocodeResult> result = provider(null).lookup("nowhere").join();
+
+        assertTrue(result.isPresent());
+        assertTrue(result.get().coordinates().isEmpty());
+        assertFalse(result.get().failed());
+    }
+
+    @Test
+    void lookup_retriesServerErrors() {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(json(FOUND_BODY));
+
+        Optional<Geocoder.GeocodeResult> result = provider(null).lookup("123 Main St").join();
+
+        assertTrue(result.isPresent());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void lookup_hasNoAnswerAfterRetriesAreExhausted() {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+
+        assertEquals(Optional.empty(), provider(null).lookup("123 Main St").join());
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    void httpCache_servesRepeatWithoutTheNetwork(@TempDir Path cacheDir) {
+        server.enqueue(json(FOUND_BODY));
+        NominatimGeocodeProvider provider = provider(cacheDir);
+
+        assertEquals(Optional.empty(), provider.httpCache().lookup("123 Main St").join());
+        provider.lookup("123 Main St").join();
+        Optional<Geocoder.GeocodeResult> second = provider.httpCache().lookup("123 Main St").join();
+
+        assertTrue(second.orElseThrow().fromCache());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void chain_slowLocalTierFallsThroughToNextTierAndMemoServesRepeat() throws IOException {
+        try (MockWebServer publicServer = new MockWebServer()) {
+            publicServer.start();
+            server.enqueue(json(FOUND_BODY).setBodyDelay(2, TimeUnit.SECONDS));
+            publicServer.enqueue(json("[{\"lat\":\"1.5\",\"lon\":\"2.5\"}]"));
+
+            Geocoder geocoder = new Geocoder(List.of(
+                    GeocodeTier.unlimited(new MemoGeocodeProvider()),
+                    new GeocodeTier(provider(null), Duration.ofMillis(200), 4),
+                    GeocodeTier.unlimited(provider(publicServer, null))));
+
+            Geocoder.GeocodeResult first = geocoder.geocode("123 Main St");
+            Geocoder.GeocodeResult second = geocoder.geocode("123 Main St");
+
+            assertEquals(1.5, first.coordinates().orElseThrow().latitude(), 1e-9);
+            assertEquals(first.coordinates(), second.coordinates());
+            assertTrue(second.fromCache());
+            assertEquals(1, server.getRequestCount());
+            assertEquals(1, publicServer.getRequestCount());
+        }
+    }
+
+    @Test
+    void geocodeAll_sendsOnlyCacheMissesThroughTheRateLimiter() {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        List<Long> sentAt = new CopyOnWriteArrayList<>();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                sentAt.add(System.nanoTime());
+                sent.add(request.getRequestUrl().queryParameter("q"));
+                return json(FOUND_BODY);
+            }
+        });
+        MemoGeocodeProvider cache = new MemoGeocodeProvider();
+        cache.remember("1 Oak St", new Geocoder.GeocodeResult(Optional.of(new Geocoder.Coordinates(1, 2)), false));
+        cache.remember("2 Elm St", new Geocoder.GeocodeResult(Optional.of(new Geocoder.Coordinates(3, 4)), false));
+        // A clock that never advances: the bucket's one token goes to the first miss and every later miss
+        // waits one more interval than the one before it
+        long interval = TimeUnit.MILLISECONDS.toNanos(200);
+        TokenBucket limiter = new TokenBucket(5, 1, () -> 0L);
+        NominatimApi api = NominatimGeocodeProvider.createApi(server.url("/").toString(), null);
+        Geocoder geocoder = new Geocoder(List.of(
+                GeocodeTier.unlimited(cache),
+                GeocodeTier.unlimited(new NominatimGeocodeProvider("test", api, limiter, 1))));
+
+        long start = System.nanoTime();
+        Map<String, CompletableFuture<Geocoder.GeocodeResult>> results =
+                geocoder.geocodeAll(List.of("1 Oak St", "9 Ash St", "2 Elm St", "8 Fir St"));
+        results.values().forEach(CompletableFuture::join);
+
+        assertEquals(List.of("9 Ash St", "8 Fir St"), sent);
+        assertTrue(results.get("1 Oak St").join().fromCache());
+        assertEquals(40.7128, results.get("8 Fir St").join().coordinates().orElseThrow().latitude(), 1e-9);
+        assertTrue(sentAt.get(1) - start >= interval, (sentAt.get(1) - start) + " ns");
+        // Only the two misses took tokens
+        assertEquals(2 * interval, limiter.reserve());
+    }
+
+    private NominatimGeocodeProvider provider(Path cacheDir) {
+        return provider(server, cacheDir);
+    }
+
+    private static NominatimGeocodeProvider provider(MockWebServer server, Path cacheDir) {
+        NominatimApi api = NominatimGeocodeProvider.createApi(server.url("/").toString(), cacheDir);
+        return new NominatimGeocodeProvider("test", api, null, 1);
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+}
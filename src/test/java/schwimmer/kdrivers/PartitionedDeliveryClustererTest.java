@@ -0,0 +1,72 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+
+class PartitionedDeliveryClustererTest {
+
+    @Test
+    void manyCells_keepCapacityAndOverridesAcrossTheWholeDay() {
+        SyntheticDeliveries day = new SyntheticDeliveries(11, 2000, 100, SyntheticDeliveries.Distribution.HEAVY_OVERRIDE);
+        List<Delivery> deliveries = day.deliveries();
+        PartitionedDeliveryClusterer clusterer = new PartitionedDeliveryClusterer(25, 8, NearestDeliveryClusterer::new);
+
+        List<Driver> result = clusterer.clusterAndAssign(deliveries, day.drivers());
+
+        Map<Delivery, Driver> assignedTo = new IdentityHashMap<>();
+        for (Driver driver : result) {
+            assertTrue(driver.getAssignedDeliveries().size() <= 25, driver.getName());
+            for (Delivery delivery : driver.getAssignedDeliveries()) {
+                assertNull(assignedTo.put(delivery, driver), "assigned twice: " + delivery.id());
+            }
+        }
+        assertEquals(deliveries.size(), assignedTo.size());
+        for (Delivery delivery : deliveries) {
+            if (delivery.assignToDriverName() != null) {
+                assertEquals(delivery.assignToDriverName(), assignedTo.get(delivery).getName(), delivery.id());
+            }
+        }
+    }
+
+    @Test
+    void oneCell_isTheInnerClusterersAssignment() {
+        SyntheticDeliveries day = new SyntheticDeliveries(3, 300, 30, SyntheticDeliveries.Distribution.CLUSTERED_CITY);
+        List<Driver> partitioned = new PartitionedDeliveryClusterer(15, 30, NearestDeliveryClusterer::new)
+                .clusterAndAssign(day.deliveries(), day.drivers());
+        List<Driver> flat = new NearestDeliveryClusterer(15).clusterAndAssign(day.deliveries(), day.drivers());
+
+        for (int i = 0; i < flat.size(); i++) {
+            assertEquals(flat.get(i).getAssignedDeliveries(), partitioned.get(i).getAssignedDeliveries());
+        }
+    }
+
+    @Test
+    void seamRepair_movesDeliveriesToACloserLessLoadedDriverInTheNextCell() {
+        Driver south = driver("South", 40.0, 0.0);
+        Driver north = driver("North", 40.02, 0.01);
+        // The cut runs east-west halfway between the drivers; C is south of it but closer to North
+        Delivery a = delivery("A", 40.001, 0.0, null);
+        Delivery c = delivery("C", 40.0095, 0.01, null);
+        Delivery n = delivery("N", 40.019, 0.01, null);
+
+        new PartitionedDeliveryClusterer(5, 1, NearestDeliveryClusterer::new)
+                .clusterAndAssign(List.of(a, c, n), List.of(south, north));
+
+        assertEquals(List.of(a), south.getAssignedDeliveries());
+        assertEquals(List.of(n, c), north.getAssignedDeliveries());
+    }
+
+    @Test
+    void tooManyDeliveries_throws() {
+        List<Delivery> deliveries = List.of(delivery("A", 40, 0, null), delivery("B", 40, 0, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PartitionedDeliveryClusterer(1).clusterAndAssign(deliveries, List.of(driver("X", 40, 0))));
+    }
+}
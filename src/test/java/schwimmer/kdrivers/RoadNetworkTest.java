@@ -0,0 +1,141 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+
+class RoadNetworkTest {
+
+    /**
+     * Two north-south roads either side of a river at lon 0.0075, joined only by a bridge 5.5 km north, plus
+     * a footpath and an unconnected fragment that must be ignored.
+     */
+    private static final String RIVER = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <osm version="0.6">
+              <node id="1" lat="-0.01" lon="0.005"/>
+              <node id="2" lat="0.0" lon="0.005"/>
+              <node id="3" lat="0.05" lon="0.005"/>
+              <node id="11" lat="-0.01" lon="0.010"/>
+              <node id="12" lat="0.0" lon="0.010"/>
+              <node id="13" lat="0.05" lon="0.010"/>
+              <node id="21" lat="0.0" lon="0.020"/>
+              <node id="22" lat="0.001" lon="0.020"/>
+              <way id="100">
+                <nd ref="1"/><nd ref="2"/><nd ref="3"/>
+                <tag k="highway" v="residential"/>
+              </way>
+              <way id="101">
+                <nd ref="11"/><nd ref="12"/><nd ref="13"/>
+                <tag k="highway" v="residential"/>
+              </way>
+              <way id="102">
+                <nd ref="3"/><nd ref="13"/>
+                <tag k="highway" v="secondary"/>
+                <tag k="bridge" v="yes"/>
+              </way>
+              <way id="103">
+                <nd ref="2"/><nd ref="12"/>
+                <tag k="highway" v="footway"/>
+              </way>
+              <way id="104">
+                <nd ref="21"/><nd ref="22"/>
+                <tag k="highway" v="service"/>
+              </way>
+            </osm>
+            """;
+
+    @Test
+    void load_keepsDrivableRoadsOfTheLargestComponent(@TempDir Path tempDir) throws Exception {
+        RoadNetwork roads = RoadNetwork.load(write(tempDir, RIVER));
+
+        // Six river nodes; the footway is not drivable and the service road fragment is dropped
+        assertEquals(6, roads.nodeCount());
+        assertEquals(10, roads.edgeCount());
+        assertTrue(roads.bytes() > 0);
+    }
+
+    @Test
+    void costs_followRoadsAroundTheRiver(@TempDir Path tempDir) throws Exception {
+        RoadNetwork roads = RoadNetwork.load(write(tempDir, RIVER));
+
+        double[] seconds = roads.costs(0, 0.006, new double[] {0, 0}, new double[] {0.004, 0.009});
+
+        // Same bank: ~110 m of access at each end, no road in between
+        assertTrue(seconds[0] < 120, "same bank took " + seconds[0]);
+        // Across the river: 2 x 5.5 km of residential road plus the bridge
+        assertTrue(seconds[1] > 1500, "across the river took " + seconds[1]);
+    }
+
+    @Test
+    void costs_respectOneWayStreets(@TempDir Path tempDir) throws Exception {
+        // A one-way shortcut from 1 to 2, and a long two-way detour back
+        String osm = """
+                <osm version="0.6">
+                  <node id="1" lat="0" lon="0"/>
+                  <node id="2" lat="0" lon="0.01"/>
+                  <node id="3" lat="0.02" lon="0.005"/>
+                  <way id="1"><nd ref="1"/><nd ref="2"/>
+                    <tag k="highway" v="primary"/><tag k="oneway" v="yes"/><tag k="maxspeed" v="30 mph"/></way>
+                  <way id="2"><nd ref="2"/><nd ref="3"/><nd ref="1"/><tag k="highway" v="tertiary"/></way>
+                </osm>
+                """;
+        RoadNetwork roads = RoadNetwork.load(write(tempDir, osm));
+
+        double forward = roads.costs(0, 0, new double[] {0}, new double[] {0.01})[0];
+        double backward = roads.costs(0, 0.01, new double[] {0}, new double[] {0})[0];
+
+        // 1.11 km at 30 mph
+        assertEquals(1113.2 / (30 * 1.609344 / 3.6), forward, 1);
+        assertTrue(backward > 3 * forward, "backward took " + backward);
+    }
+
+    @Test
+    void load_resolvesNodesListedOutOfOrderOrWithNegativeIds(@TempDir Path tempDir) throws Exception {
+        // As saved by an editor: new nodes have negative ids and are not in id order
+        String osm = """
+                <osm version="0.6">
+                  <node id="7" lat="0" lon="0.01"/>
+                  <node id="-2" lat="0" lon="0"/>
+                  <node id="3" lat="0.01" lon="0.01"/>
+                  <way id="1"><nd ref="-2"/><nd ref="7"/><nd ref="3"/><tag k="highway" v="residential"/></way>
+                </osm>
+                """;
+        RoadNetwork roads = RoadNetwork.load(write(tempDir, osm));
+
+        assertEquals(3, roads.nodeCount());
+        assertEquals(4, roads.edgeCount());
+        // 1.11 km east then 1.11 km north at 25 km/h
+        double seconds = roads.costs(0, 0, new double[] {0.01}, new double[] {0.01})[0];
+        assertEquals(2 * 1113.2 / (25 / 3.6), seconds, 2);
+    }
+
+    @Test
+    void nearestClusterer_withRoadsPicksTheDriverOnTheSameBank(@TempDir Path tempDir) throws Exception {
+        RoadNetwork roads = RoadNetwork.load(write(tempDir, RIVER));
+        Delivery delivery = delivery("D1", 0, 0.006);
+
+        // In a straight line the east driver is twice as close, but across the river
+        List<Driver> straight = new NearestDeliveryClusterer(5)
+                .clusterAndAssign(List.of(delivery), List.of(driver("West", 0, -0.004), driver("East", 0, 0.011)));
+        assertEquals(List.of(delivery), straight.get(1).getAssignedDeliveries());
+
+        List<Driver> byRoad = new NearestDeliveryClusterer(5, roads)
+                .clusterAndAssign(List.of(delivery), List.of(driver("West", 0, -0.004), driver("East", 0, 0.011)));
+        assertEquals(List.of(delivery), byRoad.get(0).getAssignedDeliveries());
+        assertTrue(byRoad.get(1).getAssignedDeliveries().isEmpty());
+    }
+
+    private static Path write(Path dir, String osm) throws Exception {
+        Path file = dir.resolve("roads.osm");
+        Files.writeString(file, osm);
+        return file;
+    }
+}
@@ -0,0 +1,129 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+
+class RouteSequencerTest {
+
+    @Test
+    void order_visitsStopsAlongAStreetOutwardFromHome() {
+        Driver driver = driver("Driver", 40.0, -74.0);
+        List<Delivery> stops = new ArrayList<>();
+        for (int i : new int[] {5, 2, 8, 1, 7, 3, 6, 4}) {
+            stops.add(delivery("D" + i, 40.0, -74.0 + i * 0.001));
+        }
+
+        int[] order = RouteSequencer.order(driver, stops, Long.MAX_VALUE);
+
+        assertArrayEquals(new int[] {3, 1, 5, 7, 0, 6, 4, 2}, order);
+    }
+
+    @Test
+    void order_isCloseToOptimalOnSmallRoutes() {
+        for (int seed = 0; seed < 30; seed++) {
+            Random random = new Random(seed);
+            Driver driver = driver("Driver", 40 + random.nextDouble() * 0.1, -74 + random.nextDouble() * 0.1);
+            List<Delivery> stops = randomStops(random, 7);
+
+            int[] order = RouteSequencer.order(driver, stops, Long.MAX_VALUE);
+
+            double best = bruteForce(driver, stops);
+            assertTrue(RouteSequencer.length(driver, reorder(stops, order)) <= best * 1.05 + 1e-9,
+                    "seed " + seed);
+        }
+    }
+
+    @Test
+    void order_improvesOnNearestNeighbourForLargerRoutes() {
+        Random random = new Random(11);
+        Driver driver = driver("Driver", 40.05, -73.95);
+        List<Delivery> stops = randomStops(random, 60);
+
+        int[] order = RouteSequencer.order(driver, stops, Long.MAX_VALUE);
+        int[] nearestNeighbour = RouteSequencer.order(driver, stops, 0);
+
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(IntStream.range(0, 60).toArray(), sorted);
+        assertTrue(RouteSequencer.length(driver, reorder(stops, order))
+                < RouteSequencer.length(driver, reorder(stops, nearestNeighbour)));
+    }
+
+    @Test
+    void sequence_keepsHomeFirstAndEveryDelivery() {
+        Random random = new Random(3);
+        List<Driver> drivers = new ArrayList<>();
+        for (int d = 0; d < 20; d++) {
+            Driver driver = driver("Driver", 40 + random.nextDouble() * 0.1, -74 + random.nextDouble() * 0.1);
+            driver.addDelivery(delivery("DRV" + d + "-home", driver.getLatitude(), driver.getLongitude()));
+            randomStops(random, 12).forEach(driver::addDelivery);
+            drivers.add(driver);
+        }
+        List<List<Delivery>> before = drivers.stream().map(d -> List.copyOf(d.getAssignedDeliveries())).toList();
+
+        new RouteSequencer(Duration.ofMillis(100)).sequence(drivers);
+
+        for (int d = 0; d < drivers.size(); d++) {
+            List<Delivery> after = drivers.get(d).getAssignedDeliveries();
+            assertEquals(before.get(d).get(0), after.get(0));
+            assertEquals(before.get(d).size(), after.size());
+            assertTrue(after.containsAll(before.get(d)));
+            assertTrue(RouteSequencer.length(drivers.get(d), after.subList(1, after.size()))
+                    <= RouteSequencer.length(drivers.get(d), before.get(d).subList(1, after.size())));
+        }
+    }
+
+    private static double bruteForce(Driver driver, List<Delivery> stops) {
+        int[] order = IntStream.range(0, stops.size()).toArray();
+        double best = Double.POSITIVE_INFINITY;
+        do {
+            best = Math.min(best, RouteSequencer.length(driver, reorder(stops, order)));
+        } while (nextPermutation(order));
+        return best;
+    }
+
+    private static boolean nextPermutation(int[] a) {
+        int i = a.length - 2;
+        while (i >= 0 && a[i] >= a[i + 1]) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        int j = a.length - 1;
+        while (a[j] <= a[i]) {
+            j--;
+        }
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+        for (int l = i + 1, r = a.length - 1; l < r; l++, r--) {
+            t = a[l];
+            a[l] = a[r];
+            a[r] = t;
+        }
+        return true;
+    }
+
+    private static List<Delivery> reorder(List<Delivery> stops, int[] order) {
+        return Arrays.stream(order).mapToObj(stops::get).toList();
+    }
+
+    private static List<Delivery> randomStops(Random random, int count) {
+        List<Delivery> stops = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            stops.add(delivery("D" + i, 40 + random.nextDouble() * 0.1, -74 + random.nextDouble() * 0.1));
+        }
+        return stops;
+    }
+}
@@ -0,0 +1,74 @@
+package schwimmer.kdrivers;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deliveries and drivers for tests that only care where they are, seeded random days of them, and the
+ * clusterers' objective for checking assignments.
+ */
+final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    static Delivery delivery(String id, double lat, double lon) {
+        return delivery(id, lat, lon, null);
+    }
+
+    static Delivery delivery(String id, double lat, double lon, String assignTo) {
+        return new Delivery(id, lat, lon, "", "", null, assignTo);
+    }
+
+    static Driver driver(String name, double lat, double lon) {
+        Driver driver = new Driver("DRV-" + name, name);
+        driver.setCoordinates(lat, lon);
+        return driver;
+    }
+
+    /** Deliveries in two dense neighbourhoods, so the drivers nearest to them overflow. */
+    static List<Delivery> randomDeliveries(Random random, int count) {
+        List<Delivery> deliveries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double centre = random.nextBoolean() ? 40.70 : 40.80;
+            deliveries.add(delivery("D" + i, centre + random.nextGaussian() * 0.01,
+                    -74.0 + random.nextGaussian() * 0.05));
+        }
+        return deliveries;
+    }
+
+    static List<Driver> randomDrivers(Random random, int count) {
+        List<Driver> drivers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            drivers.add(driver("Driver " + i, 40.65 + random.nextDouble() * 0.2, -74.1 + random.nextDouble() * 0.2));
+        }
+        return drivers;
+    }
+
+    /** New drivers at the same places with no deliveries, since clustering assigns into the drivers it is given. */
+    static List<Driver> copy(List<Driver> drivers) {
+        List<Driver> copy = new ArrayList<>();
+        for (Driver d : drivers) {
+            copy.add(driver(d.getName(), d.getLatitude(), d.getLongitude()));
+        }
+        return copy;
+    }
+
+    /** {@link KMeansDeliveryClusterer#objective} of the deliveries as assigned to the drivers. */
+    static double objective(List<Delivery> deliveries, List<Driver> drivers) {
+        Map<Delivery, Integer> index = new IdentityHashMap<>();
+        for (int i = 0; i < deliveries.size(); i++) {
+            index.put(deliveries.get(i), i);
+        }
+        Clusters clusters = new Clusters(drivers.size());
+        for (int c = 0; c < drivers.size(); c++) {
+            for (Delivery d : drivers.get(c).getAssignedDeliveries()) {
+                clusters.add(c, index.get(d));
+            }
+        }
+        return KMeansDeliveryClusterer.objective(clusters, new CoordinateKernel(deliveries, drivers));
+    }
+}
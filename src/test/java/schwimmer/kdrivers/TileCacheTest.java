@@ -0,0 +1,75 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsedTilesBeyondThePixelBudget() {
+        TileCache cache = new TileCache(3 * 100);
+        TileCache.Key a = new TileCache.Key(15, 1, 1);
+        TileCache.Key b = new TileCache.Key(15, 2, 1);
+        TileCache.Key c = new TileCache.Key(15, 3, 1);
+        cache.put(a, tile(10));
+        cache.put(b, tile(10));
+        cache.put(c, tile(10));
+        // Using a makes b the least recently used
+        assertNotNull(cache.get(a));
+
+        cache.put(new TileCache.Key(16, 1, 1), tile(10));
+
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(a));
+        assertNotNull(cache.get(c));
+        assertEquals(3, cache.size());
+        assertEquals(300, cache.pixels());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void put_replacingATileKeepsThePixelCountAndSkipsTilesOverTheBudget() {
+        TileCache cache = new TileCache(150);
+        TileCache.Key key = new TileCache.Key(12, 5, 6);
+        cache.put(key, tile(10));
+        cache.put(key, tile(12));
+        assertEquals(144, cache.pixels());
+
+        cache.put(new TileCache.Key(12, 6, 6), tile(13));
+        assertEquals(1, cache.size());
+        assertEquals(144, cache.pixels());
+    }
+
+    @Test
+    void concurrentUse_staysWithinBudgetAndCountsEveryLookup() {
+        TileCache cache = new TileCache(50 * 16);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    TileCache.Key key = new TileCache.Key(14, (i + offset) % 80, 0);
+                    if (cache.get(key) == null) {
+                        cache.put(key, tile(4));
+                    }
+                }
+            }));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        assertTrue(cache.pixels() <= 50 * 16);
+        assertEquals(cache.size() * 16L, cache.pixels());
+        assertEquals(8000, cache.hits() + cache.misses());
+    }
+
+    private static BufferedImage tile(int side) {
+        return new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+    }
+}
@@ -0,0 +1,81 @@
+package schwimmer.kdrivers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static schwimmer.kdrivers.TestFixtures.delivery;
+import static schwimmer.kdrivers.TestFixtures.driver;
+
+class WarmAssignmentTest {
+
+    @Test
+    void load_restoresTheSavedAssignmentForTheSameInput(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("warm-assignment.txt");
+        List<Driver> warmed = drivers();
+        warmed.get(0).addDelivery(deliveries().get(2));
+        warmed.get(0).addDelivery(deliveries().get(0));
+        warmed.get(1).addDelivery(deliveries().get(1));
+        WarmAssignment.save(file, deliveries(), warmed);
+
+        List<Driver> drivers = drivers();
+        List<Driver> assigned = WarmAssignment.load(file, deliveries(), drivers).orElseThrow();
+
+        assertSame(drivers, assigned);
+        assertEquals(List.of(deliveries().get(2), deliveries().get(0)), assigned.get(0).getAssignedDeliveries());
+        assertEquals(List.of(deliveries().get(1)), assigned.get(1).getAssignedDeliveries());
+        assertEquals(List.of(), assigned.get(2).getAssignedDeliveries());
+    }
+
+    @Test
+    void load_ignoresAnAssignmentForOtherDeliveriesOrDrivers(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("warm-assignment.txt");
+        assertEquals(Optional.empty(), WarmAssignment.load(file, deliveries(), drivers()));
+
+        List<Driver> warmed = drivers();
+        for (Delivery delivery : deliveries()) {
+            warmed.get(0).addDelivery(delivery);
+        }
+        WarmAssignment.save(file, deliveries(), warmed);
+
+        List<Delivery> moved = List.of(deliveries().get(0), deliveries().get(1), delivery("D3", 40.80, -73.95));
+        assertEquals(Optional.empty(), WarmAssignment.load(file, moved, drivers()));
+        List<Delivery> overridden = List.of(deliveries().get(0), deliveries().get(1),
+                delivery("D3", 40.75, -73.98, "Eli"));
+        assertEquals(Optional.empty(), WarmAssignment.load(file, overridden, drivers()));
+        List<Driver> fewer = drivers().subList(0, 2);
+        assertEquals(Optional.empty(), WarmAssignment.load(file, deliveries(), fewer));
+        assertTrue(fewer.get(0).getAssignedDeliveries().isEmpty());
+    }
+
+    @Test
+    void load_acceptsRowsThatDifferOnlyInWhatClusteringIgnores(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("warm-assignment.txt");
+        List<Driver> warmed = drivers();
+        for (Delivery delivery : deliveries()) {
+            warmed.get(1).addDelivery(delivery);
+        }
+        WarmAssignment.save(file, deliveries(), warmed);
+
+        List<Delivery> renamed = deliveries().stream()
+                .map(d -> new Delivery(d.id(), d.latitude(), d.longitude(), "New address", "New name", "2B",
+                        d.assignToDriverName()))
+                .toList();
+        List<Driver> assigned = WarmAssignment.load(file, renamed, drivers()).orElseThrow();
+
+        assertEquals(renamed, assigned.get(1).getAssignedDeliveries());
+    }
+
+    private static List<Delivery> deliveries() {
+        return List.of(delivery("D1", 40.71, -74.00), delivery("D2", 40.73, -73.99),
+                delivery("D3", 40.75, -73.98, "Dana"));
+    }
+
+    private static List<Driver> drivers() {
+        return List.of(driver("Dana", 40.70, -74.0), driver("Eli", 40.71, -74.0), driver("Fay", 40.72, -74.0));
+    }
+}